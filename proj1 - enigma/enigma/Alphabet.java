@@ -1,9 +1,15 @@
 package enigma;
 
+import java.util.Arrays;
+
 import static enigma.EnigmaException.*;
 
 /** An alphabet of encodable characters.  Provides a mapping from characters
- *  to and from indices into the alphabet.
+ *  to and from indices into the alphabet.  Characters are Unicode code
+ *  points, so an alphabet may contain supplementary characters (which
+ *  occupy two chars of a String).  Lookup from character to index is
+ *  constant time: through a dense table when the alphabet's code points
+ *  span a small range, and otherwise through an open-addressed hash table.
  *  @author Jenny Miao
  */
 class Alphabet {
@@ -15,15 +21,21 @@ class Alphabet {
         if (chars.length() == 0) {
             throw error("alphabet is empty", chars);
         }
-        for (int i = 0; i < chars.length(); i++) {
-            for (int j = i + 1; j < chars.length(); j++) {
-                if (chars.charAt(i) == chars.charAt(j)) {
-                    throw error("duplicate characters in alphabet", chars);
-                } else if (chars.charAt(i) == '*' || chars.charAt(i) == '('
-                        || chars.charAt(i) == ')') {
-                    throw error("illegal inputs *() in alphabet", chars);
-                }
+        _codePoints = chars.codePoints().toArray();
+        int min = Integer.MAX_VALUE, max = Integer.MIN_VALUE;
+        for (int cp : _codePoints) {
+            if (cp == '*' || cp == '(' || cp == ')') {
+                throw error("illegal inputs *() in alphabet", chars);
             }
+            min = Math.min(min, cp);
+            max = Math.max(max, cp);
+        }
+        _singleByte = max < SINGLE_BYTE_LIMIT;
+        if (max - min < Math.max(MIN_DENSE_SPAN,
+                                 DENSE_FACTOR * _codePoints.length)) {
+            buildDense(min, max);
+        } else {
+            buildHashed();
         }
     }
 
@@ -32,33 +44,121 @@ class Alphabet {
         this("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
     }
 
+    /** Fill in a dense lookup table covering code points MIN..MAX. */
+    private void buildDense(int min, int max) {
+        _base = min;
+        _dense = new int[max - min + 1];
+        Arrays.fill(_dense, -1);
+        for (int i = 0; i < _codePoints.length; i++) {
+            int slot = _codePoints[i] - _base;
+            if (_dense[slot] >= 0) {
+                throw error("duplicate characters in alphabet", chars);
+            }
+            _dense[slot] = i;
+        }
+    }
+
+    /** Fill in an open-addressed hash table (linear probing) holding all
+     *  my code points.  The table is kept at most half full. */
+    private void buildHashed() {
+        int capacity = Integer.highestOneBit(_codePoints.length * 2) * 2;
+        _keys = new int[capacity];
+        _values = new int[capacity];
+        _mask = capacity - 1;
+        Arrays.fill(_keys, -1);
+        for (int i = 0; i < _codePoints.length; i++) {
+            int cp = _codePoints[i];
+            int slot = hash(cp) & _mask;
+            while (_keys[slot] >= 0) {
+                if (_keys[slot] == cp) {
+                    throw error("duplicate characters in alphabet", chars);
+                }
+                slot = (slot + 1) & _mask;
+            }
+            _keys[slot] = cp;
+            _values[slot] = i;
+        }
+    }
+
+    /** Return a hash of code point CP, spreading nearby code points
+     *  across the table. */
+    private static int hash(int cp) {
+        int h = cp * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+
     /** Returns the size of the alphabet. */
     int size() {
-        return chars.length();
+        return _codePoints.length;
     }
 
     /** Returns true if CH is in this alphabet. */
     boolean contains(char ch) {
-        return chars.indexOf(ch) >= 0;
+        return indexOf(ch) >= 0;
+    }
+
+    /** Returns true iff every character of this alphabet is in the Basic
+     *  Multilingual Plane, so that each is a single char. */
+    boolean bmpOnly() {
+        return _codePoints.length == chars.length();
+    }
+
+    /** Returns true iff every character of this alphabet has a code below
+     *  256, so that it can be represented by a single ISO-8859-1 byte. */
+    boolean singleByte() {
+        return _singleByte;
     }
 
     /** Returns character number INDEX in the alphabet, where
-     *  0 <= INDEX < size(). */
+     *  0 <= INDEX < size().  That character must not be a supplementary
+     *  character (see toCodePoint). */
     char toChar(int index) {
+        int cp = toCodePoint(index);
+        if (Character.isSupplementaryCodePoint(cp)) {
+            throw error("Character at index %d is not a single char", index);
+        }
+        return (char) cp;
+    }
+
+    /** Returns the code point of character number INDEX in the alphabet,
+     *  where 0 <= INDEX < size(). */
+    int toCodePoint(int index) {
         if (index < 0 || index >= size()) {
             throw error("Index out of bounds", index);
         }
-        return chars.charAt(index);
+        return _codePoints[index];
     }
 
     /** Returns the index of character CH which must be in
      *  the alphabet. This is the inverse of toChar(). */
     int toInt(char ch) {
-        if (!this.contains(ch)) {
+        int index = indexOf(ch);
+        if (index < 0) {
             throw error("Character not in alphabet", ch);
         }
-        return chars.indexOf(ch);
+        return index;
+    }
+
+    /** Returns the index of the character with code point CP, or -1 if
+     *  it is not in the alphabet.  This is the inverse of
+     *  toCodePoint(). */
+    int indexOf(int cp) {
+        if (_dense != null) {
+            int slot = cp - _base;
+            return slot >= 0 && slot < _dense.length ? _dense[slot] : -1;
+        }
+        int slot = hash(cp) & _mask;
+        while (true) {
+            int key = _keys[slot];
+            if (key == cp) {
+                return _values[slot];
+            } else if (key < 0) {
+                return -1;
+            }
+            slot = (slot + 1) & _mask;
+        }
     }
+
     /** The string of chars this Alphabet contains. */
     private String chars;
 
@@ -66,4 +166,37 @@ class Alphabet {
     String getChars() {
         return chars;
     }
+
+    /** True iff all my code points are below SINGLE_BYTE_LIMIT. */
+    private final boolean _singleByte;
+
+    /** Code point of each character, by index. */
+    private final int[] _codePoints;
+
+    /** When not null, _dense[CP - _base] is the index of code point CP, or
+     *  -1 if it is not in the alphabet. */
+    private int[] _dense;
+
+    /** The smallest code point in the alphabet, when _dense is used. */
+    private int _base;
+
+    /** Hash table keys (code points), -1 marking an empty slot. */
+    private int[] _keys;
+
+    /** Hash table values: the index of the code point in _keys. */
+    private int[] _values;
+
+    /** One less than the (power of two) length of _keys. */
+    private int _mask;
+
+    /** Code points below this fit in one ISO-8859-1 byte. */
+    private static final int SINGLE_BYTE_LIMIT = 256;
+
+    /** A dense table is always used when the code points span fewer than
+     *  this many values. */
+    private static final int MIN_DENSE_SPAN = 1024;
+
+    /** A dense table is also used when the code points span fewer than
+     *  this many values per character. */
+    private static final int DENSE_FACTOR = 8;
 }
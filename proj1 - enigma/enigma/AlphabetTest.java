@@ -117,4 +117,47 @@ public class AlphabetTest {
         assertEquals(0, c.toInt('!'));
         assertEquals(1, c.toInt('@'));
     }
+
+    @Test
+    public void testSparseUnicodeAlphabet() {
+        String chars = "A\u00e9\u4e2d\u0416\uff21";
+        Alphabet a = getNewAlphabet(chars);
+        assertEquals(5, a.size());
+        for (int i = 0; i < chars.length(); i++) {
+            assertEquals(i, a.toInt(chars.charAt(i)));
+            assertEquals(chars.charAt(i), a.toChar(i));
+        }
+        assertFalse(a.contains('B'));
+        assertFalse(a.contains('\u4e2e'));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testSparseDuplicateAlphabet() {
+        getNewAlphabet("A\u4e2d\uff21\u4e2d");
+    }
+
+    @Test
+    public void testSupplementaryAlphabet() {
+        String chars = "AB\ud83d\ude00C";
+        Alphabet a = getNewAlphabet(chars);
+        assertEquals(4, a.size());
+        assertEquals(2, a.indexOf(0x1F600));
+        assertEquals(0x1F600, a.toCodePoint(2));
+        assertEquals(3, a.toInt('C'));
+        assertEquals(-1, a.indexOf(0x1F601));
+    }
+
+    @Test
+    public void testLargeAlphabet() {
+        StringBuilder chars = new StringBuilder();
+        for (int i = 0; i < 600; i++) {
+            chars.appendCodePoint(0x100 + 37 * i);
+        }
+        Alphabet a = getNewAlphabet(chars.toString());
+        assertEquals(600, a.size());
+        for (int i = 0; i < 600; i++) {
+            assertEquals(i, a.indexOf(0x100 + 37 * i));
+            assertEquals(-1, a.indexOf(0x101 + 37 * i));
+        }
+    }
 }
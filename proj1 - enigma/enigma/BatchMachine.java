@@ -0,0 +1,308 @@
+package enigma;
+
+import java.util.Arrays;
+
+import static enigma.EnigmaException.*;
+
+/** Many Enigma machines of one MachineSpec, each in its own state (its
+ *  lane), converting together: the positions, ring settings and
+ *  plugboards of all lanes are held as parallel arrays of primitives,
+ *  one element per lane, and each keypress is made on every lane at
+ *  once.  This suits brute-force searches and simulations, which run
+ *  the same message through thousands of keys.
+ *
+ *  A keypress steps the rotors of all lanes, a rotor at a time, and
+ *  then passes each lane's character through the plugboard, rotors and
+ *  reflector a stage at a time, so that each stage is one loop over the
+ *  lanes that reads a table at a different index in each: a gather.
+ *  As in MachineState, the reflector and the slower rotors are folded
+ *  into one table for each lane, which is recomputed only when one of
+ *  them has moved; only the two rightmost rotors, which move often, are
+ *  taken stage by stage, so a keypress is seven stages however many
+ *  rotors there are.  Each lane converts exactly as a MachineState
+ *  (or a Machine) with the same positions, ring settings and plugboard
+ *  would.
+ *  @author Jenny Miao
+ */
+final class BatchMachine {
+
+    /** LANES machines of SPEC, each with every rotor at position 0 and
+     *  ring setting 0, and no plugboard. */
+    BatchMachine(MachineSpec spec, int lanes) {
+        if (lanes <= 0) {
+            throw error("a batch needs at least one lane");
+        }
+        _spec = spec;
+        _size = spec.alphabet().size();
+        _slots = spec.numRotors();
+        _foldTop = Math.max(0, _slots - 3);
+        _lanes = lanes;
+        _engages = new boolean[_slots][_size];
+        for (int i = 0; i < _slots; i++) {
+            for (int p = 0; p < _size; p++) {
+                _engages[i][p] = spec.engages(i, p);
+            }
+        }
+        _pos = new int[_slots][lanes];
+        _ring = new int[_slots][lanes];
+        _offset = new int[_slots][lanes];
+        _plugForward = new int[lanes * _size];
+        _plugBackward = new int[lanes * 2 * _size];
+        _folded = new int[lanes * 2 * _size];
+        _stale = new boolean[lanes];
+        Arrays.fill(_stale, true);
+        for (int lane = 0; lane < lanes; lane++) {
+            for (int c = 0; c < 2 * _size; c++) {
+                if (c < _size) {
+                    _plugForward[lane * _size + c] = c;
+                }
+                _plugBackward[lane * 2 * _size + c] = c % _size;
+            }
+        }
+        _chars = new int[lanes];
+        _path = new int[_size];
+    }
+
+    /** Return my specification. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the number of my lanes. */
+    int lanes() {
+        return _lanes;
+    }
+
+    /** Return the position of rotor I in lane LANE. */
+    int position(int lane, int i) {
+        return _pos[i][lane];
+    }
+
+    /** Return the ring setting of rotor I in lane LANE. */
+    int ring(int lane, int i) {
+        return _ring[i][lane];
+    }
+
+    /** Put rotor I of lane LANE at position POSN, in the range
+     *  0..size-1. */
+    void setPosition(int lane, int i, int posn) {
+        checkIndex(posn);
+        _pos[i][lane] = posn;
+        _offset[i][lane] = Math.floorMod(posn - _ring[i][lane], _size);
+        _stale[lane] |= i <= _foldTop;
+    }
+
+    /** Set the ring setting of rotor I of lane LANE to RING, in the range
+     *  0..size-1. */
+    void setRing(int lane, int i, int ring) {
+        checkIndex(ring);
+        _ring[i][lane] = ring;
+        _offset[i][lane] = Math.floorMod(_pos[i][lane] - ring, _size);
+        _stale[lane] |= i <= _foldTop;
+    }
+
+    /** Set the plugboard of lane LANE to PLUG, a permutation of my
+     *  alphabet. */
+    void setPlugboard(int lane, Permutation plug) {
+        for (int c = 0; c < 2 * _size; c++) {
+            if (c < _size) {
+                _plugForward[lane * _size + c] = plug.permute(c);
+            }
+            _plugBackward[lane * 2 * _size + c] = plug.invert(c);
+        }
+    }
+
+    /** Convert the character with index C on every lane, after first
+     *  advancing the rotors of every lane, storing the result of lane L
+     *  in RESULT[L]. */
+    void convert(int c, int[] result) {
+        checkIndex(c);
+        Arrays.fill(_chars, c);
+        press(_chars, result);
+    }
+
+    /** Convert the character with index CHARS[L] on each lane L, after
+     *  first advancing the rotors of every lane, storing the result in
+     *  RESULT[L].  CHARS and RESULT may be the same array. */
+    void convert(int[] chars, int[] result) {
+        for (int lane = 0; lane < _lanes; lane++) {
+            checkIndex(chars[lane]);
+        }
+        press(chars, result);
+    }
+
+    /** Convert the LEN characters with indices MSG[OFF] to MSG[OFF+LEN-1]
+     *  on every lane, storing the result of lane L in RESULT[L * LEN] to
+     *  RESULT[L * LEN + LEN - 1]. */
+    void convert(int[] msg, int off, int len, int[] result) {
+        int[] out = new int[_lanes];
+        for (int k = 0; k < len; k++) {
+            convert(msg[off + k], out);
+            for (int lane = 0; lane < _lanes; lane++) {
+                result[lane * len + k] = out[lane];
+            }
+        }
+    }
+
+    /** Check that C is the index of a character of my alphabet. */
+    private void checkIndex(int c) {
+        if (c < 0 || c >= _size) {
+            throw error("Index of character is not in range of alphabet size");
+        }
+    }
+
+    /** Advance the rotors of every lane, and then store the result of
+     *  passing CHARS[L] through lane L in RESULT[L].  Characters are
+     *  kept in the range 0..2*size-1 between stages, as for the tables
+     *  of MachineSpec, and reduced only by the tables of each lane,
+     *  which are repeated twice. */
+    private void press(int[] chars, int[] result) {
+        advanceRotors();
+        int lanes = _lanes, size = _size, last = _slots - 1;
+        for (int lane = 0; lane < lanes; lane++) {
+            if (_stale[lane]) {
+                fold(lane);
+            }
+        }
+        int[] x = _chars, plug = _plugForward, folded = _folded;
+        for (int lane = 0; lane < lanes; lane++) {
+            x[lane] = plug[lane * size + chars[lane]];
+        }
+        for (int i = last; i > _foldTop; i--) {
+            stage(_spec.forward(i), _offset[i]);
+        }
+        for (int lane = 0; lane < lanes; lane++) {
+            x[lane] = folded[lane * 2 * size + x[lane]];
+        }
+        for (int i = _foldTop + 1; i <= last; i++) {
+            stage(_spec.backward(i), _offset[i]);
+        }
+        plug = _plugBackward;
+        for (int lane = 0; lane < lanes; lane++) {
+            result[lane] = plug[lane * 2 * size + x[lane]];
+        }
+    }
+
+    /** Pass the character of each lane, in _chars, through the rotor
+     *  whose table (forward or backward) is TABLE, at the offsets
+     *  OFFSET of its lanes. */
+    private void stage(int[] table, int[] offset) {
+        int[] x = _chars;
+        for (int lane = 0; lane < _lanes; lane++) {
+            x[lane] = table[x[lane] + offset[lane]] - offset[lane];
+        }
+    }
+
+    /** Recompute the folded table of lane LANE: the path forward through
+     *  rotors _foldTop to 1, through the reflector, and back through
+     *  rotors 1 to _foldTop, all in their current positions, reduced
+     *  modulo the alphabet size.  The path of every character is taken
+     *  a rotor at a time, as for a keypress. */
+    private void fold(int lane) {
+        int size = _size, top = _foldTop, base = lane * 2 * size;
+        int[] path = _path;
+        for (int c = 0; c < size; c++) {
+            path[c] = c;
+        }
+        for (int i = top; i >= 0; i--) {
+            int[] table = _spec.forward(i);
+            int offset = _offset[i][lane];
+            for (int c = 0; c < size; c++) {
+                path[c] = table[path[c] + offset] - offset;
+            }
+        }
+        for (int i = 1; i <= top; i++) {
+            int[] table = _spec.backward(i);
+            int offset = _offset[i][lane];
+            for (int c = 0; c < size; c++) {
+                path[c] = table[path[c] + offset] - offset;
+            }
+        }
+        for (int c = 0; c < size; c++) {
+            int x = path[c] >= size ? path[c] - size : path[c];
+            _folded[base + c] = _folded[base + c + size] = x;
+        }
+        _stale[lane] = false;
+    }
+
+    /** Advance the rotors of every lane as for one keypress: in each
+     *  lane, a rotating rotor moves if it is the rightmost, if it is
+     *  engaged (see MachineSpec.engages), or if its right neighbor is
+     *  engaged, all as seen from the positions before the keypress.
+     *  Rotors are taken from left to right, so that each is tested
+     *  before its right neighbor moves. */
+    private void advanceRotors() {
+        int lanes = _lanes, size = _size, last = _slots - 1;
+        for (int i = 1; i < last; i++) {
+            if (!_spec.rotates(i)) {
+                continue;
+            }
+            int[] pos = _pos[i], offset = _offset[i], right = _pos[i + 1];
+            boolean[] engages = _engages[i], rightEngages = _engages[i + 1];
+            boolean[] stale = i <= _foldTop ? _stale : null;
+            for (int lane = 0; lane < lanes; lane++) {
+                if (engages[pos[lane]] | rightEngages[right[lane]]) {
+                    int p = pos[lane] + 1, d = offset[lane] + 1;
+                    pos[lane] = p == size ? 0 : p;
+                    offset[lane] = d == size ? 0 : d;
+                    if (stale != null) {
+                        stale[lane] = true;
+                    }
+                }
+            }
+        }
+        if (_spec.rotates(last)) {
+            int[] pos = _pos[last], offset = _offset[last];
+            for (int lane = 0; lane < lanes; lane++) {
+                int p = pos[lane] + 1, d = offset[lane] + 1;
+                pos[lane] = p == size ? 0 : p;
+                offset[lane] = d == size ? 0 : d;
+            }
+        }
+    }
+
+    /** My specification. */
+    private final MachineSpec _spec;
+
+    /** Size of the alphabet of _spec. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** The rightmost slot whose rotor is folded into the folded tables
+     *  (the reflector's, if there are fewer than three slots). */
+    private final int _foldTop;
+
+    /** _engages[I][P] is true iff rotor I engages its left neighbor at
+     *  position P (see MachineSpec.engages). */
+    private final boolean[][] _engages;
+
+    /** Number of lanes. */
+    private final int _lanes;
+
+    /** _pos[I][L], _ring[I][L] and _offset[I][L] are the position, ring
+     *  setting and position minus ring setting (modulo the alphabet
+     *  size) of rotor I in lane L. */
+    private final int[][] _pos, _ring, _offset;
+
+    /** _plugForward[L * size + C] is the plugboard of lane L applied to
+     *  C, and _plugBackward[L * 2 * size + C] its inverse applied to C
+     *  modulo size, for C up to 2 * size - 1. */
+    private final int[] _plugForward, _plugBackward;
+
+    /** _folded[L * 2 * size + C] is the folded table of lane L (see
+     *  fold) applied to C, for C up to 2 * size - 1. */
+    private final int[] _folded;
+
+    /** _stale[L] is true iff the folded table of lane L must be
+     *  recomputed before it is next used. */
+    private final boolean[] _stale;
+
+    /** The character of each lane between stages of a keypress. */
+    private final int[] _chars;
+
+    /** Scratch array for the paths of the characters through a folded
+     *  table. */
+    private final int[] _path;
+}
@@ -0,0 +1,159 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the BatchMachine class.
+ *  @author Jenny Miao
+ */
+public class BatchMachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LEN random letters of UPPER, chosen using RANDOM. */
+    private static String letters(Random random, int len) {
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < len; i += 1) {
+            result.append(UPPER.toChar(random.nextInt(UPPER.size())));
+        }
+        return result.toString();
+    }
+
+    /** Return a random plugboard of up to ten pairs of letters of UPPER,
+     *  in cycle notation, chosen using RANDOM. */
+    private static String plugboard(Random random) {
+        String perm = letters(random, 20);
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < perm.length(); i += 2) {
+            char a = perm.charAt(i), b = perm.charAt(i + 1);
+            if (a != b && result.indexOf(String.valueOf(a)) < 0
+                && result.indexOf(String.valueOf(b)) < 0) {
+                result.append('(').append(a).append(b).append(')');
+            }
+        }
+        return result.toString();
+    }
+
+    /** Check that each of LANES lanes of a BatchMachine of the spec of
+     *  MACHINE, in random positions with random ring settings and
+     *  plugboards chosen using RANDOM, converts a random message of LEN
+     *  characters as MACHINE does. */
+    private static void checkMatches(Machine machine, int lanes, int len,
+                                     Random random) {
+        int slots = machine.numRotors();
+        BatchMachine batch = new BatchMachine(machine.spec(), lanes);
+        String[] settings = new String[lanes], rings = new String[lanes],
+            plugs = new String[lanes];
+        for (int lane = 0; lane < lanes; lane += 1) {
+            settings[lane] = letters(random, slots - 1);
+            rings[lane] = letters(random, slots - 1);
+            plugs[lane] = plugboard(random);
+            for (int i = 1; i < slots; i += 1) {
+                batch.setRing(lane, i, UPPER.toInt(rings[lane]
+                                                   .charAt(i - 1)));
+                batch.setPosition(lane, i, UPPER.toInt(settings[lane]
+                                                       .charAt(i - 1)));
+            }
+            batch.setPlugboard(lane, new Permutation(plugs[lane], UPPER));
+        }
+        String msg = letters(random, len);
+        int[] result = new int[lanes * len];
+        batch.convert(Bombe.indices(UPPER, msg), 0, len, result);
+        for (int lane = 0; lane < lanes; lane += 1) {
+            machine.setRings(rings[lane]);
+            machine.setRotors(settings[lane]);
+            machine.setPlugboard(new Permutation(plugs[lane], UPPER));
+            String expected = machine.convert(msg);
+            for (int k = 0; k < len; k += 1) {
+                assertEquals(msg("checkMatches", "lane %d char %d",
+                                 lane, k),
+                             expected.charAt(k),
+                             UPPER.toChar(result[lane * len + k]));
+            }
+            for (int i = 1; i < slots; i += 1) {
+                assertEquals(machine.snapshot().position(i),
+                             batch.position(lane, i));
+            }
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesMachine() {
+        checkMatches(navalMachine(), 200, 700, new Random(25));
+    }
+
+    @Test
+    public void testFewSlots() {
+        Random random = new Random(26);
+        for (int slots = 2; slots <= 4; slots += 1) {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                          UPPER)));
+            String[] names = {"I", "II", "III"};
+            for (int i = 0; i < slots - 1; i += 1) {
+                rotors.add(new MovingRotor(names[i],
+                                           new Permutation(NAVALA
+                                                           .get(names[i]),
+                                                           UPPER),
+                                           NAVAL_NOTCHES.get(names[i])));
+            }
+            Machine machine = new Machine(UPPER, slots, slots - 1, rotors);
+            String[] order = new String[slots];
+            order[0] = "B";
+            System.arraycopy(names, 0, order, 1, slots - 1);
+            machine.insertRotors(order);
+            checkMatches(machine, 50, 1000, random);
+        }
+    }
+
+    @Test
+    public void testLaneInputs() {
+        Machine machine = navalMachine();
+        BatchMachine batch = new BatchMachine(machine.spec(), 3);
+        String[] msgs = {"FROMHISSHOULDERHIAWATHA",
+                         "TOOKTHECAMERAOFROSEWOOD",
+                         "MADEOFSLIDINGFOLDINGWAY"};
+        int[] chars = new int[3];
+        StringBuilder[] out = new StringBuilder[3];
+        for (int lane = 0; lane < 3; lane += 1) {
+            out[lane] = new StringBuilder();
+            batch.setPosition(lane, 1, UPPER.toInt('A'));
+            batch.setPosition(lane, 2, UPPER.toInt('X'));
+            batch.setPosition(lane, 3, UPPER.toInt('L'));
+            batch.setPosition(lane, 4, UPPER.toInt('E'));
+        }
+        for (int k = 0; k < msgs[0].length(); k += 1) {
+            for (int lane = 0; lane < 3; lane += 1) {
+                chars[lane] = UPPER.toInt(msgs[lane].charAt(k));
+            }
+            batch.convert(chars, chars);
+            for (int lane = 0; lane < 3; lane += 1) {
+                out[lane].append(UPPER.toChar(chars[lane]));
+            }
+        }
+        for (int lane = 0; lane < 3; lane += 1) {
+            machine.setRotors("AXLE");
+            assertEquals(machine.convert(msgs[lane]),
+                         out[lane].toString());
+        }
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testBadPosition() {
+        new BatchMachine(navalMachine().spec(), 2)
+            .setPosition(1, 2, 26);
+    }
+}
@@ -0,0 +1,883 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.EnigmaException.*;
+
+/** Micro-benchmarks for the enigma package.  Each benchmark is run for a
+ *  number of warm-up rounds, so that the JIT has compiled it, and then
+ *  timed over several measured rounds.  Results are reported in
+ *  nanoseconds per operation (for message conversions, per character).
+ *  Run with
+ *      java -cp .. enigma.Benchmarks [OPTIONS] [GROUP...]
+ *  where each GROUP is one of
+ *      permutation  Permutation against the HashMap form it replaced.
+ *      sweep        Machine.convert(int) on 5 to 500 naval rotors.
+ *      alphabet     Alphabet.toInt.
+ *      rotor        Permutation.permute/invert and
+ *                   Rotor.convertForward/Backward.
+ *      machine      Machine.convert(int).
+ *      message      Machine.convert(String).
+ *      main         Main processing a generated input file end to end.
+ *      ngram        NgramTable.score, in memory and mapped, against a
+ *                   HashMap of n-gram strings.
+ *      crib         CribScanner.offsets on a megabyte ciphertext against
+ *                   comparing the crib at each offset.
+ *      batch        BatchMachine.convert against a MachineState for
+ *                   each lane.
+ *  (all of them if none is given), and the OPTIONS, each a comma-separated
+ *  list of values, give the parameters over which the last eight groups
+ *  are run on generated machines (see Generated):
+ *      --alphabet=N,...  Alphabet sizes (even; default ALPHABET_SIZES).
+ *      --rotors=N,...    Rotor counts, at least 3 (default ROTOR_PARAMS).
+ *      --length=N,...    Message lengths (default MESSAGE_LENGTHS).
+ *  Each benchmark is reported under its name and parameters, so that the
+ *  results of two runs can be compared line by line.
+ *  @author Jenny Miao
+ */
+public class Benchmarks {
+
+    /** Run the benchmarks selected by ARGS (see above), printing the
+     *  results on the standard output. */
+    public static void main(String... args) {
+        ArrayList<String> groups = new ArrayList<>();
+        int[] sizes = ALPHABET_SIZES, rotors = ROTOR_PARAMS,
+            lengths = MESSAGE_LENGTHS;
+        for (String arg : args) {
+            if (arg.startsWith("--alphabet=")) {
+                sizes = parseList(arg.substring("--alphabet=".length()));
+            } else if (arg.startsWith("--rotors=")) {
+                rotors = parseList(arg.substring("--rotors=".length()));
+            } else if (arg.startsWith("--length=")) {
+                lengths = parseList(arg.substring("--length=".length()));
+            } else if (arg.startsWith("--") || !GROUPS.contains(arg)) {
+                throw error("unknown benchmark option or group: %s", arg);
+            } else {
+                groups.add(arg);
+            }
+        }
+        if (groups.isEmpty()) {
+            groups.addAll(GROUPS);
+        }
+        for (String group : groups) {
+            switch (group) {
+            case "permutation":
+                permutationBenchmarks();
+                break;
+            case "sweep":
+                rotorSweepBenchmarks();
+                break;
+            case "alphabet":
+                alphabetBenchmarks(sizes);
+                break;
+            case "rotor":
+                rotorBenchmarks(sizes);
+                break;
+            case "machine":
+                machineBenchmarks(sizes, rotors);
+                break;
+            case "message":
+                messageBenchmarks(sizes, rotors, lengths);
+                break;
+            case "main":
+                mainBenchmarks(sizes, rotors, lengths);
+                break;
+            case "ngram":
+                ngramBenchmarks(sizes);
+                break;
+            case "crib":
+                cribBenchmarks(sizes);
+                break;
+            case "batch":
+                batchBenchmarks(sizes, rotors);
+                break;
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /** Return the comma-separated positive integers in LIST. */
+    private static int[] parseList(String list) {
+        try {
+            int[] values =
+                Arrays.stream(list.split(",")).mapToInt(Integer::parseInt)
+                .toArray();
+            for (int value : values) {
+                if (value <= 0) {
+                    throw new NumberFormatException();
+                }
+            }
+            return values;
+        } catch (NumberFormatException excp) {
+            throw error("bad benchmark parameter list: %s", list);
+        }
+    }
+
+    /** Compare the compiled Permutation tables against the HashMap
+     *  representation they replaced. */
+    static void permutationBenchmarks() {
+        Alphabet alpha = new Alphabet();
+        String cycles = "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)";
+        Permutation perm = new Permutation(cycles, alpha);
+        HashPermutation hashed = new HashPermutation(cycles, alpha);
+
+        report("Permutation.permute(int)", time(() -> {
+            int c = 0;
+            for (int i = 0; i < OPS; i++) {
+                c = perm.permute(c + i);
+            }
+            return c;
+        }));
+        report("HashMap permute(int)", time(() -> {
+            int c = 0;
+            for (int i = 0; i < OPS; i++) {
+                c = hashed.permute(c + i);
+            }
+            return c;
+        }));
+        report("Permutation.invert(int)", time(() -> {
+            int c = 0;
+            for (int i = 0; i < OPS; i++) {
+                c = perm.invert(c + i);
+            }
+            return c;
+        }));
+        report("HashMap invert(int)", time(() -> {
+            int c = 0;
+            for (int i = 0; i < OPS; i++) {
+                c = hashed.invert(c + i);
+            }
+            return c;
+        }));
+    }
+
+    /** Time Machine.convert on machines of from 5 to 500 rotors (see
+     *  stackedMachine).  The rotors other than the rightmost are held in
+     *  a segment tree, so the time per character should grow only slowly
+     *  with the number of rotors. */
+    static void rotorSweepBenchmarks() {
+        for (int rotors : ROTOR_COUNTS) {
+            Machine machine = stackedMachine(rotors);
+            report("Machine.convert(int), " + rotors + " rotors", time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c = machine.convert(c);
+                }
+                return c;
+            }));
+        }
+    }
+
+    /** Return a machine of the letters A-Z with ROTORS rotors, at least
+     *  3: reflector B, fixed rotor Beta, and then naval rotor wirings
+     *  with assorted notches (some with none), given an arbitrary setting
+     *  and an empty plugboard. */
+    static Machine stackedMachine(int rotors) {
+        Alphabet upper = Generated.alphabet(26);
+        String[] notches = {"A", "AB", "Q", "ZA", "MZ", "BCD", "", "N"};
+        ArrayList<Rotor> all = new ArrayList<>();
+        all.add(new Reflector("B", new Permutation(NAVAL_B, upper)));
+        all.add(new FixedRotor("Beta", new Permutation(NAVAL_BETA, upper)));
+        String[] inserted = new String[rotors];
+        inserted[0] = "B";
+        inserted[1] = "Beta";
+        StringBuilder setting = new StringBuilder();
+        setting.append('C');
+        for (int i = 2; i < rotors; i++) {
+            inserted[i] = "M" + i;
+            all.add(new MovingRotor(inserted[i],
+                                    new Permutation(NAVAL_ROTORS[i % 8],
+                                                    upper),
+                                    notches[(i * 5) % 8]));
+            setting.append((char) ('A' + (i * 7) % 26));
+        }
+        Machine machine = new Machine(upper, rotors, rotors - 2, all);
+        machine.insertRotors(inserted);
+        machine.setRotors(setting.toString());
+        return machine;
+    }
+
+    /** Time Alphabet.toInt on alphabets of each of SIZES. */
+    static void alphabetBenchmarks(int[] sizes) {
+        for (int size : sizes) {
+            Alphabet alpha = Generated.alphabet(size);
+            char[] chars = alpha.getChars().toCharArray();
+            report("Alphabet.toInt", params(size), time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c += alpha.toInt(chars[(c + i) % chars.length]);
+                }
+                return c;
+            }));
+        }
+    }
+
+    /** Time Permutation.permute and invert and Rotor.convertForward and
+     *  convertBackward on rotors of alphabets of each of SIZES. */
+    static void rotorBenchmarks(int[] sizes) {
+        for (int size : sizes) {
+            Generated gen = new Generated(size, 3);
+            Rotor rotor = gen.rotor(2);
+            Permutation perm = rotor.permutation();
+            rotor.set(size / 3);
+            rotor.setRing(size / 5);
+            String params = params(size);
+            report("Permutation.permute(int)", params, time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c = perm.permute(c + i);
+                }
+                return c;
+            }));
+            report("Permutation.invert(int)", params, time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c = perm.invert(c + i);
+                }
+                return c;
+            }));
+            report("Rotor.convertForward", params, time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c = rotor.convertForward(c);
+                }
+                return c;
+            }));
+            report("Rotor.convertBackward", params, time(() -> {
+                int c = 0;
+                for (int i = 0; i < OPS; i++) {
+                    c = rotor.convertBackward(c);
+                }
+                return c;
+            }));
+        }
+    }
+
+    /** Time Machine.convert(int) on machines with each of SIZES
+     *  characters and each of ROTORS rotors. */
+    static void machineBenchmarks(int[] sizes, int[] rotors) {
+        for (int size : sizes) {
+            for (int count : rotors) {
+                Machine machine = new Generated(size, count).machine();
+                report("Machine.convert(int)", params(size, count),
+                       time(() -> {
+                           int c = 0;
+                           for (int i = 0; i < OPS; i++) {
+                               c = machine.convert(c);
+                           }
+                           return c;
+                       }));
+            }
+        }
+    }
+
+    /** Time Machine.convert(String), per character, on messages of each
+     *  of LENGTHS characters, on machines with each of SIZES characters
+     *  and each of ROTORS rotors.  The machine is reset before each
+     *  message, as for a new setting line. */
+    static void messageBenchmarks(int[] sizes, int[] rotors,
+                                  int[] lengths) {
+        for (int size : sizes) {
+            for (int count : rotors) {
+                Generated gen = new Generated(size, count);
+                Machine machine = gen.machine();
+                String setting = gen.setting();
+                for (int length : lengths) {
+                    String msg = gen.message(length);
+                    int messages = Math.max(1, OPS / length);
+                    report("Machine.convert(String)",
+                           params(size, count, length),
+                           time(() -> {
+                               int c = 0;
+                               for (int i = 0; i < messages; i++) {
+                                   machine.setRotors(setting);
+                                   c += machine.convert(msg).charAt(0);
+                               }
+                               return c;
+                           }, (long) messages * length, WARMUP, ROUNDS));
+                }
+            }
+        }
+    }
+
+    /** Time Main, per character, on generated configuration and input
+     *  files of about MAIN_CHARS message characters, in sections of each
+     *  of LENGTHS characters, for machines with each of SIZES characters
+     *  and each of ROTORS rotors.  Every section has a different setting
+     *  line, so the keystream cache is not used.  Alphabets that the
+     *  default character set, in which Main reads its files, cannot
+     *  encode are skipped (run with -Dfile.encoding=UTF-8 to include
+     *  them). */
+    static void mainBenchmarks(int[] sizes, int[] rotors, int[] lengths) {
+        try {
+            Path conf = Files.createTempFile("bench", ".conf");
+            Path in = Files.createTempFile("bench", ".in");
+            Path out = Files.createTempFile("bench", ".out");
+            try {
+                for (int size : sizes) {
+                    for (int count : rotors) {
+                        Generated gen = new Generated(size, count);
+                        if (!Charset.defaultCharset().newEncoder()
+                            .canEncode(gen.config())) {
+                            System.out.printf("Main%s skipped: alphabet not "
+                                              + "in default charset%n",
+                                              params(size, count));
+                            continue;
+                        }
+                        write(conf, gen.config());
+                        for (int length : lengths) {
+                            int sections = Math.max(1, MAIN_CHARS / length);
+                            write(in, gen.input(sections, length));
+                            String[] args = {conf.toString(), in.toString(),
+                                             out.toString()};
+                            report("Main", params(size, count, length),
+                                   time(() -> {
+                                       new Main(args).process();
+                                       return (int) out.toFile().length();
+                                   }, (long) sections * length,
+                                        MAIN_WARMUP, MAIN_ROUNDS));
+                        }
+                    }
+                }
+            } finally {
+                Files.delete(conf);
+                Files.delete(in);
+                Files.delete(out);
+            }
+        } catch (IOException excp) {
+            throw error("could not write benchmark files: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Time NgramTable.score, per character, with the longest n-grams
+     *  (up to quadgrams) that can be tabulated for alphabets of each of
+     *  SIZES, trained in memory and mapped from a table file, and the
+     *  same scoring by a HashMap from n-gram strings to log
+     *  probabilities. */
+    static void ngramBenchmarks(int[] sizes) {
+        try {
+            Path file = Files.createTempFile("bench", ".tab");
+            try {
+                for (int size : sizes) {
+                    int n = Math.min(4, (int) (Math.log(NgramTable.MAX_ENTRIES)
+                                               / Math.log(size)));
+                    Generated gen = new Generated(size, 3);
+                    Alphabet alpha = Generated.alphabet(size);
+                    String corpus = gen.message(NGRAM_CORPUS);
+                    NgramTable.Builder builder =
+                        new NgramTable.Builder(alpha, n).add(corpus);
+                    builder.write(file);
+                    NgramTable heap = builder.build(n),
+                        mapped = NgramTable.map(file, n);
+                    String msg = gen.message(NGRAM_TEXT);
+                    int[] text = new int[msg.length()];
+                    HashMap<String, Float> hashed = new HashMap<>();
+                    for (int i = 0; i < msg.length(); i++) {
+                        text[i] = alpha.toInt(msg.charAt(i));
+                    }
+                    for (int i = 0; i + n <= corpus.length(); i++) {
+                        String gram = corpus.substring(i, i + n);
+                        int index = 0;
+                        for (int k = 0; k < n; k++) {
+                            index = index * size
+                                + alpha.toInt(gram.charAt(k));
+                        }
+                        hashed.put(gram, heap.logProb(index));
+                    }
+                    int rounds = Math.max(1, OPS / text.length);
+                    String params = params(size) + " ngram=" + n;
+                    report("NgramTable.score, in memory", params,
+                           time(() -> {
+                               double sum = 0;
+                               for (int r = 0; r < rounds; r++) {
+                                   sum += heap.score(text, 0, text.length);
+                               }
+                               return (int) sum;
+                           }, (long) rounds * text.length, WARMUP, ROUNDS));
+                    report("NgramTable.score, mapped", params,
+                           time(() -> {
+                               double sum = 0;
+                               for (int r = 0; r < rounds; r++) {
+                                   sum += mapped.score(text, 0, text.length);
+                               }
+                               return (int) sum;
+                           }, (long) rounds * text.length, WARMUP, ROUNDS));
+                    report("HashMap n-gram score", params, time(() -> {
+                        double sum = 0;
+                        for (int r = 0; r < rounds; r++) {
+                            for (int i = 0; i + n <= msg.length(); i++) {
+                                Float logProb =
+                                    hashed.get(msg.substring(i, i + n));
+                                sum += logProb == null ? -10 : logProb;
+                            }
+                        }
+                        return (int) sum;
+                    }, (long) rounds * text.length, WARMUP, ROUNDS));
+                }
+            } finally {
+                Files.delete(file);
+            }
+        } catch (IOException excp) {
+            throw error("could not write benchmark files: %s",
+                        excp.getMessage());
+        }
+    }
+
+    /** Time CribScanner.offsets, per character of a random ciphertext
+     *  of CRIB_CIPHERTEXT characters, for a crib of CRIB_LENGTH, with
+     *  alphabets of each of SIZES, and the same search by comparing the
+     *  crib at each offset. */
+    static void cribBenchmarks(int[] sizes) {
+        for (int size : sizes) {
+            Generated gen = new Generated(size, 3);
+            Alphabet alpha = Generated.alphabet(size);
+            int[] cipher = Bombe.indices(alpha,
+                                         gen.message(CRIB_CIPHERTEXT)),
+                crib = Bombe.indices(alpha, gen.message(CRIB_LENGTH));
+            CribScanner scanner = new CribScanner(alpha, cipher);
+            String params = params(size) + " crib=" + CRIB_LENGTH;
+            report("CribScanner()", params,
+                   time(() -> new CribScanner(alpha, cipher).length(),
+                        cipher.length, WARMUP, ROUNDS));
+            report("CribScanner.offsets", params,
+                   time(() -> scanner.offsets(crib).length,
+                        cipher.length, WARMUP, ROUNDS));
+            report("Offsets by comparison", params, time(() -> {
+                int n = 0;
+                for (int k = 0; k + crib.length <= cipher.length; k++) {
+                    int j = 0;
+                    while (j < crib.length && crib[j] != cipher[k + j]) {
+                        j++;
+                    }
+                    n += j == crib.length ? 1 : 0;
+                }
+                return n;
+            }, cipher.length, WARMUP, ROUNDS));
+        }
+    }
+
+    /** Time BatchMachine.convert, per character of each lane, on a
+     *  message of BATCH_LENGTH characters and BATCH_LANES lanes in random
+     *  positions, on machines with each of SIZES characters and each of
+     *  ROTORS rotors, and the same conversions by a MachineState for
+     *  each lane. */
+    static void batchBenchmarks(int[] sizes, int[] rotors) {
+        for (int size : sizes) {
+            for (int count : rotors) {
+                Generated gen = new Generated(size, count);
+                MachineSpec spec = gen.machine().spec();
+                int[] msg = Bombe.indices(Generated.alphabet(size),
+                                          gen.message(BATCH_LENGTH)),
+                    result = new int[BATCH_LANES * msg.length];
+                BatchMachine batch = new BatchMachine(spec, BATCH_LANES);
+                MachineState[] states = new MachineState[BATCH_LANES];
+                Random random = new Random(size);
+                for (int lane = 0; lane < BATCH_LANES; lane++) {
+                    states[lane] = new MachineState(spec);
+                    for (int i = 1; i < count; i++) {
+                        int posn = random.nextInt(size);
+                        batch.setPosition(lane, i, posn);
+                        states[lane].setPosition(i, posn);
+                    }
+                }
+                long ops = (long) BATCH_LANES * msg.length;
+                String params = params(size, count, msg.length)
+                    + " lanes=" + BATCH_LANES;
+                report("BatchMachine.convert", params, time(() -> {
+                    batch.convert(msg, 0, msg.length, result);
+                    return result[0];
+                }, ops, WARMUP, ROUNDS));
+                report("MachineState.convert, per lane", params, time(() -> {
+                    int c = 0;
+                    for (MachineState state : states) {
+                        for (int k = 0; k < msg.length; k++) {
+                            c += state.convert(msg[k]);
+                        }
+                    }
+                    return c;
+                }, ops, WARMUP, ROUNDS));
+            }
+        }
+    }
+
+    /** Write TEXT to FILE in the default character set, as Main reads
+     *  it. */
+    private static void write(Path file, String text) throws IOException {
+        Files.write(file, text.getBytes(Charset.defaultCharset()));
+    }
+
+    /** Return the parameters VALUES (alphabet size, rotor count and
+     *  message length, as many as apply) formatted for report. */
+    private static String params(int... values) {
+        String[] names = {"n", "rotors", "len"};
+        StringBuilder result = new StringBuilder();
+        for (int i = 0; i < values.length; i++) {
+            result.append(String.format(" %s=%d", names[i], values[i]));
+        }
+        return result.toString();
+    }
+
+    /** A benchmark body that performs OPS operations and returns a value
+     *  depending on all of them, so that the work cannot be eliminated. */
+    interface Body {
+        /** Perform the benchmarked operations, returning a checksum. */
+        int run();
+    }
+
+    /** Return the mean time in nanoseconds of one of the OPS operations
+     *  performed by BODY, after WARMUP unmeasured rounds. */
+    static double time(Body body) {
+        return time(body, OPS, WARMUP, ROUNDS);
+    }
+
+    /** Return the mean time in nanoseconds of one of the OPS operations
+     *  performed by each call of BODY, timed over ROUNDS calls after
+     *  WARMUP unmeasured ones. */
+    static double time(Body body, long ops, int warmup, int rounds) {
+        for (int i = 0; i < warmup; i++) {
+            _sink += body.run();
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            _sink += body.run();
+        }
+        return (double) (System.nanoTime() - start) / rounds / ops;
+    }
+
+    /** Print the result NSPEROP of the benchmark named NAME. */
+    static void report(String name, double nsPerOp) {
+        report(name, "", nsPerOp);
+    }
+
+    /** Print the result NSPEROP of the benchmark named NAME, run with
+     *  the parameters PARAMS (see params). */
+    static void report(String name, String params, double nsPerOp) {
+        System.out.printf("%-48s %10.3f ns/op%n", name + params, nsPerOp);
+    }
+
+    /** A randomly wired machine with a given alphabet size and number of
+     *  rotors, available as objects, as configuration text, and with
+     *  settings and messages to go with it.  It has a reflector, a fixed
+     *  rotor and moving rotors with one to three notches each, all with
+     *  pawls.  The wiring depends only on the parameters, so the same
+     *  machine is measured in every run. */
+    static class Generated {
+
+        /** A machine with SIZE characters, which must be even, and
+         *  ROTORS (at least 3) rotors. */
+        Generated(int size, int rotors) {
+            if (size % 2 != 0 || size > MAX_ALPHABET || rotors < 3) {
+                throw error("cannot generate a machine with %d characters "
+                            + "and %d rotors", size, rotors);
+            }
+            _alphabet = alphabet(size);
+            _random = new Random(size * 1000003L + rotors);
+            _chars = _alphabet.getChars();
+            ArrayList<Integer> order = shuffled(size);
+            StringBuilder pairs = new StringBuilder();
+            for (int i = 0; i < size; i += 2) {
+                pairs.append('(').append(_chars.charAt(order.get(i)))
+                    .append(_chars.charAt(order.get(i + 1))).append(')');
+            }
+            _cycles.add(pairs.toString());
+            _kinds.add("R");
+            for (int r = 1; r < rotors; r++) {
+                _cycles.add(cycles(shuffled(size)));
+                if (r == 1) {
+                    _kinds.add("N");
+                } else {
+                    StringBuilder notches = new StringBuilder("M");
+                    for (int k = 1 + _random.nextInt(3); k > 0; k--) {
+                        notches.append(_chars.charAt(_random.nextInt(size)));
+                    }
+                    _kinds.add(notches.toString());
+                }
+            }
+        }
+
+        /** Return an alphabet of SIZE characters: the letters A-Z if SIZE
+         *  is at most 26, and otherwise SIZE consecutive letters from
+         *  U+0100 on. */
+        static Alphabet alphabet(int size) {
+            StringBuilder chars = new StringBuilder();
+            int first = size <= 26 ? 'A' : 0x100;
+            for (int i = 0; i < size; i++) {
+                chars.append((char) (first + i));
+            }
+            return new Alphabet(chars.toString());
+        }
+
+        /** Return the name of rotor I. */
+        String name(int i) {
+            return i == 0 ? "REF" : "R" + i;
+        }
+
+        /** Return rotor I. */
+        Rotor rotor(int i) {
+            Permutation perm = new Permutation(_cycles.get(i), _alphabet);
+            switch (_kinds.get(i).charAt(0)) {
+            case 'R':
+                return new Reflector(name(i), perm);
+            case 'N':
+                return new FixedRotor(name(i), perm);
+            default:
+                return new MovingRotor(name(i), perm,
+                                       _kinds.get(i).substring(1));
+            }
+        }
+
+        /** Return my machine, with all its rotors inserted in order and
+         *  set as by setting(). */
+        Machine machine() {
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            String[] names = new String[_cycles.size()];
+            for (int i = 0; i < names.length; i++) {
+                rotors.add(rotor(i));
+                names[i] = name(i);
+            }
+            Machine machine = new Machine(_alphabet, names.length,
+                                          names.length - 2, rotors);
+            machine.insertRotors(names);
+            machine.setRotors(setting());
+            return machine;
+        }
+
+        /** Return my configuration file text. */
+        String config() {
+            StringBuilder text = new StringBuilder();
+            text.append(_chars).append('\n');
+            text.append(_cycles.size()).append(' ')
+                .append(_cycles.size() - 2).append('\n');
+            for (int i = 0; i < _cycles.size(); i++) {
+                text.append(name(i)).append(' ').append(_kinds.get(i))
+                    .append(' ').append(_cycles.get(i)).append('\n');
+            }
+            return text.toString();
+        }
+
+        /** Return a random rotor setting for my machine. */
+        String setting() {
+            StringBuilder setting = new StringBuilder();
+            for (int i = 1; i < _cycles.size(); i++) {
+                setting.append(_chars.charAt(_random.nextInt(_chars.length())));
+            }
+            return setting.toString();
+        }
+
+        /** Return a random message of LENGTH characters. */
+        String message(int length) {
+            StringBuilder msg = new StringBuilder(length);
+            for (int i = 0; i < length; i++) {
+                msg.append(_chars.charAt(_random.nextInt(_chars.length())));
+            }
+            return msg.toString();
+        }
+
+        /** Return an input file of SECTIONS sections, each a setting line
+         *  with all my rotors and a random setting followed by a message
+         *  of LENGTH characters in lines of at most LINE_LENGTH. */
+        String input(int sections, int length) {
+            StringBuilder text = new StringBuilder();
+            for (int s = 0; s < sections; s++) {
+                text.append('*');
+                for (int i = 0; i < _cycles.size(); i++) {
+                    text.append(' ').append(name(i));
+                }
+                text.append(' ').append(setting()).append('\n');
+                String msg = message(length);
+                for (int k = 0; k < length; k += LINE_LENGTH) {
+                    text.append(msg, k, Math.min(length, k + LINE_LENGTH))
+                        .append('\n');
+                }
+            }
+            return text.toString();
+        }
+
+        /** Return a random ordering of 0 .. SIZE-1. */
+        private ArrayList<Integer> shuffled(int size) {
+            ArrayList<Integer> order = new ArrayList<>();
+            for (int i = 0; i < size; i++) {
+                order.add(i);
+            }
+            Collections.shuffle(order, _random);
+            return order;
+        }
+
+        /** Return the cycles, as for Permutation, of a random permutation
+         *  of ORDER.size() characters: ORDER cut into cycles of random
+         *  lengths. */
+        private String cycles(List<Integer> order) {
+            StringBuilder cycles = new StringBuilder();
+            for (int i = 0; i < order.size();) {
+                int len = 1 + _random.nextInt(order.size() - i);
+                cycles.append('(');
+                for (int end = i + len; i < end; i++) {
+                    cycles.append(_chars.charAt(order.get(i)));
+                }
+                cycles.append(')');
+            }
+            return cycles.toString();
+        }
+
+        /** My alphabet. */
+        private final Alphabet _alphabet;
+
+        /** The characters of _alphabet. */
+        private final String _chars;
+
+        /** Source of my wiring, settings and messages. */
+        private final Random _random;
+
+        /** The cycles of each rotor, from the reflector on. */
+        private final ArrayList<String> _cycles = new ArrayList<>();
+
+        /** The kind of each rotor, as in a configuration file: "R", "N",
+         *  or "M" followed by its notches. */
+        private final ArrayList<String> _kinds = new ArrayList<>();
+
+        /** Greatest alphabet size generated. */
+        static final int MAX_ALPHABET = 512;
+
+        /** Maximum length of a generated message line. */
+        static final int LINE_LENGTH = 60;
+    }
+
+    /** The permutation representation used before Permutation compiled
+     *  its cycles into tables: a map from character to character, with
+     *  every index converted through its alphabet on each call. */
+    static class HashPermutation {
+
+        /** A permutation of ALPHABET given by CYCLES, as for
+         *  Permutation. */
+        HashPermutation(String cycles, Alphabet alphabet) {
+            _alphabet = alphabet;
+            String[] split = cycles.replaceAll("\\s+", "").split("\\(");
+            for (int i = 1; i < split.length; i++) {
+                String cycle = split[i].substring(0, split[i].length() - 1);
+                for (int j = 0; j < cycle.length(); j++) {
+                    char from = cycle.charAt(j),
+                        to = cycle.charAt((j + 1) % cycle.length());
+                    _permute.put(from, to);
+                    _invert.put(to, from);
+                }
+            }
+            for (int i = 0; i < alphabet.size(); i++) {
+                char c = alphabet.toChar(i);
+                _permute.putIfAbsent(c, c);
+                _invert.putIfAbsent(c, c);
+            }
+        }
+
+        /** Return the result of applying this permutation to P. */
+        int permute(int p) {
+            char c = _alphabet.toChar(Math.floorMod(p, _alphabet.size()));
+            return _alphabet.toInt(_permute.get(c));
+        }
+
+        /** Return the result of applying the inverse of this permutation
+         *  to C. */
+        int invert(int c) {
+            char e = _alphabet.toChar(Math.floorMod(c, _alphabet.size()));
+            return _alphabet.toInt(_invert.get(e));
+        }
+
+        /** My alphabet. */
+        private final Alphabet _alphabet;
+        /** Forward character mapping. */
+        private final HashMap<Character, Character> _permute =
+            new HashMap<>();
+        /** Inverse character mapping. */
+        private final HashMap<Character, Character> _invert =
+            new HashMap<>();
+    }
+
+    /** Machine sizes measured by rotorSweepBenchmarks. */
+    static final int[] ROTOR_COUNTS = {5, 10, 20, 50, 100, 200, 500};
+
+    /** Cycles of the naval rotors I to VIII, used by stackedMachine. */
+    static final String[] NAVAL_ROTORS = {
+        "(AELTPHQXRU) (BKNW) (CMOY) (DFG) (IV) (JZ) (S)",
+        "(FIXVYOMW) (CDKLHUP) (ESZ) (BJ) (GR) (NT) (A) (Q)",
+        "(ABDHPEJT) (CFLVMZOYQIRWUKXSG) (N)",
+        "(AEPLIYWCOXMRFZBSTGJQNH) (DV) (KU)",
+        "(AVOLDRWFIUQ)(BZKSMNHYC) (EGTJPX)",
+        "(AJQDVLEOZWIYTS) (CGMNHFUX) (BPRK)",
+        "(ANOUPFRIMBZTLWKSVEGCJYDHXQ)",
+        "(AFLSETWUNDHOZVICQ) (BKJ) (GXY) (MPR)",
+    };
+
+    /** Cycles of the naval fixed rotor Beta. */
+    static final String NAVAL_BETA = "(ALBEVFCYODJWUGNMQTZSKPR) (HIX)";
+
+    /** Cycles of the naval reflector B. */
+    static final String NAVAL_B =
+        "(AE) (BN) (CK) (DQ) (FU) (GY) (HW) (IJ) (LO) (MP) (RX) (SZ) (TV)";
+
+    /** Names of the benchmark groups, in the order they are run. */
+    static final List<String> GROUPS =
+        Arrays.asList("permutation", "sweep", "alphabet", "rotor",
+                      "machine", "message", "main", "ngram",
+                      "crib", "batch");
+
+    /** Default alphabet sizes of generated machines. */
+    static final int[] ALPHABET_SIZES = {26, 64, 256};
+
+    /** Default rotor counts of generated machines. */
+    static final int[] ROTOR_PARAMS = {5, 20, 100};
+
+    /** Default message lengths. */
+    static final int[] MESSAGE_LENGTHS = {16, 256, 4096};
+
+    /** Approximate number of message characters in each input file
+     *  generated by mainBenchmarks. */
+    static final int MAIN_CHARS = 1 << 18;
+
+    /** Number of characters of the corpus from which ngramBenchmarks
+     *  trains its tables. */
+    static final int NGRAM_CORPUS = 1 << 20;
+
+    /** Number of characters of the text scored by ngramBenchmarks. */
+    static final int NGRAM_TEXT = 1 << 12;
+
+    /** Number of characters of the ciphertext scanned by
+     *  cribBenchmarks. */
+    static final int CRIB_CIPHERTEXT = 1 << 20;
+
+    /** Length of the crib of cribBenchmarks. */
+    static final int CRIB_LENGTH = 25;
+
+    /** Number of lanes of the BatchMachine of batchBenchmarks. */
+    static final int BATCH_LANES = 1 << 10;
+
+    /** Length of the message of batchBenchmarks. */
+    static final int BATCH_LENGTH = 256;
+
+    /** Number of unmeasured warm-up runs of Main per benchmark. */
+    static final int MAIN_WARMUP = 3;
+
+    /** Number of measured runs of Main per benchmark. */
+    static final int MAIN_ROUNDS = 5;
+
+    /** Operations per measured call of a benchmark body. */
+    static final int OPS = 1 << 20;
+
+    /** Number of unmeasured warm-up rounds per benchmark. */
+    static final int WARMUP = 20;
+
+    /** Number of measured rounds per benchmark. */
+    static final int ROUNDS = 20;
+
+    /** Accumulates benchmark results so that they are not dead code. */
+    private static int _sink;
+}
@@ -0,0 +1,597 @@
+package enigma;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext ("crib") attack in the manner of the Turing-Welchman
+ *  Bombe.  Given a crib, a stretch of plaintext believed to appear at a
+ *  known offset in a ciphertext, a Bombe tries every rotor order that the
+ *  available rotors allow and every start position of the rotors, and
+ *  reports as a Stop each one at which some plugboard is consistent with
+ *  the crib.
+ *
+ *  The crib and the ciphertext under it form the menu: a graph on the
+ *  letters with an edge from P to C for each position I at which P
+ *  enciphers to C.  With plugboard S (which, as on the real machine, is
+ *  taken to swap letters in pairs) and E_I the scrambler (the rotors and
+ *  reflector) at position I, each such edge requires that S(C) =
+ *  E_I(S(P)).  So a hypothesis for S of one letter of a connected part
+ *  of the menu determines S of every letter in it, by closure along the
+ *  edges and through the pairing itself (Welchman's diagonal board); the
+ *  hypothesis fails if it gives some letter two partners.  A position is
+ *  a stop if the parts of the menu have hypotheses that hold together.
+ *
+ *  Positions are tested on a ForkJoinPool, whose work-stealing balances
+ *  the load, each task taking a range of (order, position) pairs and
+ *  splitting it while it is large.  Stops assume that every ring setting
+ *  is the first letter (only the offset of position from ring setting
+ *  affects the wiring), so for other ring settings a turnover of a rotor
+ *  other than the rightmost within the crib may hide the true stop.
+ *  @author Jenny Miao
+ */
+class Bombe {
+
+    /** A Bombe for the crib CRIB, which is believed to be the plaintext
+     *  of the characters of CIPHERTEXT starting at OFFSET (from 0), on
+     *  the machines that can be made from the rotors of CATALOG (see
+     *  orders).  Whitespace in CRIB and CIPHERTEXT is ignored. */
+    Bombe(Machine catalog, String crib, String ciphertext, int offset) {
+        this(catalog, orders(catalog), crib, ciphertext, offset);
+    }
+
+    /** A Bombe for CRIB, CIPHERTEXT and OFFSET, as above, that tries
+     *  only the rotor orders ORDERS, each the names of rotors of CATALOG
+     *  to fill its slots, as for Machine.insertRotors. */
+    Bombe(Machine catalog, List<String[]> orders, String crib,
+          String ciphertext, int offset) {
+        this(catalog, orders, indices(catalog.alphabet(), crib),
+             indices(catalog.alphabet(), ciphertext), offset);
+    }
+
+    /** A Bombe for the crib and ciphertext whose characters have the
+     *  indices CRIB and CIPHER in the alphabet of CATALOG, with ORDERS
+     *  and OFFSET as above. */
+    Bombe(Machine catalog, List<String[]> orders, int[] crib, int[] cipher,
+          int offset) {
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        _crib = crib.clone();
+        if (_crib.length == 0) {
+            throw error("empty crib");
+        }
+        if (offset < 0 || offset + _crib.length > cipher.length) {
+            throw error("crib does not fit the ciphertext at offset %d",
+                        offset);
+        }
+        _offset = offset;
+        _cipher = Arrays.copyOfRange(cipher, offset, offset + _crib.length);
+        _slots = catalog.numRotors();
+        _positions = (long) Math.pow(_size, _slots - 1);
+        if (_positions <= 0 || (double) _positions * orders.size()
+            >= Long.MAX_VALUE) {
+            throw error("too many positions to search");
+        }
+        _orders = new ArrayList<>(orders);
+        _specs = new MachineSpec[orders.size()];
+        for (int k = 0; k < _specs.length; k++) {
+            _specs[k] = spec(catalog, orders.get(k));
+        }
+        buildMenu();
+    }
+
+    /** Return every rotor order allowed by CATALOG, as names of its
+     *  rotors from left to right: a Reflector, then rotors that neither
+     *  reflect nor rotate in the slots without pawls, then rotating
+     *  rotors in the numPawls() rightmost slots, none used twice. */
+    static List<String[]> orders(Machine catalog) {
+        List<String[]> result = new ArrayList<>();
+        String[] order = new String[catalog.numRotors()];
+        boolean[] used = new boolean[catalog.getAllRotors().size()];
+        addOrders(catalog, order, 0, used, result);
+        return result;
+    }
+
+    /** Add to RESULT every completion of ORDER from slot I on, in which
+     *  the rotors marked in USED are already taken. */
+    private static void addOrders(Machine catalog, String[] order, int i,
+                                  boolean[] used, List<String[]> result) {
+        if (i == order.length) {
+            result.add(order.clone());
+            return;
+        }
+        List<Rotor> all = catalog.getAllRotors();
+        int firstPawl = catalog.numRotors() - catalog.numPawls();
+        for (int r = 0; r < all.size(); r++) {
+            Rotor rotor = all.get(r);
+            boolean fits;
+            if (i == 0) {
+                fits = rotor.reflecting();
+            } else if (i < firstPawl) {
+                fits = !rotor.reflecting() && !rotor.rotates();
+            } else {
+                fits = rotor.rotates();
+            }
+            if (fits && !used[r]) {
+                used[r] = true;
+                order[i] = rotor.name();
+                addOrders(catalog, order, i + 1, used, result);
+                used[r] = false;
+            }
+        }
+    }
+
+    /** Return the specification of the machine with the rotors of
+     *  CATALOG named ORDER, which must fill its slots. */
+    static MachineSpec spec(Machine catalog, String[] order) {
+        if (order.length != catalog.numRotors()) {
+            throw error("rotor order does not fill %d slots",
+                        catalog.numRotors());
+        }
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        for (String name : order) {
+            rotors.add(rotor(catalog, name));
+        }
+        return new MachineSpec(catalog.alphabet(), rotors);
+    }
+
+    /** Return the rotor of CATALOG named NAME. */
+    private static Rotor rotor(Machine catalog, String name) {
+        for (Rotor rotor : catalog.getAllRotors()) {
+            if (rotor.name().equals(name)) {
+                return rotor;
+            }
+        }
+        throw error("unknown rotor %s", name);
+    }
+
+    /** Return the indices in ALPHABET of the non-whitespace characters
+     *  of TEXT. */
+    static int[] indices(Alphabet alphabet, String text) {
+        int[] result = new int[text.length()];
+        int n = 0;
+        for (int i = 0; i < text.length();) {
+            int cp = text.codePointAt(i);
+            i += Character.charCount(cp);
+            if (!Character.isWhitespace(cp)) {
+                int c = alphabet.indexOf(cp);
+                if (c < 0) {
+                    throw error("Character not in alphabet",
+                                new String(Character.toChars(cp)));
+                }
+                result[n] = c;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Build the menu from _crib and _cipher: the edges of each letter
+     *  and the connected parts of the menu. */
+    private void buildMenu() {
+        int[] degree = new int[_size];
+        for (int i = 0; i < _crib.length; i++) {
+            degree[_crib[i]] += 1;
+            degree[_cipher[i]] += 1;
+        }
+        _edges = new int[_size][];
+        for (int c = 0; c < _size; c++) {
+            _edges[c] = new int[degree[c]];
+            degree[c] = 0;
+        }
+        for (int i = 0; i < _crib.length; i++) {
+            int p = _crib[i], c = _cipher[i];
+            _edges[p][degree[p]++] = edge(c, i, true);
+            _edges[c][degree[c]++] = edge(p, i, false);
+        }
+        int[] part = new int[_size];
+        Arrays.fill(part, -1);
+        ArrayList<int[]> parts = new ArrayList<>();
+        for (int c = 0; c < _size; c++) {
+            if (part[c] < 0 && _edges[c].length > 0) {
+                int best = c, size = 0;
+                ArrayList<Integer> stack = new ArrayList<>();
+                stack.add(c);
+                part[c] = parts.size();
+                while (!stack.isEmpty()) {
+                    int u = stack.remove(stack.size() - 1);
+                    size += 1;
+                    if (_edges[u].length > _edges[best].length) {
+                        best = u;
+                    }
+                    for (int e : _edges[u]) {
+                        int v = edgeTo(e);
+                        if (part[v] < 0) {
+                            part[v] = parts.size();
+                            stack.add(v);
+                        }
+                    }
+                }
+                parts.add(new int[] {size, best});
+            }
+        }
+        Collections.sort(parts, (a, b) -> b[0] - a[0]);
+        _parts = new int[parts.size()];
+        for (int k = 0; k < _parts.length; k++) {
+            _parts[k] = parts.get(k)[1];
+        }
+    }
+
+    /** Return an edge of the menu to letter TO at crib position POSN,
+     *  along which the scrambler applies forward iff FORWARD. */
+    private int edge(int to, int posn, boolean forward) {
+        return ((posn * _size + to) << 1) | (forward ? 1 : 0);
+    }
+
+    /** Return the letter that edge E leads to. */
+    private int edgeTo(int e) {
+        return (e >>> 1) % _size;
+    }
+
+    /** Try every rotor order and position on the common ForkJoinPool,
+     *  returning the stops found, in order of rotor order and then
+     *  position (at most MAX_STOPS of them; see stopCount). */
+    List<Stop> run() {
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /** Try every rotor order and position on POOL, as for run(). */
+    List<Stop> run(ForkJoinPool pool) {
+        ConcurrentLinkedQueue<Stop> stops = new ConcurrentLinkedQueue<>();
+        _tested.reset();
+        _stopCount.set(0);
+        long start = System.nanoTime();
+        pool.invoke(new Search(0, _positions * _orders.size(), stops));
+        _nanos = System.nanoTime() - start;
+        ArrayList<Stop> result = new ArrayList<>(stops);
+        Collections.sort(result, (a, b) -> Long.compare(a._index, b._index));
+        return result;
+    }
+
+    /** Return the number of positions tested by the last run. */
+    long positionsTested() {
+        return _tested.sum();
+    }
+
+    /** Return the number of stops found by the last run, including any
+     *  beyond MAX_STOPS that were not kept. */
+    int stopCount() {
+        return _stopCount.get();
+    }
+
+    /** Return the number of positions tested per second by the last
+     *  run. */
+    double positionsPerSecond() {
+        return _nanos == 0 ? 0 : positionsTested() * 1e9 / _nanos;
+    }
+
+    /** A candidate setting found by a Bombe. */
+    static final class Stop {
+
+        /** A stop at INDEX in the search, with rotors named ROTORS, in
+         *  the positions given by SETTING, and the plugboard swaps in
+         *  PLUGBOARD (in cycle notation). */
+        private Stop(long index, String[] rotors, String setting,
+                     String plugboard) {
+            _index = index;
+            _rotors = rotors;
+            _setting = setting;
+            _plugboard = plugboard;
+        }
+
+        /** Return the names of my rotors, from the reflector on. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as in a setting line. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return the plugboard swaps of the letters in the menu, in
+         *  cycle notation.  The other letters are not determined. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return a setting line for me, with ring settings of the first
+         *  letter. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting
+                + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Index of this stop in the search order. */
+        private final long _index;
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor setting. */
+        private final String _setting;
+
+        /** My plugboard swaps. */
+        private final String _plugboard;
+    }
+
+    /** A task that tests the (order, position) pairs numbered FROM to
+     *  TO - 1, where pair K is position K % _positions (the digits of
+     *  the setting, base _size, rightmost rotor last) of order
+     *  K / _positions. */
+    private final class Search extends RecursiveAction {
+
+        /** A task testing pairs FROM to TO - 1, adding stops to
+         *  STOPS. */
+        Search(long from, long to, ConcurrentLinkedQueue<Stop> stops) {
+            _from = from;
+            _to = to;
+            _stops = stops;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > GRAIN) {
+                long mid = (_from + _to) >>> 1;
+                invokeAll(new Search(_from, mid, _stops),
+                          new Search(mid, _to, _stops));
+                return;
+            }
+            int len = _crib.length;
+            _subs = new int[len * _size];
+            _inverse = new int[len * _size];
+            _plug = new int[_size];
+            Arrays.fill(_plug, -1);
+            _trail = new int[2 * _size];
+            _queue = new int[_size];
+            MachineState state = null;
+            int order = -1;
+            for (long k = _from; k < _to; k++) {
+                if (k / _positions != order) {
+                    order = (int) (k / _positions);
+                    state = new MachineState(_specs[order]);
+                }
+                long posn = k % _positions;
+                for (int i = _slots - 1; i > 0; i--) {
+                    state.setPosition(i, (int) (posn % _size));
+                    posn /= _size;
+                }
+                state.advance(_offset);
+                state.substitutions(len, _subs);
+                for (int i = 0; i < len; i++) {
+                    int row = i * _size;
+                    for (int c = 0; c < _size; c++) {
+                        _inverse[row + _subs[row + c]] = c;
+                    }
+                }
+                if (solve(0)) {
+                    if (_stopCount.incrementAndGet() <= MAX_STOPS) {
+                        _stops.add(stop(k));
+                    }
+                    undo(0);
+                }
+            }
+            _tested.add(_to - _from);
+        }
+
+        /** Return true iff the parts of the menu from _parts[K] on have
+         *  hypotheses consistent with each other and with _plug, leaving
+         *  _plug with the first such found if so, and unchanged if
+         *  not. */
+        private boolean solve(int k) {
+            if (k == _parts.length) {
+                return true;
+            }
+            int t = _parts[k];
+            if (_plug[t] >= 0) {
+                return solve(k + 1);
+            }
+            int mark = _trailLength;
+            for (int x = 0; x < _size; x++) {
+                if (assign(t, x) && propagate() && solve(k + 1)) {
+                    return true;
+                }
+                undo(mark);
+            }
+            return false;
+        }
+
+        /** Record that the plugboard swaps A and X, returning false if
+         *  that contradicts _plug. */
+        private boolean assign(int a, int x) {
+            if (_plug[a] == x) {
+                return true;
+            } else if (_plug[a] >= 0 || _plug[x] >= 0) {
+                _queueLength = 0;
+                return false;
+            }
+            _plug[a] = x;
+            _plug[x] = a;
+            _trail[_trailLength++] = a;
+            _queue[_queueLength++] = a;
+            if (x != a) {
+                _trail[_trailLength++] = x;
+                _queue[_queueLength++] = x;
+            }
+            return true;
+        }
+
+        /** Follow the menu edges from the letters in _queue, assigning
+         *  the plugboard of the letters at their other ends, returning
+         *  false on a contradiction. */
+        private boolean propagate() {
+            while (_queueLength > 0) {
+                int u = _queue[--_queueLength], y = _plug[u];
+                for (int e : _edges[u]) {
+                    int row = (e >>> 1) / _size * _size;
+                    int z = (e & 1) != 0 ? _subs[row + y] : _inverse[row + y];
+                    if (!assign(edgeTo(e), z)) {
+                        return false;
+                    }
+                }
+            }
+            return true;
+        }
+
+        /** Undo the assignments to _plug after the first MARK entries of
+         *  _trail. */
+        private void undo(int mark) {
+            while (_trailLength > mark) {
+                _plug[_trail[--_trailLength]] = -1;
+            }
+            _queueLength = 0;
+        }
+
+        /** Return the stop for pair K, with the plugboard in _plug. */
+        private Stop stop(long k) {
+            String[] rotors = _orders.get((int) (k / _positions));
+            int[] setting = new int[_slots - 1];
+            long posn = k % _positions;
+            for (int i = _slots - 2; i >= 0; i--) {
+                setting[i] = _alphabet.toCodePoint((int) (posn % _size));
+                posn /= _size;
+            }
+            StringBuilder plugboard = new StringBuilder();
+            for (int c = 0; c < _size; c++) {
+                if (_plug[c] > c) {
+                    plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                        .appendCodePoint(_alphabet.toCodePoint(c))
+                        .appendCodePoint(_alphabet.toCodePoint(_plug[c]))
+                        .append(')');
+                }
+            }
+            return new Stop(k, rotors.clone(),
+                            new String(setting, 0, setting.length),
+                            plugboard.toString());
+        }
+
+        /** Range of pairs to test. */
+        private final long _from, _to;
+
+        /** Where stops are collected. */
+        private final ConcurrentLinkedQueue<Stop> _stops;
+
+        /** _subs[I * size + C] is the scrambler's image of C at crib
+         *  position I, and _inverse the same for its inverse. */
+        private int[] _subs, _inverse;
+
+        /** The plugboard partner of each letter, or -1 if not yet
+         *  known. */
+        private int[] _plug;
+
+        /** The letters assigned in _plug, in order, so that the
+         *  assignments can be undone. */
+        private int[] _trail;
+
+        /** Number of entries in _trail. */
+        private int _trailLength;
+
+        /** Letters whose menu edges have yet to be followed. */
+        private int[] _queue;
+
+        /** Number of entries in _queue. */
+        private int _queueLength;
+    }
+
+    /** Run a Bombe on the configuration file ARGS[0], with crib ARGS[1],
+     *  ciphertext ARGS[2] and the offset of the crib in the ciphertext
+     *  ARGS[3], printing each stop as a setting line and then the number
+     *  of positions tested per second.  Without ARGS[3], run one at each
+     *  offset where the crib can lie (see CribScanner), printing the
+     *  offset before its stops. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("usage: java enigma.Bombe CONFIG CRIB "
+                            + "CIPHERTEXT [OFFSET]");
+            }
+            Machine catalog = Main.readConfiguration(args[0]);
+            Alphabet alphabet = catalog.alphabet();
+            int[] crib = indices(alphabet, args[1]),
+                cipher = indices(alphabet, args[2]), offsets;
+            try {
+                offsets = args.length > 3
+                    ? new int[] {Integer.parseInt(args[3])}
+                    : new CribScanner(alphabet, cipher).offsets(crib);
+            } catch (NumberFormatException excp) {
+                throw error("offset must be an integer");
+            }
+            List<String[]> orders = orders(catalog);
+            for (int offset : offsets) {
+                Bombe bombe = new Bombe(catalog, orders, crib, cipher,
+                                        offset);
+                if (args.length == 3) {
+                    System.out.printf("Offset %d:%n", offset);
+                }
+                for (Stop stop : bombe.run()) {
+                    System.out.println(stop);
+                }
+                System.out.printf("%d stops; %d positions in %.3f s "
+                                  + "(%.0f positions/s)%n",
+                                  bombe.stopCount(),
+                                  bombe.positionsTested(),
+                                  bombe._nanos * 1e-9,
+                                  bombe.positionsPerSecond());
+            }
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Largest number of pairs a Search tests without splitting. */
+    static final int GRAIN = 1 << 10;
+
+    /** Largest number of stops kept by a run. */
+    static final int MAX_STOPS = 1 << 12;
+
+    /** The common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The crib and the ciphertext under it, as indices. */
+    private final int[] _crib, _cipher;
+
+    /** Offset of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Number of positions of each rotor order. */
+    private final long _positions;
+
+    /** The rotor orders tried. */
+    private final List<String[]> _orders;
+
+    /** The specification of the machine of each rotor order. */
+    private final MachineSpec[] _specs;
+
+    /** _edges[C] are the menu edges of letter C (see edge). */
+    private int[][] _edges;
+
+    /** A letter of most edges in each connected part of the menu,
+     *  largest part first. */
+    private int[] _parts;
+
+    /** Number of positions tested by the current or last run. */
+    private final LongAdder _tested = new LongAdder();
+
+    /** Number of stops found by the current or last run. */
+    private final AtomicInteger _stopCount = new AtomicInteger();
+
+    /** Duration of the last run, in nanoseconds. */
+    private long _nanos;
+}
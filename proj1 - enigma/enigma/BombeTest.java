@@ -0,0 +1,101 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Bombe class.
+ *  @author Jenny Miao
+ */
+public class BombeTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A plaintext, of which CRIB is the part from CRIB_OFFSET. */
+    private static final String PLAIN =
+        "MEETMEATTHEOLDBRIDGEWEATHERFORECASTFORTOMORROWISCLEAR";
+
+    /** The crib. */
+    private static final String CRIB = "WEATHERFORECASTFORTOMORROW";
+
+    /** Offset of CRIB in PLAIN. */
+    private static final int CRIB_OFFSET = PLAIN.indexOf(CRIB);
+
+    /** The setting with which PLAIN is enciphered. */
+    private static final String SETTING = "QEU";
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOrders() {
+        List<String[]> orders = Bombe.orders(navalCatalog("B", "C"));
+        assertEquals(2 * 5 * 4 * 3, orders.size());
+        for (String[] order : orders) {
+            assertEquals(4, order.length);
+            assertTrue(order[0].equals("B") || order[0].equals("C"));
+            assertNotEquals(order[1], order[2]);
+            assertNotEquals(order[1], order[3]);
+            assertNotEquals(order[2], order[3]);
+        }
+    }
+
+    @Test
+    public void testFindsSetting() {
+        String cipher = convert(ATTACK_ROTORS, SETTING, "AAA",
+                                ATTACK_PLUGBOARD, PLAIN);
+        List<String[]> orders = new ArrayList<>();
+        for (String[] order : Bombe.orders(navalCatalog("B", "C"))) {
+            if (order[0].equals("B") && !order[2].equals("I")
+                && !order[2].equals("III")) {
+                orders.add(order);
+            }
+        }
+        Bombe bombe = new Bombe(navalCatalog("B", "C"), orders, CRIB,
+                                cipher, CRIB_OFFSET);
+        List<Bombe.Stop> stops = bombe.run();
+        assertEquals((long) orders.size() * 26 * 26 * 26,
+                     bombe.positionsTested());
+        assertEquals(stops.size(), bombe.stopCount());
+        boolean found = false;
+        for (Bombe.Stop stop : stops) {
+            String plain = convert(stop.rotors(), stop.setting(), "AAA",
+                                   stop.plugboard(), cipher);
+            assertEquals(stop.toString(), CRIB,
+                         plain.substring(CRIB_OFFSET,
+                                         CRIB_OFFSET + CRIB.length()));
+            if (String.join(" ", stop.rotors()).equals("B IV II V")
+                && stop.setting().equals(SETTING)) {
+                found = true;
+                for (String pair : ATTACK_PLUGBOARD.split(" ")) {
+                    assertTrue(stop.toString(),
+                               stop.plugboard().contains(pair));
+                }
+            }
+        }
+        assertTrue("true setting not among " + stops, found);
+    }
+
+    @Test
+    public void testContradiction() {
+        Machine catalog = navalCatalog("B", "C");
+        Bombe bombe = new Bombe(catalog, Bombe.orders(catalog).subList(0, 1),
+                                "AAAA", "AAAA", 0);
+        assertEquals(0, bombe.run().size());
+        assertEquals(26 * 26 * 26, bombe.positionsTested());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new Bombe(navalCatalog("B", "C"), "ABCDEF", "ABCDE", 0);
+    }
+}
@@ -0,0 +1,226 @@
+package enigma;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayList;
+import java.util.zip.CRC32;
+
+import static enigma.EnigmaException.*;
+
+/** Compiled configurations: a compact binary form of a validated machine
+ *  configuration (alphabet, rotor tables, notches and kinds) that can be
+ *  memory-mapped and loaded without parsing.  A compiled file records the
+ *  checksum of the configuration text it was compiled from, so that one
+ *  that is stale (or damaged, for which it also records the checksum of
+ *  its own contents) is recognized and can be rebuilt.
+ *
+ *  The file is a header of MAGIC, VERSION, the source checksum and the
+ *  checksum of the rest (all big-endian), followed by: the alphabet size
+ *  and its code points; the number of rotor slots, the number of pawls,
+ *  and the number of rotors; and for each rotor its kind, its name, its
+ *  notch names (empty unless it is a MovingRotor), its permutation as
+ *  the image of each index, and the indices that appear in its cycles as
+ *  a bit set.  Strings are a length followed by UTF-16 code units.
+ *  @author Jenny Miao
+ */
+class ConfigFile {
+
+    /** Return the checksum of the contents of the file FILE, as recorded
+     *  in the files compiled from it. */
+    static long checksum(Path file) {
+        try {
+            CRC32 crc = new CRC32();
+            crc.update(Files.readAllBytes(file));
+            return crc.getValue();
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", file, excp.getMessage());
+        }
+    }
+
+    /** Write the configuration of MACHINE (its alphabet and available
+     *  rotors, which must be of the standard kinds, and its numbers of
+     *  rotor slots and pawls) to FILE, recording SOURCE as the checksum
+     *  of the configuration text it came from. */
+    static void write(Path file, Machine machine, long source) {
+        try {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            Alphabet alphabet = machine.alphabet();
+            int size = alphabet.size();
+            out.writeInt(size);
+            for (int i = 0; i < size; i++) {
+                out.writeInt(alphabet.toCodePoint(i));
+            }
+            out.writeInt(machine.numRotors());
+            out.writeInt(machine.numPawls());
+            out.writeInt(machine.getAllRotors().size());
+            for (Rotor rotor : machine.getAllRotors()) {
+                Permutation perm = rotor.permutation();
+                out.writeByte(kind(rotor));
+                writeString(out, rotor.name());
+                writeString(out, rotor instanceof MovingRotor
+                            ? ((MovingRotor) rotor).notches() : "");
+                long[] inCycle = new long[(size + 63) >> 6];
+                for (int k = 0; k < size; k++) {
+                    out.writeInt(perm.permute(k));
+                    if (perm.inPerm(k)) {
+                        inCycle[k >> 6] |= 1L << k;
+                    }
+                }
+                for (long word : inCycle) {
+                    out.writeLong(word);
+                }
+            }
+            out.flush();
+            byte[] body = bytes.toByteArray();
+            CRC32 crc = new CRC32();
+            crc.update(body);
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putLong(source)
+                .putLong(crc.getValue());
+            try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.WRITE,
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.TRUNCATE_EXISTING)) {
+                header.flip();
+                ByteBuffer contents = ByteBuffer.wrap(body);
+                while (header.hasRemaining() || contents.hasRemaining()) {
+                    channel.write(new ByteBuffer[] {header, contents});
+                }
+            }
+        } catch (IOException excp) {
+            throw error("could not write compiled configuration %s: %s",
+                        file, excp.getMessage());
+        }
+    }
+
+    /** Return a machine configured as recorded in the compiled
+     *  configuration FILE, which is memory-mapped, or null if FILE does
+     *  not exist, was not compiled from a configuration text with
+     *  checksum SOURCE, or is damaged. */
+    static Machine read(Path file, long source) {
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(file)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read compiled configuration %s: %s",
+                        file, excp.getMessage());
+        }
+        try {
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION
+                || buf.getLong() != source) {
+                return null;
+            }
+            long expected = buf.getLong();
+            CRC32 crc = new CRC32();
+            crc.update(buf.duplicate());
+            if (crc.getValue() != expected) {
+                return null;
+            }
+            int size = buf.getInt();
+            int[] codePoints = new int[size];
+            for (int i = 0; i < size; i++) {
+                codePoints[i] = buf.getInt();
+            }
+            Alphabet alphabet = new Alphabet(new String(codePoints, 0, size));
+            int numRotors = buf.getInt(), numPawls = buf.getInt();
+            ArrayList<Rotor> rotors = new ArrayList<>();
+            for (int r = buf.getInt(); r > 0; r--) {
+                rotors.add(readRotor(buf, alphabet));
+            }
+            return new Machine(alphabet, numRotors, numPawls, rotors);
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | NegativeArraySizeException | EnigmaException excp) {
+            return null;
+        }
+    }
+
+    /** Return the rotor described at the current position of BUF, whose
+     *  alphabet is ALPHABET. */
+    private static Rotor readRotor(ByteBuffer buf, Alphabet alphabet) {
+        int size = alphabet.size();
+        byte kind = buf.get();
+        String name = readString(buf), notches = readString(buf);
+        int[] forward = new int[size];
+        for (int k = 0; k < size; k++) {
+            forward[k] = buf.getInt();
+        }
+        boolean[] inCycle = new boolean[size];
+        for (int w = 0; w < (size + 63) >> 6; w++) {
+            long word = buf.getLong();
+            for (int k = w << 6; k < Math.min(size, (w + 1) << 6); k++) {
+                inCycle[k] = (word & (1L << k)) != 0;
+            }
+        }
+        Permutation perm = new Permutation(alphabet, forward, inCycle);
+        switch (kind) {
+        case MOVING:
+            return new MovingRotor(name, perm, notches);
+        case FIXED:
+            return new FixedRotor(name, perm);
+        case REFLECTOR:
+            return new Reflector(name, perm);
+        case PLAIN:
+            return new Rotor(name, perm);
+        default:
+            throw error("unknown rotor kind in compiled configuration");
+        }
+    }
+
+    /** Return the code for the kind of ROTOR. */
+    private static byte kind(Rotor rotor) {
+        if (rotor instanceof MovingRotor) {
+            return MOVING;
+        } else if (rotor instanceof Reflector) {
+            return REFLECTOR;
+        } else if (rotor instanceof FixedRotor) {
+            return FIXED;
+        } else {
+            return PLAIN;
+        }
+    }
+
+    /** Write STR to OUT as its length followed by its UTF-16 code
+     *  units. */
+    static void writeString(DataOutputStream out, String str)
+        throws IOException {
+        out.writeInt(str.length());
+        out.writeChars(str);
+    }
+
+    /** Return the string at the current position of BUF, as written by
+     *  writeString. */
+    static String readString(ByteBuffer buf) {
+        char[] chars = new char[buf.getInt()];
+        for (int i = 0; i < chars.length; i++) {
+            chars[i] = buf.getChar();
+        }
+        return new String(chars);
+    }
+
+    /** First word of every compiled configuration file. */
+    static final int MAGIC = 0x456e4366;
+
+    /** Version of the compiled configuration format. */
+    static final int VERSION = 1;
+
+    /** Size in bytes of the header of a compiled configuration file. */
+    private static final int HEADER_SIZE = 24;
+
+    /** Codes for the kinds of rotor. */
+    private static final byte PLAIN = 0, FIXED = 1, REFLECTOR = 2,
+        MOVING = 3;
+}
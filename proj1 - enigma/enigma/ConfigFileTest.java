@@ -0,0 +1,86 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the ConfigFile class.
+ *  @author Jenny Miao
+ */
+public class ConfigFileTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Set up MACHINE as "* B Beta III IV I AXLE (HQ) (EX)" and return the
+     *  conversion of MSG. */
+    private static String setUpAndConvert(Machine machine, String msg) {
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        machine.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        return machine.convert(msg);
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        Path file = Files.createTempFile("enigma", ".bin");
+        try {
+            Machine original = fourRotorCatalog();
+            ConfigFile.write(file, original, 42);
+            Machine loaded = ConfigFile.read(file, 42);
+            assertNotNull(loaded);
+            assertEquals(5, loaded.numRotors());
+            assertEquals(3, loaded.numPawls());
+            assertEquals(original.getAllRotors().size(),
+                         loaded.getAllRotors().size());
+            for (int i = 0; i < original.getAllRotors().size(); i += 1) {
+                Rotor r0 = original.getAllRotors().get(i),
+                    r1 = loaded.getAllRotors().get(i);
+                assertEquals(r0.name(), r1.name());
+                assertEquals(r0.getClass(), r1.getClass());
+                for (int k = 0; k < UPPER.size(); k += 1) {
+                    assertEquals(r0.permutation().permute(k),
+                                 r1.permutation().permute(k));
+                    assertEquals(r0.permutation().inPerm(k),
+                                 r1.permutation().inPerm(k));
+                    assertEquals(r0.notchAt(k), r1.notchAt(k));
+                }
+            }
+            String msg = "FROMHISSHOULDERHIAWATHA";
+            assertEquals(setUpAndConvert(fourRotorCatalog(), msg),
+                         setUpAndConvert(loaded, msg));
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testStaleOrDamaged() throws IOException {
+        Path file = Files.createTempFile("enigma", ".bin");
+        try {
+            ConfigFile.write(file, fourRotorCatalog(), 42);
+            assertNull(ConfigFile.read(file, 43));
+            byte[] bytes = Files.readAllBytes(file);
+            bytes[bytes.length / 2] ^= 1;
+            Files.write(file, bytes);
+            assertNull(ConfigFile.read(file, 42));
+            Files.write(file, new byte[3]);
+            assertNull(ConfigFile.read(file, 42));
+        } finally {
+            Files.delete(file);
+        }
+        assertNull(ConfigFile.read(file, 42));
+    }
+}
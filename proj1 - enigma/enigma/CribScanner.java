@@ -0,0 +1,124 @@
+package enigma;
+
+import java.util.Arrays;
+
+/** Finds the offsets at which a crib can lie in a ciphertext.  An Enigma
+ *  never enciphers a character as itself (its reflector has no fixed
+ *  points, and the plugboard and rotors only conjugate it), so a crib
+ *  cannot lie where any of its characters is over the same character of
+ *  the ciphertext.
+ *
+ *  A scanner holds, for each character of the alphabet, the set of
+ *  positions at which it occurs in the ciphertext as a bit set in an
+ *  array of longs.  An offset is ruled out if, for some position J of
+ *  the crib, the ciphertext at the offset plus J is the crib's
+ *  character J; so the offsets ruled out are the union, over J, of the
+ *  bit set of the crib's character J shifted down by J, formed 64
+ *  offsets at a time.  A scan takes time proportional to the length of
+ *  the crib times a 64th of the length of the ciphertext, and the bit
+ *  sets are built once, in linear time, for any number of cribs.
+ *  @author Jenny Miao
+ */
+class CribScanner {
+
+    /** A scanner of CIPHERTEXT (ignoring whitespace), whose characters
+     *  are in ALPHABET. */
+    CribScanner(Alphabet alphabet, String ciphertext) {
+        this(alphabet, Bombe.indices(alphabet, ciphertext));
+    }
+
+    /** A scanner of the ciphertext whose characters have the indices
+     *  CIPHER in ALPHABET. */
+    CribScanner(Alphabet alphabet, int[] cipher) {
+        _alphabet = alphabet;
+        _length = cipher.length;
+        int words = (cipher.length >> LOG_WORD_SIZE) + 1;
+        _occurs = new long[alphabet.size()][];
+        for (int i = 0; i < cipher.length; i++) {
+            long[] bits = _occurs[cipher[i]];
+            if (bits == null) {
+                bits = _occurs[cipher[i]] = new long[words];
+            }
+            bits[i >> LOG_WORD_SIZE] |= 1L << i;
+        }
+    }
+
+    /** Return the number of characters in my ciphertext. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the offsets at which CRIB (ignoring whitespace) can lie in
+     *  my ciphertext, in increasing order. */
+    int[] offsets(String crib) {
+        return offsets(Bombe.indices(_alphabet, crib));
+    }
+
+    /** Return the offsets at which the crib whose characters have the
+     *  indices CRIB can lie in my ciphertext, in increasing order. */
+    int[] offsets(int[] crib) {
+        int count = _length - crib.length + 1;
+        if (count <= 0) {
+            return new int[0];
+        }
+        long[] excluded = excluded(crib, count);
+        int[] result = new int[count];
+        int n = 0;
+        for (int w = 0; w < excluded.length; w++) {
+            long open = ~excluded[w];
+            if (w == excluded.length - 1 && (count & WORD_MASK) != 0) {
+                open &= (1L << (count & WORD_MASK)) - 1;
+            }
+            while (open != 0) {
+                result[n] = (w << LOG_WORD_SIZE)
+                    + Long.numberOfTrailingZeros(open);
+                n += 1;
+                open &= open - 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return a bit set of the first COUNT offsets of the crib whose
+     *  characters have the indices CRIB, with the bit for each offset
+     *  that is ruled out set. */
+    private long[] excluded(int[] crib, int count) {
+        int words = (count + WORD_MASK) >> LOG_WORD_SIZE;
+        long[] result = new long[words];
+        for (int j = 0; j < crib.length; j++) {
+            long[] bits = _occurs[crib[j]];
+            if (bits == null) {
+                continue;
+            }
+            int shift = j & WORD_MASK, from = j >> LOG_WORD_SIZE;
+            if (shift == 0) {
+                for (int w = 0; w < words; w++) {
+                    result[w] |= bits[w + from];
+                }
+            } else {
+                for (int w = 0; w < words; w++) {
+                    long high = w + from + 1 < bits.length
+                        ? bits[w + from + 1] << (Long.SIZE - shift) : 0;
+                    result[w] |= (bits[w + from] >>> shift) | high;
+                }
+            }
+        }
+        return result;
+    }
+
+    /** Log base 2 of the number of bits in a long. */
+    private static final int LOG_WORD_SIZE = 6;
+
+    /** Mask of the index of a bit within a long. */
+    private static final int WORD_MASK = Long.SIZE - 1;
+
+    /** The alphabet of my ciphertext. */
+    private final Alphabet _alphabet;
+
+    /** Number of characters in my ciphertext. */
+    private final int _length;
+
+    /** _occurs[C] is the bit set of the positions of character C in my
+     *  ciphertext, or null if it does not occur. */
+    private final long[][] _occurs;
+}
@@ -0,0 +1,93 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CribScanner class.
+ *  @author Jenny Miao
+ */
+public class CribScannerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the offsets at which CRIB can lie in CIPHER, found by
+     *  comparing them at every offset. */
+    private static int[] naiveOffsets(int[] crib, int[] cipher) {
+        int[] result = new int[Math.max(0, cipher.length - crib.length + 1)];
+        int n = 0;
+        for (int k = 0; k + crib.length <= cipher.length; k += 1) {
+            boolean open = true;
+            for (int j = 0; j < crib.length && open; j += 1) {
+                open = crib[j] != cipher[k + j];
+            }
+            if (open) {
+                result[n] = k;
+                n += 1;
+            }
+        }
+        return Arrays.copyOf(result, n);
+    }
+
+    /** Return LEN random indices less than SIZE, using RANDOM. */
+    private static int[] random(Random random, int len, int size) {
+        int[] result = new int[len];
+        for (int i = 0; i < len; i += 1) {
+            result[i] = random.nextInt(size);
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testMatchesNaive() {
+        Random random = new Random(23);
+        Alphabet alphabet = new Alphabet("ABCDEFGHIJKLMNOPQRSTUVWXYZ");
+        for (int trial = 0; trial < 2000; trial += 1) {
+            int size = 2 + random.nextInt(25);
+            int[] cipher = random(random, random.nextInt(400), size),
+                crib = random(random, 1 + random.nextInt(140), size);
+            CribScanner scanner = new CribScanner(alphabet, cipher);
+            assertEquals(cipher.length, scanner.length());
+            assertArrayEquals(msg("testMatchesNaive", "trial %d", trial),
+                              naiveOffsets(crib, cipher),
+                              scanner.offsets(crib));
+        }
+    }
+
+    @Test
+    public void testStrings() {
+        CribScanner scanner = new CribScanner(UPPER, "ABCAB CABC");
+        assertArrayEquals(new int[] {0, 2, 3, 5, 6},
+                          scanner.offsets("BC A"));
+        assertArrayEquals(new int[] {0, 1, 2, 3, 4, 5, 6, 7, 8},
+                          scanner.offsets("Z"));
+        assertArrayEquals(new int[0], scanner.offsets("ZZZZZZZZZZZ"));
+    }
+
+    @Test
+    public void testTrueOffsetFound() {
+        Machine machine = navalMachine();
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        String plain = "THEWEATHERTODAYWILLBECLEARANDCOLDWITHWINDFROMTHE"
+            + "NORTHEASTHEILHITLER";
+        String cipher = machine.convert(plain);
+        CribScanner scanner = new CribScanner(UPPER, cipher);
+        int[] offsets = scanner.offsets("WEATHER");
+        assertTrue(Arrays.binarySearch(offsets, plain.indexOf("WEATHER"))
+                   >= 0);
+        assertTrue(offsets.length < cipher.length() - 6);
+    }
+}
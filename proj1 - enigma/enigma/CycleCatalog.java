@@ -0,0 +1,698 @@
+package enigma;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static enigma.EnigmaException.*;
+
+/** A catalog of the characteristics of the start positions of a machine,
+ *  after Rejewski.  A message key of three letters was sent enciphered
+ *  twice from the day's start position, so that if A, B, ..., F are the
+ *  substitutions of the machine at the first six keypresses, the
+ *  indicators of a day's messages show the products AD (first A, then
+ *  D), BE and CF: the first and fourth letters of an indicator are X and
+ *  AD(X), and so on.  The plugboard only conjugates these products, so
+ *  the lengths of their cycles (their cycle structure) depend on the
+ *  rotor order and positions alone, and a day's indicators narrow the
+ *  start position down to those of the same structure.
+ *
+ *  A CycleCatalog enumerates every rotor order and start position of a
+ *  configuration, with ring settings of the first letter and no
+ *  plugboard, and builds an index file of the setting numbers sorted by
+ *  a 64-bit hash of the cycle structures of their products, which is
+ *  binary-searched to look up a structure, memory-mapped a window at a
+ *  time, since an index of many rotor orders may be far larger than a
+ *  single mapping can be.  Candidates
+ *  whose hash matches are checked against the structure itself, so
+ *  lookups are exact.  The settings are divided into parts of PART_SIZE,
+ *  which are computed on a ForkJoinPool, sorted, and written to part
+ *  files beside the index, each complete before it appears; a build
+ *  that is interrupted resumes from the parts already written, and the
+ *  parts are finally merged into the index.
+ *
+ *  All files are big-endian, as in ConfigFile.  An index file is MAGIC,
+ *  VERSION, the checksum of the configuration text, the number of slots
+ *  and the number of rotor orders, the names of the rotors of each
+ *  order, and the number of settings; then, at a multiple of 8 bytes,
+ *  a pair of longs (hash, setting number) for each setting, in order.
+ *  A part file is PART_MAGIC, VERSION, the checksum, the part number and
+ *  the number of its settings, followed by its pairs in order.
+ *  @author Jenny Miao
+ */
+class CycleCatalog {
+
+    /** A catalog of the machines that can be made from the rotors of
+     *  CATALOG (see Bombe.orders), whose configuration text has checksum
+     *  SOURCE (see ConfigFile.checksum). */
+    CycleCatalog(Machine catalog, long source) {
+        this(catalog, Bombe.orders(catalog), source);
+    }
+
+    /** A catalog of the rotor orders ORDERS, each the names of rotors of
+     *  CATALOG to fill its slots, whose configuration text has checksum
+     *  SOURCE. */
+    CycleCatalog(Machine catalog, List<String[]> orders, long source) {
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        _slots = catalog.numRotors();
+        _source = source;
+        _positions = (long) Math.pow(_size, _slots - 1);
+        if (_positions <= 0 || (double) _positions * orders.size()
+            >= Long.MAX_VALUE) {
+            throw error("too many positions to catalog");
+        }
+        _orders = new ArrayList<>(orders);
+        _specs = new MachineSpec[orders.size()];
+        for (int k = 0; k < _specs.length; k++) {
+            _specs[k] = Bombe.spec(catalog, orders.get(k));
+        }
+    }
+
+    /** Build the index file INDEX on the common ForkJoinPool, resuming
+     *  from any part files left by an earlier build. */
+    void build(Path index) {
+        buildParts(index, ForkJoinPool.commonPool());
+        merge(index);
+    }
+
+    /** Write the part files of INDEX that are missing or damaged,
+     *  computing them on POOL, and return the number written. */
+    int buildParts(Path index, ForkJoinPool pool) {
+        ArrayList<RecursiveAction> parts = new ArrayList<>();
+        AtomicInteger written = new AtomicInteger();
+        for (long k = 0; k < partCount(); k++) {
+            long part = k;
+            if (readPart(index, part) == null) {
+                parts.add(new RecursiveAction() {
+                    @Override
+                    protected void compute() {
+                        writePart(index, part);
+                        written.incrementAndGet();
+                    }
+                });
+            }
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(parts);
+            }
+        });
+        return written.get();
+    }
+
+    /** Merge the part files of INDEX, which must all be present, into
+     *  INDEX, and delete them. */
+    void merge(Path index) {
+        int count = (int) partCount();
+        LongBuffer[] parts = new LongBuffer[count];
+        for (int k = 0; k < count; k++) {
+            parts[k] = readPart(index, k);
+            if (parts[k] == null) {
+                throw error("part %d of %s is missing", k, index);
+            }
+        }
+        Path temp = Paths.get(index + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp)) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(file, BLOCK));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(_source);
+            out.writeInt(_slots);
+            out.writeInt(_orders.size());
+            for (String[] order : _orders) {
+                for (String name : order) {
+                    ConfigFile.writeString(out, name);
+                }
+            }
+            out.writeLong(settings());
+            while (out.size() % Long.BYTES != 0) {
+                out.writeByte(0);
+            }
+            PriorityQueue<Integer> heads = new PriorityQueue<>(
+                (a, b) -> compare(parts[a], parts[b]));
+            for (int k = 0; k < count; k++) {
+                if (parts[k].hasRemaining()) {
+                    heads.add(k);
+                }
+            }
+            while (!heads.isEmpty()) {
+                int k = heads.poll();
+                out.writeLong(parts[k].get());
+                out.writeLong(parts[k].get());
+                if (parts[k].hasRemaining()) {
+                    heads.add(k);
+                }
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", index, excp.getMessage());
+        }
+        try {
+            Files.move(temp, index, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+            for (int k = 0; k < count; k++) {
+                Files.delete(partPath(index, k));
+            }
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", index, excp.getMessage());
+        }
+    }
+
+    /** Return the settings in the index file INDEX whose doubled
+     *  indicators have the cycle structures STRUCTURES (of AD, BE and
+     *  CF, as returned by structures), in increasing order of setting
+     *  number. */
+    List<Setting> lookup(Path index, int[][] structures) {
+        return lookup(index, structures, WINDOW_SIZE);
+    }
+
+    /** Return the settings in INDEX with cycle structures STRUCTURES, as
+     *  for lookup(INDEX, STRUCTURES), mapping the pairs of the index at
+     *  most WINDOW bytes at a time. */
+    List<Setting> lookup(Path index, int[][] structures, long window) {
+        long hash = hash(structures);
+        ArrayList<Setting> result = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(index)) {
+            long length = channel.size();
+            ByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                         Math.min(length, MAX_HEADER));
+            if (buf.getInt() != MAGIC || buf.getInt() != VERSION) {
+                throw error("%s is not a cycle catalog", index);
+            } else if (buf.getLong() != _source) {
+                throw error("%s was built from another configuration",
+                            index);
+            }
+            int slots = buf.getInt(), count = buf.getInt();
+            if (slots != _slots || count < 0 || count > buf.remaining()) {
+                throw error("damaged cycle catalog %s", index);
+            }
+            String[][] orders = new String[count][slots];
+            MachineSpec[] specs = new MachineSpec[count];
+            for (int k = 0; k < count; k++) {
+                for (int i = 0; i < slots; i++) {
+                    orders[k][i] = ConfigFile.readString(buf);
+                }
+                specs[k] = Bombe.spec(_catalog, orders[k]);
+            }
+            long settings = buf.getLong();
+            long base = buf.position() + (-buf.position() & 7);
+            if (settings < 0 || settings > (length - base) / RECORD
+                || base + settings * RECORD != length) {
+                throw error("damaged cycle catalog %s", index);
+            }
+            Records records = new Records(channel, base, window);
+            long lo = 0, hi = settings;
+            while (lo < hi) {
+                long mid = (lo + hi) >>> 1;
+                if (Long.compareUnsigned(records.hash(mid), hash) < 0) {
+                    lo = mid + 1;
+                } else {
+                    hi = mid;
+                }
+            }
+            int[] subs = new int[PRODUCTS * 2 * _size];
+            for (long r = lo; r < settings && records.hash(r) == hash;
+                 r++) {
+                long setting = records.number(r);
+                if (setting < 0 || setting / _positions >= count) {
+                    throw error("damaged cycle catalog %s", index);
+                }
+                int order = (int) (setting / _positions);
+                MachineState state = new MachineState(specs[order]);
+                setPositions(state, setting % _positions);
+                state.substitutions(2 * PRODUCTS, subs);
+                if (Arrays.deepEquals(structures(subs), structures)) {
+                    result.add(new Setting(orders[order],
+                                           setting(setting % _positions)));
+                }
+            }
+        } catch (BufferUnderflowException | IllegalArgumentException
+                 | IndexOutOfBoundsException
+                 | NegativeArraySizeException excp) {
+            throw error("damaged cycle catalog %s", index);
+        } catch (IOException excp) {
+            throw error("could not read %s: %s", index, excp.getMessage());
+        }
+        return result;
+    }
+
+    /** Return the cycle structures of the products AD, BE and CF shown
+     *  by the doubled indicators INDICATORS, each six characters of
+     *  ALPHABET, which must determine them completely. */
+    static int[][] observe(Alphabet alphabet, List<String> indicators) {
+        int size = alphabet.size();
+        int[] products = new int[PRODUCTS * size];
+        Arrays.fill(products, -1);
+        for (String indicator : indicators) {
+            int[] chars = Bombe.indices(alphabet, indicator);
+            if (chars.length != 2 * PRODUCTS) {
+                throw error("indicator %s is not %d characters", indicator,
+                            2 * PRODUCTS);
+            }
+            for (int p = 0; p < PRODUCTS; p++) {
+                int from = p * size + chars[p], to = chars[p + PRODUCTS];
+                if (products[from] >= 0 && products[from] != to) {
+                    throw error("indicators are inconsistent at %s",
+                                indicator);
+                }
+                products[from] = to;
+            }
+        }
+        int[][] result = new int[PRODUCTS][];
+        for (int p = 0; p < PRODUCTS; p++) {
+            int[] product = Arrays.copyOfRange(products, p * size,
+                                               (p + 1) * size);
+            for (int image : product) {
+                if (image < 0) {
+                    throw error("indicators do not determine every product");
+                }
+            }
+            result[p] = cycleLengths(product);
+        }
+        return result;
+    }
+
+    /** Return the cycle structures of the products AD, BE and CF, where
+     *  A to F are the substitutions SUBS of six consecutive keypresses,
+     *  as returned by MachineState.substitutions. */
+    static int[][] structures(int[] subs) {
+        int size = subs.length / (2 * PRODUCTS);
+        int[][] result = new int[PRODUCTS][];
+        int[] product = new int[size];
+        for (int p = 0; p < PRODUCTS; p++) {
+            int first = p * size, second = (p + PRODUCTS) * size;
+            for (int c = 0; c < size; c++) {
+                product[c] = subs[second + subs[first + c]];
+            }
+            result[p] = cycleLengths(product);
+        }
+        return result;
+    }
+
+    /** Return the lengths of the cycles of the permutation PERM, longest
+     *  first. */
+    static int[] cycleLengths(int[] perm) {
+        boolean[] seen = new boolean[perm.length];
+        int[] lengths = new int[perm.length];
+        int n = 0;
+        for (int c = 0; c < perm.length; c++) {
+            if (!seen[c]) {
+                int len = 0;
+                for (int x = c; !seen[x]; x = perm[x]) {
+                    seen[x] = true;
+                    len += 1;
+                }
+                lengths[n] = len;
+                n += 1;
+            }
+        }
+        int[] result = Arrays.copyOf(lengths, n);
+        Arrays.sort(result);
+        for (int i = 0; i < n / 2; i++) {
+            int t = result[i];
+            result[i] = result[n - 1 - i];
+            result[n - 1 - i] = t;
+        }
+        return result;
+    }
+
+    /** Return the hash under which settings with cycle structures
+     *  STRUCTURES are indexed. */
+    static long hash(int[][] structures) {
+        long h = FNV_BASIS;
+        for (int[] lengths : structures) {
+            for (int len : lengths) {
+                h = (h ^ len) * FNV_PRIME;
+            }
+            h = (h ^ -1) * FNV_PRIME;
+        }
+        return h ^ (h >>> 29);
+    }
+
+    /** A start position found in a CycleCatalog. */
+    static final class Setting {
+
+        /** A setting of the rotors ROTORS to the positions SETTING. */
+        private Setting(String[] rotors, String setting) {
+            _rotors = rotors.clone();
+            _setting = setting;
+        }
+
+        /** Return the names of my rotors, from the reflector on. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as in a setting line. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return a setting line for me, with ring settings of the first
+         *  letter and no plugboard. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting;
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor setting. */
+        private final String _setting;
+    }
+
+    /** The pairs of an index file, mapped a window of consecutive pairs
+     *  at a time, so that an index may be larger than a single mapping
+     *  (2 GiB) allows. */
+    private static final class Records {
+
+        /** The pairs of the index open on CHANNEL, starting at byte BASE,
+         *  mapped at most WINDOW bytes at a time. */
+        Records(FileChannel channel, long base, long window) {
+            _channel = channel;
+            _base = base;
+            _perWindow = Math.max(1, Math.min(window, Integer.MAX_VALUE)
+                                  / RECORD);
+        }
+
+        /** Return the hash of pair R. */
+        long hash(long r) throws IOException {
+            return window(r).get((int) (2 * (r - _first)));
+        }
+
+        /** Return the setting number of pair R. */
+        long number(long r) throws IOException {
+            return window(r).get((int) (2 * (r - _first) + 1));
+        }
+
+        /** Return the mapped window that holds pair R, mapping it if it
+         *  is not the current one. */
+        private LongBuffer window(long r) throws IOException {
+            if (_window == null || r < _first
+                || r >= _first + _window.limit() / 2) {
+                _first = r - r % _perWindow;
+                long from = _base + _first * RECORD;
+                long len = Math.min(_perWindow * RECORD,
+                                    _channel.size() - from);
+                _window = _channel.map(FileChannel.MapMode.READ_ONLY, from,
+                                       len).asLongBuffer();
+            }
+            return _window;
+        }
+
+        /** The open index file. */
+        private final FileChannel _channel;
+
+        /** Position in the file of the first pair. */
+        private final long _base;
+
+        /** Number of pairs in each window. */
+        private final long _perWindow;
+
+        /** Number of the first pair of the current window. */
+        private long _first;
+
+        /** The current window, or null if none is mapped. */
+        private LongBuffer _window;
+    }
+
+    /** Return the number of settings I catalog. */
+    long settings() {
+        return _positions * _orders.size();
+    }
+
+    /** Return the number of parts into which my settings are divided. */
+    long partCount() {
+        return (settings() + PART_SIZE - 1) / PART_SIZE;
+    }
+
+    /** Return the path of part file PART of INDEX. */
+    private static Path partPath(Path index, long part) {
+        return Paths.get(index + ".part" + part);
+    }
+
+    /** Compute part PART of the index INDEX and write it to its part
+     *  file, which appears only once it is complete. */
+    private void writePart(Path index, long part) {
+        long from = part * PART_SIZE,
+            to = Math.min(settings(), from + PART_SIZE);
+        int count = (int) (to - from);
+        long[] hashes = new long[count], numbers = new long[count];
+        int[] subs = new int[2 * PRODUCTS * _size];
+        MachineState state = null;
+        int order = -1;
+        for (long k = from; k < to; k++) {
+            if (k / _positions != order) {
+                order = (int) (k / _positions);
+                state = new MachineState(_specs[order]);
+            }
+            setPositions(state, k % _positions);
+            state.substitutions(2 * PRODUCTS, subs);
+            hashes[(int) (k - from)] = hash(structures(subs));
+            numbers[(int) (k - from)] = k;
+        }
+        sort(hashes, numbers);
+        Path path = partPath(index, part),
+            temp = Paths.get(path + ".tmp");
+        try (OutputStream file = Files.newOutputStream(temp)) {
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(file, BLOCK));
+            out.writeInt(PART_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(_source);
+            out.writeLong(part);
+            out.writeLong(count);
+            for (int i = 0; i < count; i++) {
+                out.writeLong(hashes[i]);
+                out.writeLong(numbers[i]);
+            }
+            out.flush();
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", path, excp.getMessage());
+        }
+        try {
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING,
+                       StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException excp) {
+            throw error("could not write %s: %s", path, excp.getMessage());
+        }
+    }
+
+    /** Return the pairs of part PART of INDEX, mapped from its part
+     *  file, or null if the file is missing, damaged, or not of this
+     *  catalog. */
+    private LongBuffer readPart(Path index, long part) {
+        long count = Math.min(PART_SIZE, settings() - part * PART_SIZE);
+        ByteBuffer buf;
+        try (FileChannel channel = FileChannel.open(partPath(index, part))) {
+            if (channel.size() != PART_HEADER + count * 2 * Long.BYTES) {
+                return null;
+            }
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                              channel.size());
+        } catch (NoSuchFileException excp) {
+            return null;
+        } catch (IOException excp) {
+            throw error("could not read part %d of %s: %s", part, index,
+                        excp.getMessage());
+        }
+        if (buf.getInt() != PART_MAGIC || buf.getInt() != VERSION
+            || buf.getLong() != _source || buf.getLong() != part
+            || buf.getLong() != count) {
+            return null;
+        }
+        return buf.slice().asLongBuffer();
+    }
+
+    /** Return the order of the next pairs of the mapped parts A and B:
+     *  by hash, as unsigned, and then by setting number. */
+    private static int compare(LongBuffer a, LongBuffer b) {
+        int pa = a.position(), pb = b.position();
+        int c = Long.compareUnsigned(a.get(pa), b.get(pb));
+        return c != 0 ? c : Long.compare(a.get(pa + 1), b.get(pb + 1));
+    }
+
+    /** Sort the pairs (HASHES[I], NUMBERS[I]) by hash, as unsigned,
+     *  keeping pairs with equal hashes in order, by a radix sort of a
+     *  byte of hash at a time. */
+    private static void sort(long[] hashes, long[] numbers) {
+        int n = hashes.length;
+        long[] hashTemp = new long[n], numberTemp = new long[n];
+        int[] starts = new int[RADIX + 1];
+        for (int shift = 0; shift < Long.SIZE; shift += RADIX_BITS) {
+            Arrays.fill(starts, 0);
+            for (long h : hashes) {
+                starts[(int) (h >>> shift) & (RADIX - 1)] += 1;
+            }
+            for (int d = 0, sum = 0; d <= RADIX; d++) {
+                int c = d < RADIX ? starts[d] : 0;
+                starts[d] = sum;
+                sum += c;
+            }
+            for (int i = 0; i < n; i++) {
+                int d = (int) (hashes[i] >>> shift) & (RADIX - 1);
+                hashTemp[starts[d]] = hashes[i];
+                numberTemp[starts[d]] = numbers[i];
+                starts[d] += 1;
+            }
+            System.arraycopy(hashTemp, 0, hashes, 0, n);
+            System.arraycopy(numberTemp, 0, numbers, 0, n);
+        }
+    }
+
+    /** Put the rotors of STATE but the reflector in the positions whose
+     *  digits (base _size, rightmost rotor last) are POSN. */
+    private void setPositions(MachineState state, long posn) {
+        for (int i = _slots - 1; i > 0; i--) {
+            state.setPosition(i, (int) (posn % _size));
+            posn /= _size;
+        }
+    }
+
+    /** Return the setting string whose digits (as for setPositions) are
+     *  POSN. */
+    private String setting(long posn) {
+        int[] setting = new int[_slots - 1];
+        for (int i = _slots - 2; i >= 0; i--) {
+            setting[i] = _alphabet.toCodePoint((int) (posn % _size));
+            posn /= _size;
+        }
+        return new String(setting, 0, setting.length);
+    }
+
+    /** With the configuration file ARGS[1], either ("build") build the
+     *  index file ARGS[2], resuming an interrupted build, or ("lookup")
+     *  print the settings in ARGS[2] consistent with the doubled
+     *  indicators (groups of six characters) in the file ARGS[3], and the
+     *  time the lookup took. */
+    public static void main(String... args) {
+        try {
+            boolean build = args.length == 3 && args[0].equals("build"),
+                lookup = args.length == 4 && args[0].equals("lookup");
+            if (!build && !lookup) {
+                throw error("usage: java enigma.CycleCatalog build CONFIG "
+                            + "INDEX | lookup CONFIG INDEX INDICATORS");
+            }
+            Machine machine = Main.readConfiguration(args[1]);
+            CycleCatalog catalog =
+                new CycleCatalog(machine,
+                                 ConfigFile.checksum(Paths.get(args[1])));
+            Path index = Paths.get(args[2]);
+            if (build) {
+                catalog.build(index);
+                return;
+            }
+            String text;
+            try {
+                text = new String(Files.readAllBytes(Paths.get(args[3])),
+                                  Charset.defaultCharset());
+            } catch (IOException excp) {
+                throw error("could not open %s", args[3]);
+            }
+            List<String> indicators = new ArrayList<>();
+            for (String group : text.trim().split("\\s+")) {
+                indicators.add(group);
+            }
+            long start = System.nanoTime();
+            int[][] structures = observe(machine.alphabet(), indicators);
+            List<Setting> settings = catalog.lookup(index, structures);
+            long nanos = System.nanoTime() - start;
+            for (Setting setting : settings) {
+                System.out.println(setting);
+            }
+            System.out.printf("%d settings in %.3f ms%n", settings.size(),
+                              nanos * 1e-6);
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Number of settings in each part of a build. */
+    static final int PART_SIZE = 1 << 14;
+
+    /** First word of an index file. */
+    static final int MAGIC = 0x43796331;
+
+    /** First word of a part file. */
+    static final int PART_MAGIC = 0x43797031;
+
+    /** Version of the index and part file formats. */
+    static final int VERSION = 1;
+
+    /** Number of products (AD, BE and CF) in a doubled indicator. */
+    static final int PRODUCTS = 3;
+
+    /** Size in bytes of the header of a part file. */
+    private static final int PART_HEADER = 32;
+
+    /** Bits of hash sorted by each pass of sort, and the number of
+     *  values they take. */
+    private static final int RADIX_BITS = 8, RADIX = 1 << RADIX_BITS;
+
+    /** Size in bytes of a pair (hash, setting number). */
+    private static final int RECORD = 2 * Long.BYTES;
+
+    /** Largest number of bytes of the header of an index file that are
+     *  read. */
+    private static final long MAX_HEADER = 1 << 24;
+
+    /** Largest number of bytes of pairs mapped at once by lookup. */
+    private static final long WINDOW_SIZE = 1 << 30;
+
+    /** Size of the buffers used to write files. */
+    private static final int BLOCK = 1 << 16;
+
+    /** Parameters of the FNV-1a hash on which hash is based. */
+    private static final long FNV_BASIS = 0xcbf29ce484222325L,
+        FNV_PRIME = 0x100000001b3L;
+
+    /** The configuration whose rotors I catalog. */
+    private final Machine _catalog;
+
+    /** The common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** Checksum of the configuration text. */
+    private final long _source;
+
+    /** Number of positions of each rotor order. */
+    private final long _positions;
+
+    /** The rotor orders cataloged. */
+    private final List<String[]> _orders;
+
+    /** The specification of the machine of each rotor order. */
+    private final MachineSpec[] _specs;
+}
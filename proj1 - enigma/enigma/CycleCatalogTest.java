@@ -0,0 +1,157 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.ForkJoinPool;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the CycleCatalog class.
+ *  @author Jenny Miao
+ */
+public class CycleCatalogTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return a four-slot machine with three pawls, with reflector B and
+     *  the naval rotors I to III available and none inserted. */
+    private static Machine catalog() {
+        return navalCatalog(new String[] {"B"}, "I", "II", "III");
+    }
+
+    /** Return the doubled indicators of COUNT random message keys,
+     *  chosen using RANDOM, enciphered from the start position SETTING of
+     *  the rotors ROTORS with the plugboard PLUGBOARD. */
+    private static List<String> indicators(String[] rotors, String setting,
+                                           String plugboard, int count,
+                                           Random random) {
+        Machine machine = catalog();
+        machine.insertRotors(rotors);
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        List<String> result = new ArrayList<>();
+        for (int k = 0; k < count; k += 1) {
+            StringBuilder key = new StringBuilder();
+            for (int i = 0; i < 3; i += 1) {
+                key.append((char) ('A' + random.nextInt(26)));
+            }
+            machine.setRotors(setting);
+            result.add(machine.convert(key.toString() + key));
+        }
+        return result;
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testCycleLengths() {
+        assertArrayEquals(new int[] {3, 2, 1},
+                          CycleCatalog.cycleLengths(new int[] {1, 0, 2, 4,
+                                                               5, 3}));
+        assertArrayEquals(new int[] {1, 1},
+                          CycleCatalog.cycleLengths(new int[] {0, 1}));
+    }
+
+    @Test
+    public void testObserve() {
+        Alphabet abcd = new Alphabet("ABCD");
+        List<String> indicators = new ArrayList<>();
+        indicators.add("AAABBB");
+        indicators.add("BBBCCC");
+        indicators.add("CCCDDD");
+        indicators.add("DDDAAA");
+        int[][] structures = CycleCatalog.observe(abcd, indicators);
+        for (int[] lengths : structures) {
+            assertArrayEquals(new int[] {4}, lengths);
+        }
+        indicators.remove(3);
+        try {
+            CycleCatalog.observe(abcd, indicators);
+            fail("incomplete indicators accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        indicators.add("AAACCC");
+        try {
+            CycleCatalog.observe(abcd, indicators);
+            fail("inconsistent indicators accepted");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+    }
+
+    @Test
+    public void testBuildResumeLookup() throws IOException {
+        Path dir = Files.createTempDirectory("catalog");
+        Path index = dir.resolve("cycles.idx");
+        try {
+            CycleCatalog catalog = new CycleCatalog(catalog(), 42);
+            int parts = (int) catalog.partCount();
+            assertTrue(parts > 2);
+            ForkJoinPool pool = ForkJoinPool.commonPool();
+            assertEquals(parts, catalog.buildParts(index, pool));
+            assertEquals(0, catalog.buildParts(index, pool));
+            Files.delete(Paths.get(index + ".part1"));
+            Files.write(Paths.get(index + ".part2"), new byte[] {1, 2, 3});
+            assertEquals(2, catalog.buildParts(index, pool));
+            catalog.merge(index);
+            assertFalse(Files.exists(Paths.get(index + ".part0")));
+
+            String[] rotors = {"B", "III", "I", "II"};
+            List<String> indicators =
+                indicators(rotors, "KDW", "(AW) (CO) (HT) (MX) (QZ)", 300,
+                           new Random(22));
+            int[][] structures =
+                CycleCatalog.observe(UPPER, indicators);
+            List<CycleCatalog.Setting> found =
+                catalog.lookup(index, structures);
+            List<String> lines = new ArrayList<>();
+            for (CycleCatalog.Setting setting : found) {
+                lines.add(setting.toString());
+            }
+            assertTrue(lines.toString(),
+                       lines.contains("* B III I II KDW"));
+            assertTrue(lines.toString(), found.size() < 100);
+            assertTrue(catalog.settings() * 16 > 100 * 4096);
+            List<CycleCatalog.Setting> windowed =
+                catalog.lookup(index, structures, 4096);
+            assertEquals(found.toString(), windowed.toString());
+
+            Path damaged = dir.resolve("damaged.idx");
+            byte[] bytes = Files.readAllBytes(index);
+            Files.write(damaged, Arrays.copyOf(bytes, bytes.length - 8));
+            try {
+                catalog.lookup(damaged, structures);
+                fail("truncated index accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+
+            try {
+                new CycleCatalog(catalog(), 43).lookup(index, structures);
+                fail("index of another configuration accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            for (Path file : Files.newDirectoryStream(dir)) {
+                Files.delete(file);
+            }
+            Files.delete(dir);
+        }
+    }
+}
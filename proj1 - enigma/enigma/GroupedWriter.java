@@ -0,0 +1,193 @@
+package enigma;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+import static enigma.EnigmaException.*;
+
+/** The output stage for converted messages: writes message lines, divided
+ *  into groups of five letters, as encoded bytes straight into a large
+ *  reusable buffer, which is written to an OutputStream in one block when
+ *  full or flushed.  Characters that the character set encodes as
+ *  themselves (ASCII in UTF-8 and US-ASCII, and all of ISO-8859-1 in
+ *  that set) are stored as single bytes without going through a
+ *  CharsetEncoder; others are encoded as they come by an encoder that
+ *  persists, as a PrintStream's does, so that stateful character sets
+ *  (such as UTF-16, with its byte-order mark) come out the same.  Since
+ *  nothing reaches the stream until the buffer fills, a writer must be
+ *  flushed on errors as well as at the end of the input, or the lines
+ *  before an error are lost.
+ *  @author Jenny Miao
+ */
+class GroupedWriter {
+
+    /** A writer to OUT encoding in CHARSET, with a buffer of BUFSIZE
+     *  bytes, that groups letters unless RAW. */
+    GroupedWriter(OutputStream out, Charset charset, int bufSize,
+                  boolean raw) {
+        _out = out;
+        _encoder = charset.newEncoder()
+            .onMalformedInput(CodingErrorAction.REPLACE)
+            .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        _buf = new byte[Math.max(bufSize, MAX_CHAR_BYTES)];
+        _raw = raw;
+        if (charset.equals(StandardCharsets.ISO_8859_1)) {
+            _direct = SINGLE_BYTE_LIMIT;
+        } else if (charset.equals(StandardCharsets.UTF_8)
+                   || charset.equals(StandardCharsets.US_ASCII)) {
+            _direct = ASCII_LIMIT;
+        } else {
+            _direct = 0;
+        }
+    }
+
+    /** Write the converted message letter CH, preceded by a space if it
+     *  begins a group other than the first on its line.  CH must not be
+     *  a low surrogate (see write). */
+    void letter(char ch) {
+        if (_group > 0 && _group % GROUP_SIZE == 0 && !_raw) {
+            write(' ');
+        }
+        write(ch);
+        _group += 1;
+    }
+
+    /** Write the LEN converted message letters of SRC starting at OFF,
+     *  grouped as by letter, copying them a group at a time.  Each byte
+     *  is taken to be its own encoding, so my character set must be
+     *  ISO-8859-1. */
+    void letters(byte[] src, int off, int len) {
+        if (_direct != SINGLE_BYTE_LIMIT) {
+            throw error("letters given as bytes need ISO-8859-1 output");
+        }
+        while (len > 0) {
+            if (_group > 0 && _group % GROUP_SIZE == 0 && !_raw) {
+                write(' ');
+            }
+            if (_length == _buf.length) {
+                drain();
+            }
+            int n = Math.min(len, _buf.length - _length);
+            if (!_raw) {
+                n = Math.min(n, GROUP_SIZE - _group % GROUP_SIZE);
+            }
+            System.arraycopy(src, off, _buf, _length, n);
+            _length += n;
+            _group += n;
+            off += n;
+            len -= n;
+        }
+    }
+
+    /** Return the number of letters written on the current line. */
+    int lineLength() {
+        return _group;
+    }
+
+    /** End the current line. */
+    void endLine() {
+        write('\n');
+        _group = 0;
+    }
+
+    /** Write CH, which is not counted as a letter.  A high surrogate is
+     *  held until the char after it, which is encoded with it. */
+    void write(char ch) {
+        if (_length + MAX_CHAR_BYTES > _buf.length) {
+            drain();
+        }
+        if (_high != 0) {
+            _pair[0] = _high;
+            _pair[1] = ch;
+            _high = 0;
+            encode(2);
+        } else if (ch < _direct) {
+            _buf[_length] = (byte) ch;
+            _length += 1;
+        } else {
+            _pair[0] = ch;
+            encode(1);
+        }
+    }
+
+    /** Add the encoding of the first LEN chars of _pair to the buffer.
+     *  A high surrogate is encoded together with the char after it, or
+     *  replaced if that is not a low surrogate; one that ends _pair is
+     *  held in _high. */
+    private void encode(int len) {
+        ByteBuffer out = ByteBuffer.wrap(_buf, _length, _buf.length - _length);
+        CharBuffer in = CharBuffer.wrap(_pair, 0, len);
+        _encoder.encode(in, out, false);
+        _length = out.position();
+        if (in.hasRemaining()) {
+            _high = in.get();
+        }
+    }
+
+    /** Write out and empty the buffer, then flush the stream. */
+    void flush() {
+        drain();
+        try {
+            _out.flush();
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Write out and empty the buffer. */
+    private void drain() {
+        try {
+            _out.write(_buf, 0, _length);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+        _length = 0;
+    }
+
+    /** Number of letters in each output group. */
+    static final int GROUP_SIZE = 5;
+
+    /** Chars below this are ASCII. */
+    private static final int ASCII_LIMIT = 0x80;
+
+    /** Chars below this are ISO-8859-1. */
+    private static final int SINGLE_BYTE_LIMIT = 0x100;
+
+    /** More than the most bytes added to the buffer by one call of
+     *  write (two chars, with any byte-order mark or shift sequence), in
+     *  any character set. */
+    private static final int MAX_CHAR_BYTES = 32;
+
+    /** Destination of my output. */
+    private final OutputStream _out;
+
+    /** Encoder for the chars not written directly. */
+    private final CharsetEncoder _encoder;
+
+    /** The chars being encoded by _encoder. */
+    private final char[] _pair = new char[2];
+
+    /** Chars below this are written as the byte with the same code. */
+    private final int _direct;
+
+    /** True iff letters are written without grouping. */
+    private final boolean _raw;
+
+    /** Encoded output waiting to be written. */
+    private final byte[] _buf;
+
+    /** Number of bytes in _buf. */
+    private int _length;
+
+    /** A high surrogate waiting for the char after it, or 0. */
+    private char _high;
+
+    /** Number of letters written on the current line. */
+    private int _group;
+}
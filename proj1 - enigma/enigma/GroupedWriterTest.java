@@ -0,0 +1,136 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+
+/** The suite of all JUnit tests for the GroupedWriter class.
+ *  @author Jenny Miao
+ */
+public class GroupedWriterTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the bytes written by a GroupedWriter in CHARSET, with a
+     *  buffer of BUFSIZE bytes, grouping unless RAW, given the lines
+     *  LINES as letters. */
+    private static byte[] written(Charset charset, int bufSize, boolean raw,
+                                  String... lines) {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupedWriter writer = new GroupedWriter(out, charset, bufSize, raw);
+        for (String line : lines) {
+            for (int i = 0; i < line.length(); i += 1) {
+                char ch = line.charAt(i);
+                if (Character.isLowSurrogate(ch)) {
+                    writer.write(ch);
+                } else {
+                    writer.letter(ch);
+                }
+            }
+            writer.endLine();
+        }
+        writer.flush();
+        return out.toByteArray();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testGroups() {
+        assertEquals("ABCDE FGHIJ KL\n\nMNOPQ\n",
+                     new String(written(StandardCharsets.US_ASCII, 64, false,
+                                        "ABCDEFGHIJKL", "", "MNOPQ"),
+                                StandardCharsets.US_ASCII));
+        assertEquals("ABCDEFGHIJKL\n",
+                     new String(written(StandardCharsets.US_ASCII, 64, true,
+                                        "ABCDEFGHIJKL"),
+                                StandardCharsets.US_ASCII));
+    }
+
+    @Test
+    public void testSmallBuffer() {
+        StringBuilder line = new StringBuilder(),
+            expected = new StringBuilder();
+        for (int i = 0; i < 1000; i += 1) {
+            char ch = (char) ('A' + i % 26);
+            if (i > 0 && i % 5 == 0) {
+                expected.append(' ');
+            }
+            line.append(ch);
+            expected.append(ch);
+        }
+        expected.append('\n');
+        assertEquals(expected.toString(),
+                     new String(written(StandardCharsets.UTF_8, 1, false,
+                                        line.toString()),
+                                StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void testEncodings() {
+        String line = "Ab\u00e9\u00ff\u20ac\ud83d\ude00xyz\u00e9";
+        Charset[] charsets = {StandardCharsets.UTF_8,
+                              StandardCharsets.ISO_8859_1,
+                              StandardCharsets.US_ASCII,
+                              StandardCharsets.UTF_16BE,
+                              StandardCharsets.UTF_16};
+        String expected = "Ab\u00e9\u00ff\u20ac \ud83d\ude00xyz\u00e9\n";
+        for (Charset charset : charsets) {
+            for (int bufSize : new int[] {1, 7, 4096}) {
+                assertArrayEquals(charset + " " + bufSize,
+                                  expected.getBytes(charset),
+                                  written(charset, bufSize, false, line));
+            }
+            String unpaired = "\ud83dA\ud83d\ud83d\ude00B\ud83d";
+            assertArrayEquals(charset + " unpaired",
+                              (unpaired + "\n").getBytes(charset),
+                              written(charset, 16, true, unpaired));
+        }
+    }
+
+    @Test
+    public void testLetterBytes() {
+        for (boolean raw : new boolean[] {false, true}) {
+            for (int bufSize : new int[] {1, 7, 4096}) {
+                ByteArrayOutputStream out = new ByteArrayOutputStream();
+                GroupedWriter writer =
+                    new GroupedWriter(out, StandardCharsets.ISO_8859_1,
+                                      bufSize, raw);
+                byte[] line = "xABCDEFGHIJKL\u00e9x"
+                    .getBytes(StandardCharsets.ISO_8859_1);
+                writer.letter('Z');
+                writer.letters(line, 1, 8);
+                writer.letters(line, 9, 5);
+                writer.endLine();
+                writer.flush();
+                assertEquals(raw + " " + bufSize,
+                             raw ? "ZABCDEFGHIJKL\u00e9\n"
+                             : "ZABCD EFGHI JKL\u00e9\n",
+                             new String(out.toByteArray(),
+                                        StandardCharsets.ISO_8859_1));
+            }
+        }
+    }
+
+    @Test
+    public void testLineLength() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        GroupedWriter writer = new GroupedWriter(out, StandardCharsets.UTF_8,
+                                                 16, false);
+        assertEquals(0, writer.lineLength());
+        writer.letter('A');
+        writer.letter('B');
+        assertEquals(2, writer.lineLength());
+        writer.endLine();
+        assertEquals(0, writer.lineLength());
+    }
+}
@@ -0,0 +1,625 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.PriorityQueue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A ciphertext-only attack on Enigma messages by hill climbing.  First,
+ *  every rotor order and start position (with every ring setting at the
+ *  first letter and no plugboard) is screened by the index of
+ *  coincidence of its decrypt, which is higher the closer the decrypt is
+ *  to a natural language; a plugboard lowers it, but not by so much as
+ *  to hide the right setting among the random ones.  Then each of the
+ *  best screened settings is a restart for a climb: the ring settings of
+ *  the rotors whose turnovers matter are improved one at a time, each
+ *  together with its rotor's position so that only the turnover moves,
+ *  and plugboard pairs are added, changed and removed while that
+ *  improves the decrypt's score by an NgramTable.  The restarts run
+ *  concurrently on a ForkJoinPool, each offering its result to a best
+ *  so far shared by all.
+ *
+ *  Each restart decrypts by table: the rotors' substitutions at every
+ *  position of the message are computed once for each ring setting
+ *  tried, after which a plugboard is tried by two lookups a character,
+ *  into buffers that are reused, so that climbing allocates nothing.
+ *  @author Jenny Miao
+ */
+class HillClimb {
+
+    /** An attack on CIPHERTEXT (ignoring whitespace) with the machines
+     *  that can be made from the rotors of CATALOG (see Bombe.orders),
+     *  scoring decrypts with NGRAMS. */
+    HillClimb(Machine catalog, NgramTable ngrams, String ciphertext) {
+        this(catalog, Bombe.orders(catalog), ngrams, ciphertext);
+    }
+
+    /** An attack on CIPHERTEXT with NGRAMS, as above, that tries only
+     *  the rotor orders ORDERS, each the names of rotors of CATALOG to
+     *  fill its slots. */
+    HillClimb(Machine catalog, List<String[]> orders, NgramTable ngrams,
+              String ciphertext) {
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        if (!sameAlphabet(ngrams.alphabet(), _alphabet)) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _ngrams = ngrams;
+        _cipher = Bombe.indices(_alphabet, ciphertext);
+        if (_cipher.length < ngrams.n()) {
+            throw error("ciphertext is too short");
+        }
+        _slots = catalog.numRotors();
+        _firstPawl = _slots - catalog.numPawls();
+        _positions = (long) Math.pow(_size, _slots - 1);
+        if (_positions <= 0 || (double) _positions * orders.size()
+            >= Long.MAX_VALUE) {
+            throw error("too many positions to search");
+        }
+        _orders = new ArrayList<>(orders);
+        _specs = new MachineSpec[orders.size()];
+        for (int k = 0; k < _specs.length; k++) {
+            _specs[k] = Bombe.spec(catalog, orders.get(k));
+        }
+    }
+
+    /** Return true iff A and B have the same characters in the same
+     *  order. */
+    static boolean sameAlphabet(Alphabet a, Alphabet b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (a.toCodePoint(i) != b.toCodePoint(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /** Run the attack on the common ForkJoinPool, climbing from the
+     *  RESTARTS best screened settings, and return the best candidate
+     *  found. */
+    Candidate run(int restarts) {
+        return run(ForkJoinPool.commonPool(), restarts);
+    }
+
+    /** Run the attack on POOL, climbing from the RESTARTS best screened
+     *  settings, and return the best candidate found. */
+    Candidate run(ForkJoinPool pool, int restarts) {
+        if (restarts < 1) {
+            throw error("need at least one restart");
+        }
+        _tested.reset();
+        _best.set(null);
+        long start = System.nanoTime();
+        ConcurrentLinkedQueue<Start> screened = new ConcurrentLinkedQueue<>();
+        pool.invoke(new Screen(0, _positions * _orders.size(), restarts,
+                               screened));
+        ArrayList<Start> starts = new ArrayList<>(screened);
+        Collections.sort(starts);
+        ArrayList<Climb> climbs = new ArrayList<>();
+        for (Start s : starts.subList(0, Math.min(restarts, starts.size()))) {
+            climbs.add(new Climb(s._index));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(climbs);
+            }
+        });
+        _nanos = System.nanoTime() - start;
+        return _best.get();
+    }
+
+    /** Return the best candidate found so far by the current or last
+     *  run, or null if there is none yet. */
+    Candidate best() {
+        return _best.get();
+    }
+
+    /** Return the number of candidate decrypts scored by the last
+     *  run. */
+    long candidatesTested() {
+        return _tested.sum();
+    }
+
+    /** Return the number of candidate decrypts scored per second by the
+     *  last run. */
+    double candidatesPerSecond() {
+        return _nanos == 0 ? 0 : candidatesTested() * 1e9 / _nanos;
+    }
+
+    /** Return the index of coincidence of the LEN alphabet indices at
+     *  the start of TEXT: the probability that two of them chosen at
+     *  random are the same.  COUNTS must have an element for each
+     *  character of the alphabet, and is overwritten. */
+    static double indexOfCoincidence(int[] text, int len, int[] counts) {
+        Arrays.fill(counts, 0);
+        for (int i = 0; i < len; i++) {
+            counts[text[i]] += 1;
+        }
+        long sum = 0;
+        for (int count : counts) {
+            sum += (long) count * (count - 1);
+        }
+        return len < 2 ? 0 : (double) sum / ((long) len * (len - 1));
+    }
+
+    /** A candidate key found by a HillClimb, with the score of its
+     *  decrypt. */
+    static final class Candidate {
+
+        /** A candidate with rotors named ROTORS, in the positions
+         *  SETTING, with ring settings RINGS and the plugboard swaps in
+         *  PLUGBOARD (in cycle notation), whose decrypt PLAINTEXT has
+         *  score SCORE. */
+        private Candidate(String[] rotors, String setting, String rings,
+                          String plugboard, String plaintext,
+                          double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, from the reflector on. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as in a setting line. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my ring settings, as in a setting line. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return my plugboard swaps, in cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the decrypt of the ciphertext (without whitespace)
+         *  with my key. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return the score of plaintext(). */
+        double score() {
+            return _score;
+        }
+
+        /** Return a setting line for me. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting + " "
+                + _rings + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor setting and ring settings. */
+        private final String _setting, _rings;
+
+        /** My plugboard swaps. */
+        private final String _plugboard;
+
+        /** My decrypt. */
+        private final String _plaintext;
+
+        /** Score of _plaintext. */
+        private final double _score;
+    }
+
+    /** A screened setting: number INDEX (as for Screen) with index of
+     *  coincidence SCORE.  The natural order is best first. */
+    private static final class Start implements Comparable<Start> {
+
+        /** Setting INDEX with score SCORE. */
+        Start(long index, double score) {
+            _index = index;
+            _score = score;
+        }
+
+        @Override
+        public int compareTo(Start other) {
+            return Double.compare(other._score, _score);
+        }
+
+        /** Number of this setting. */
+        private final long _index;
+
+        /** Index of coincidence of this setting's decrypt. */
+        private final double _score;
+    }
+
+    /** A task that screens the (order, position) pairs numbered FROM to
+     *  TO - 1, where pair K is position K % _positions (the digits of
+     *  the setting, base _size, rightmost rotor last) of order
+     *  K / _positions, adding the best KEEP of them to RESULT. */
+    private final class Screen extends RecursiveAction {
+
+        /** A task screening pairs FROM to TO - 1, adding the best KEEP
+         *  to RESULT. */
+        Screen(long from, long to, int keep,
+               ConcurrentLinkedQueue<Start> result) {
+            _from = from;
+            _to = to;
+            _keep = keep;
+            _result = result;
+        }
+
+        @Override
+        protected void compute() {
+            if (_to - _from > GRAIN) {
+                long mid = (_from + _to) >>> 1;
+                invokeAll(new Screen(_from, mid, _keep, _result),
+                          new Screen(mid, _to, _keep, _result));
+                return;
+            }
+            int len = _cipher.length;
+            int[] plain = new int[len], counts = new int[_size];
+            PriorityQueue<Start> kept = new PriorityQueue<>(
+                Collections.reverseOrder());
+            MachineState state = null;
+            int order = -1;
+            for (long k = _from; k < _to; k++) {
+                if (k / _positions != order) {
+                    order = (int) (k / _positions);
+                    state = new MachineState(_specs[order]);
+                }
+                setPositions(state, k % _positions);
+                for (int i = 0; i < len; i++) {
+                    plain[i] = state.convert(_cipher[i]);
+                }
+                double score = indexOfCoincidence(plain, len, counts);
+                if (kept.size() < _keep || score > kept.peek()._score) {
+                    kept.add(new Start(k, score));
+                    if (kept.size() > _keep) {
+                        kept.poll();
+                    }
+                }
+            }
+            _tested.add(_to - _from);
+            _result.addAll(kept);
+        }
+
+        /** Range of pairs to screen. */
+        private final long _from, _to;
+
+        /** Number of pairs to keep. */
+        private final int _keep;
+
+        /** Where the pairs kept are collected. */
+        private final ConcurrentLinkedQueue<Start> _result;
+    }
+
+    /** Put the rotors of STATE but the reflector in the positions whose
+     *  digits (base _size, rightmost rotor last) are POSN. */
+    private void setPositions(MachineState state, long posn) {
+        for (int i = _slots - 1; i > 0; i--) {
+            state.setPosition(i, (int) (posn % _size));
+            posn /= _size;
+        }
+    }
+
+    /** A task that climbs from the screened setting numbered INDEX (as
+     *  for Screen). */
+    private final class Climb extends RecursiveAction {
+
+        /** A climb from setting INDEX. */
+        Climb(long index) {
+            _order = (int) (index / _positions);
+            _pos = new int[_slots];
+            _ring = new int[_slots];
+            long posn = index % _positions;
+            for (int i = _slots - 1; i > 0; i--) {
+                _pos[i] = (int) (posn % _size);
+                posn /= _size;
+            }
+        }
+
+        @Override
+        protected void compute() {
+            int len = _cipher.length;
+            _state = new MachineState(_specs[_order]);
+            _subs = new int[len * _size];
+            _plain = new int[len];
+            _counts = new int[_size];
+            _plug = new int[_size];
+            for (int c = 0; c < _size; c++) {
+                _plug[c] = c;
+            }
+            climbRings(true);
+            double score = climbPlugboard();
+            while (true) {
+                double before = score;
+                climbRings(false);
+                score = climbPlugboard();
+                if (score <= before) {
+                    break;
+                }
+            }
+            offer(score);
+        }
+
+        /** Compute _subs, the substitutions of the rotors at each
+         *  position of the message from _pos and _ring. */
+        private void tabulate() {
+            for (int i = 1; i < _slots; i++) {
+                _state.setRing(i, _ring[i]);
+                _state.setPosition(i, _pos[i]);
+            }
+            _state.substitutions(_cipher.length, _subs);
+        }
+
+        /** Decrypt the message into _plain with _subs and _plug,
+         *  returning its index of coincidence if BYCOINCIDENCE and else
+         *  its n-gram score. */
+        private double decrypt(boolean byCoincidence) {
+            int len = _cipher.length, size = _size;
+            int[] subs = _subs, plug = _plug, cipher = _cipher,
+                plain = _plain;
+            for (int i = 0; i < len; i++) {
+                plain[i] = plug[subs[i * size + plug[cipher[i]]]];
+            }
+            _tested.increment();
+            return byCoincidence ? indexOfCoincidence(plain, len, _counts)
+                : _ngrams.score(plain, 0, len);
+        }
+
+        /** Improve the ring setting of each rotor whose turnover can
+         *  change a decrypt, from the right, moving the rotor's position
+         *  with it so that only its turnover moves.  Scores decrypts by
+         *  index of coincidence if BYCOINCIDENCE, else by n-grams.
+         *  Leaves _subs tabulated. */
+        private void climbRings(boolean byCoincidence) {
+            for (int i = _slots - 1; i > _firstPawl; i--) {
+                int ring0 = _ring[i], pos0 = _pos[i], bestShift = 0;
+                double best = Double.NEGATIVE_INFINITY;
+                for (int d = 0; d < _size; d++) {
+                    _ring[i] = (ring0 + d) % _size;
+                    _pos[i] = (pos0 + d) % _size;
+                    tabulate();
+                    double score = decrypt(byCoincidence);
+                    if (score > best) {
+                        best = score;
+                        bestShift = d;
+                    }
+                }
+                _ring[i] = (ring0 + bestShift) % _size;
+                _pos[i] = (pos0 + bestShift) % _size;
+            }
+            tabulate();
+        }
+
+        /** Change plugboard pairs while any single change improves the
+         *  n-gram score of the decrypt, returning the final score. */
+        private double climbPlugboard() {
+            double best = decrypt(false);
+            boolean improved = true;
+            while (improved) {
+                improved = false;
+                for (int a = 0; a < _size; a++) {
+                    for (int b = a + 1; b < _size; b++) {
+                        int pa = _plug[a], pb = _plug[b];
+                        swap(a, b);
+                        double score = decrypt(false);
+                        if (score > best) {
+                            best = score;
+                            improved = true;
+                        } else {
+                            unplug(a);
+                            unplug(b);
+                            plug(a, pa);
+                            plug(b, pb);
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        /** Swap A and B on the plugboard, first unplugging them, or just
+         *  unplug them if they are swapped already. */
+        private void swap(int a, int b) {
+            boolean paired = _plug[a] == b;
+            unplug(a);
+            unplug(b);
+            if (!paired) {
+                plug(a, b);
+            }
+        }
+
+        /** Remove A and its partner, if any, from the plugboard. */
+        private void unplug(int a) {
+            _plug[_plug[a]] = _plug[a];
+            _plug[a] = a;
+        }
+
+        /** Swap A and B, which are both unplugged, on the plugboard. */
+        private void plug(int a, int b) {
+            _plug[a] = b;
+            _plug[b] = a;
+        }
+
+        /** Offer the current key, whose decrypt has score SCORE, as the
+         *  best so far. */
+        private void offer(double score) {
+            Candidate best = _best.get();
+            if (best != null && best._score >= score) {
+                return;
+            }
+            Candidate mine = candidate(score);
+            while (true) {
+                if (best != null && best._score >= score
+                    || _best.compareAndSet(best, mine)) {
+                    return;
+                }
+                best = _best.get();
+            }
+        }
+
+        /** Return the current key as a candidate with score SCORE,
+         *  redecrypting the message into _plain. */
+        private Candidate candidate(double score) {
+            decrypt(false);
+            StringBuilder setting = new StringBuilder(),
+                rings = new StringBuilder(),
+                plugboard = new StringBuilder(),
+                plaintext = new StringBuilder();
+            for (int i = 1; i < _slots; i++) {
+                setting.appendCodePoint(_alphabet.toCodePoint(_pos[i]));
+                rings.appendCodePoint(_alphabet.toCodePoint(_ring[i]));
+            }
+            for (int c = 0; c < _size; c++) {
+                if (_plug[c] > c) {
+                    plugboard.append(plugboard.length() == 0 ? "(" : " (")
+                        .appendCodePoint(_alphabet.toCodePoint(c))
+                        .appendCodePoint(_alphabet.toCodePoint(_plug[c]))
+                        .append(')');
+                }
+            }
+            for (int c : _plain) {
+                plaintext.appendCodePoint(_alphabet.toCodePoint(c));
+            }
+            return new Candidate(_orders.get(_order).clone(),
+                                 setting.toString(), rings.toString(),
+                                 plugboard.toString(), plaintext.toString(),
+                                 score);
+        }
+
+        /** Number of my rotor order. */
+        private final int _order;
+
+        /** Positions and ring settings of my rotors. */
+        private final int[] _pos, _ring;
+
+        /** State used to tabulate substitutions. */
+        private MachineState _state;
+
+        /** _subs[I * size + C] is the rotors' image of C at message
+         *  position I. */
+        private int[] _subs;
+
+        /** The current decrypt. */
+        private int[] _plain;
+
+        /** Counts of characters, for indexOfCoincidence. */
+        private int[] _counts;
+
+        /** The plugboard partner of each character (itself if none). */
+        private int[] _plug;
+    }
+
+    /** Run an attack with the configuration file ARGS[0], scoring with
+     *  the longest n-grams of the table file ARGS[1] (see NgramTable), on
+     *  the ciphertext in the file ARGS[2], climbing from ARGS[3] restarts
+     *  (16 if absent), and print the best candidate's setting line and
+     *  decrypt, and the number of candidates scored per second. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3 || args.length > 4) {
+                throw error("usage: java enigma.HillClimb CONFIG TABLES "
+                            + "CIPHERTEXT [RESTARTS]");
+            }
+            int restarts;
+            try {
+                restarts = args.length > 3 ? Integer.parseInt(args[3])
+                    : DEFAULT_RESTARTS;
+            } catch (NumberFormatException excp) {
+                throw error("restarts must be an integer");
+            }
+            HillClimb attack =
+                new HillClimb(Main.readConfiguration(args[0]),
+                              NgramTable.map(Paths.get(args[1])),
+                              read(args[2]));
+            Candidate best = attack.run(restarts);
+            System.out.println(best);
+            System.out.println(best.plaintext());
+            System.out.printf("score %.2f; %d candidates in %.3f s "
+                              + "(%.0f candidates/s)%n", best.score(),
+                              attack.candidatesTested(),
+                              attack._nanos * 1e-9,
+                              attack.candidatesPerSecond());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Return the contents of the file named NAME. */
+    private static String read(String name) {
+        try {
+            return new String(Files.readAllBytes(Paths.get(name)),
+                              Charset.defaultCharset());
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
+    }
+
+    /** Largest number of settings a Screen screens without
+     *  splitting. */
+    static final int GRAIN = 1 << 10;
+
+    /** Number of restarts by default. */
+    static final int DEFAULT_RESTARTS = 16;
+
+    /** The common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The table with which decrypts are scored. */
+    private final NgramTable _ngrams;
+
+    /** The ciphertext, as indices. */
+    private final int[] _cipher;
+
+    /** Number of rotor slots. */
+    private final int _slots;
+
+    /** The first slot with a pawl. */
+    private final int _firstPawl;
+
+    /** Number of positions of each rotor order. */
+    private final long _positions;
+
+    /** The rotor orders tried. */
+    private final List<String[]> _orders;
+
+    /** The specification of the machine of each rotor order. */
+    private final MachineSpec[] _specs;
+
+    /** The best candidate found so far. */
+    private final AtomicReference<Candidate> _best = new AtomicReference<>();
+
+    /** Number of candidates scored by the current or last run. */
+    private final LongAdder _tested = new LongAdder();
+
+    /** Duration of the last run, in nanoseconds. */
+    private long _nanos;
+}
@@ -0,0 +1,156 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the HillClimb and NgramTable
+ *  classes.
+ *  @author Jenny Miao
+ */
+public class HillClimbTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(60);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return LEN letters of a made-up language, in which each letter is
+     *  followed by one of three others (chosen by SEED) far more often
+     *  than by the rest, generated using RANDOM. */
+    private static String language(long seed, Random random, int len) {
+        Random grammar = new Random(seed);
+        int[][] next = new int[26][3];
+        for (int[] successors : next) {
+            for (int k = 0; k < successors.length; k += 1) {
+                successors[k] = grammar.nextInt(26);
+            }
+        }
+        StringBuilder text = new StringBuilder();
+        int c = 0;
+        for (int i = 0; i < len; i += 1) {
+            text.append((char) ('A' + c));
+            if (random.nextInt(10) == 0) {
+                c = random.nextInt(26);
+            } else {
+                c = next[c][random.nextInt(3)];
+            }
+        }
+        return text.toString();
+    }
+
+    /** Return the fraction of the characters of A and B, which have the
+     *  same length, that are the same. */
+    private static double agreement(String a, String b) {
+        int same = 0;
+        for (int i = 0; i < a.length(); i += 1) {
+            if (a.charAt(i) == b.charAt(i)) {
+                same += 1;
+            }
+        }
+        return (double) same / a.length();
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testNgramScore() {
+        NgramTable table = NgramTable.train(UPPER, 2, "AB AB, AB! BA");
+        assertEquals(2, table.n());
+        int[] text = {0, 1, 0, 1};
+        assertEquals(3 * Math.log10(3.0 / 7), table.score(text, 0, 4),
+                     1e-5);
+        assertEquals(Math.log10(0.5 / 7), table.logProb(2 * 26 + 2), 1e-6);
+        assertEquals(table.score(text, 0, 2), table.score(text, 2, 2), 1e-9);
+    }
+
+    @Test
+    public void testTableFile() throws IOException {
+        String corpus = language(3, new Random(5), 5000);
+        NgramTable.Builder builder = new NgramTable.Builder(UPPER, 3, 2);
+        builder.add(corpus.substring(0, 1234)).add(corpus.substring(1234));
+        Path file = Files.createTempFile("ngrams", ".tab");
+        try {
+            builder.write(file);
+            int[] text = new int[300];
+            for (int i = 0; i < text.length; i += 1) {
+                text[i] = corpus.charAt(i) - 'A';
+            }
+            for (int n = 2; n <= 3; n += 1) {
+                NgramTable trained = NgramTable.train(UPPER, n, corpus),
+                    mapped = NgramTable.map(file, n);
+                assertEquals(n, mapped.n());
+                assertEquals(UPPER_STRING, mapped.alphabet().getChars());
+                for (int k = 0; k < (n == 2 ? 26 * 26 : 26 * 26 * 26);
+                     k += 1) {
+                    assertEquals(trained.logProb(k), mapped.logProb(k), 0);
+                }
+                assertEquals(trained.score(text, 0, text.length),
+                             mapped.score(text, 0, text.length), 0);
+            }
+            assertEquals(3, NgramTable.map(file).n());
+            try {
+                NgramTable.map(file, 4);
+                fail("table of quadgrams found");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            Files.write(file, new byte[] {1, 2, 3, 4, 5, 6, 7, 8});
+            try {
+                NgramTable.map(file);
+                fail("damaged table file accepted");
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testIndexOfCoincidence() {
+        int[] counts = new int[26];
+        assertEquals(1.0, HillClimb.indexOfCoincidence(new int[] {3, 3, 3},
+                                                       3, counts), 1e-9);
+        assertEquals(1.0 / 3, HillClimb.indexOfCoincidence(
+                         new int[] {1, 1, 2, 2}, 4, counts), 1e-9);
+    }
+
+    @Test
+    public void testRecoversKey() {
+        Random random = new Random(61);
+        NgramTable table = NgramTable.train(UPPER, 3,
+                                            language(7, random, 50000));
+        String plain = language(7, random, 400);
+        String cipher = convert(new String[] {"B", "IV", "II", "V"}, "QEU",
+                                "AAF", "(AW) (CO) (HT)", plain);
+        List<String[]> orders = new ArrayList<>();
+        for (String[] order : Bombe.orders(navalCatalog("B"))) {
+            if (order[1].equals("IV")) {
+                orders.add(order);
+            }
+        }
+        HillClimb attack = new HillClimb(navalCatalog("B"), orders, table,
+                                         cipher);
+        HillClimb.Candidate best = attack.run(12);
+        assertSame(best, attack.best());
+        assertEquals(best.plaintext(),
+                     convert(best.rotors(), best.setting(), best.rings(),
+                             best.plugboard(), cipher));
+        assertTrue(best + " gives " + best.plaintext(),
+                   agreement(plain, best.plaintext()) > 0.9);
+        assertTrue(attack.candidatesTested()
+                   > (long) orders.size() * 26 * 26 * 26);
+    }
+}
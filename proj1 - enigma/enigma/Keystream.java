@@ -0,0 +1,82 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The substitutions an Enigma machine makes on each of a fixed number of
+ *  consecutive keypresses, starting from some setting, so that the
+ *  beginning of any message sent at that setting can be converted by
+ *  table lookup alone.
+ *  @author Jenny Miao
+ */
+class Keystream {
+
+    /** The keystream of the next LENGTH keypresses of MACHINE, whose
+     *  alphabet is ALPHABET.  MACHINE itself is not advanced. */
+    Keystream(Alphabet alphabet, Machine machine, int length) {
+        _alphabet = alphabet;
+        _size = alphabet.size();
+        _length = length;
+        _tables = machine.snapshot().substitutions(length);
+    }
+
+    /** Return the number of keypresses I cover. */
+    int length() {
+        return _length;
+    }
+
+    /** Return the approximate number of bytes of memory I occupy. */
+    long footprint() {
+        return 4L * _tables.length + OVERHEAD;
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF, which are
+     *  the characters numbered POSITION (from 0) onward of a message,
+     *  into DEST, starting at DESTOFF, as the machine I was computed from
+     *  would.  Requires that POSITION + LEN <= length() and that all
+     *  the characters be in the basic multilingual plane. */
+    void convert(int position, char[] src, int srcOff, int len,
+                 char[] dest, int destOff) {
+        int row = position * _size;
+        for (int i = 0; i < len; i++, row += _size) {
+            char ch = src[srcOff + i];
+            int c = _alphabet.indexOf(ch);
+            if (c < 0) {
+                throw error("Character not in alphabet", ch);
+            }
+            dest[destOff + i] = (char) _alphabet.toCodePoint(_tables[row + c]);
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at SRCOFF, as for
+     *  convert(int, char[], int, int, char[], int), into DEST, starting
+     *  at DESTOFF.  Each byte stands for the character with the same code
+     *  (ISO-8859-1), so the alphabet must be single-byte. */
+    void convert(int position, byte[] src, int srcOff, int len,
+                 byte[] dest, int destOff) {
+        int row = position * _size;
+        for (int i = 0; i < len; i++, row += _size) {
+            int ch = src[srcOff + i] & 0xff;
+            int c = _alphabet.indexOf(ch);
+            if (c < 0) {
+                throw error("Character not in alphabet", (char) ch);
+            }
+            dest[destOff + i] = (byte) _alphabet.toCodePoint(_tables[row + c]);
+        }
+    }
+
+    /** My alphabet. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of keypresses covered. */
+    private final int _length;
+
+    /** Element K * _size + C is the conversion of character index C on
+     *  keypress K. */
+    private final int[] _tables;
+
+    /** Approximate size in bytes of a Keystream apart from its tables. */
+    private static final int OVERHEAD = 64;
+}
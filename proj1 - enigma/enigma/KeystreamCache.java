@@ -0,0 +1,78 @@
+package enigma;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/** A cache of Keystreams keyed by normalized machine settings (see
+ *  Machine.settingKey), holding keystreams of at most a given total size
+ *  and discarding the least recently used ones first.  A keystream is
+ *  only computed for a setting the second time it is offered: settings
+ *  used once cost no more than remembering their keys.
+ *  @author Jenny Miao
+ */
+class KeystreamCache {
+
+    /** A cache of keystreams of LENGTH keypresses each, occupying at most
+     *  about CAPACITY bytes. */
+    KeystreamCache(long capacity, int length) {
+        _capacity = capacity;
+        _length = length;
+    }
+
+    /** Return the keystream cached under KEY, or null if there is
+     *  none. */
+    Keystream get(String key) {
+        return _entries.get(key);
+    }
+
+    /** Record that KEY is the setting of MACHINE, whose alphabet is
+     *  ALPHABET, which is at the start of a message.  If KEY has been
+     *  offered before, computes and caches MACHINE's keystream; MACHINE
+     *  itself is left unchanged. */
+    void offer(String key, Alphabet alphabet, Machine machine) {
+        if (_entries.get(key) != null) {
+            return;
+        } else if (_entries.containsKey(key)) {
+            Keystream keystream = new Keystream(alphabet, machine, _length);
+            _entries.put(key, keystream);
+            _bytes += keystream.footprint();
+        } else {
+            _entries.put(key, null);
+            _bytes += keyFootprint(key);
+        }
+        Iterator<Map.Entry<String, Keystream>> oldest =
+            _entries.entrySet().iterator();
+        while (_bytes > _capacity && oldest.hasNext()) {
+            Map.Entry<String, Keystream> entry = oldest.next();
+            _bytes -= keyFootprint(entry.getKey());
+            if (entry.getValue() != null) {
+                _bytes -= entry.getValue().footprint();
+            }
+            oldest.remove();
+        }
+    }
+
+    /** Return the approximate number of bytes used to remember KEY. */
+    private static long keyFootprint(String key) {
+        return 2L * key.length() + KEY_OVERHEAD;
+    }
+
+    /** The cached keystreams (null for settings offered only once), least
+     *  recently used first. */
+    private final LinkedHashMap<String, Keystream> _entries =
+        new LinkedHashMap<>(16, 0.75f, true);
+
+    /** Maximum approximate size in bytes of the cached entries. */
+    private final long _capacity;
+
+    /** Number of keypresses in each keystream. */
+    private final int _length;
+
+    /** Approximate size in bytes of the cached entries. */
+    private long _bytes;
+
+    /** Approximate size in bytes of a cache entry, apart from its key's
+     *  characters and its keystream. */
+    private static final int KEY_OVERHEAD = 96;
+}
@@ -0,0 +1,109 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Keystream and KeystreamCache
+ *  classes.
+ *  @author Jenny Miao
+ */
+public class KeystreamTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testKeystreamMatchesMachine() {
+        Machine machine = navalMachine();
+        Keystream keystream = new Keystream(UPPER, machine, 700);
+        assertEquals(700, keystream.length());
+        char[] msg = new char[700], expected = new char[700],
+            actual = new char[700];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = UPPER_STRING.charAt((i * 7) % 26);
+        }
+        keystream.convert(0, msg, 0, 300, actual, 0);
+        keystream.convert(300, msg, 300, 400, actual, 300);
+        machine.convert(msg, 0, msg.length, expected, 0);
+        assertArrayEquals(expected, actual);
+        byte[] bytes = new String(msg).getBytes();
+        keystream.convert(0, bytes, 0, 500, bytes, 0);
+        keystream.convert(500, bytes, 500, 200, bytes, 500);
+        assertEquals(new String(expected), new String(bytes));
+    }
+
+    @Test
+    public void testKeystreamLeavesMachine() {
+        Machine machine = navalMachine();
+        new Keystream(UPPER, machine, 100);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testKeystreamBadCharacter() {
+        Keystream keystream = new Keystream(UPPER, navalMachine(), 10);
+        char[] msg = "AB!".toCharArray();
+        keystream.convert(0, msg, 0, 3, msg, 0);
+    }
+
+    @Test
+    public void testSettingKey() {
+        Machine m0 = navalMachine(), m1 = navalMachine();
+        m0.setPlugboard(new Permutation("(HQ) (EX)", UPPER));
+        m1.setPlugboard(new Permutation("(XE)(QH)", UPPER));
+        assertEquals(m0.settingKey(), m1.settingKey());
+        m1.setRings("AAAB");
+        assertNotEquals(m0.settingKey(), m1.settingKey());
+        m1.setRings("AAAA");
+        m1.convert(0);
+        assertNotEquals(m0.settingKey(), m1.settingKey());
+    }
+
+    @Test
+    public void testCacheComputesOnSecondOffer() {
+        KeystreamCache cache = new KeystreamCache(1 << 20, 50);
+        Machine machine = navalMachine();
+        String key = machine.settingKey();
+        assertNull(cache.get(key));
+        cache.offer(key, UPPER, machine);
+        assertNull(cache.get(key));
+        cache.offer(key, UPPER, machine);
+        assertNotNull(cache.get(key));
+        assertEquals(50, cache.get(key).length());
+    }
+
+    @Test
+    public void testCacheEvictsLeastRecentlyUsed() {
+        int length = 100;
+        long entry = new Keystream(UPPER, navalMachine(), length).footprint();
+        KeystreamCache cache =
+            new KeystreamCache(3 * entry + entry / 2, length);
+        Machine[] machines = new Machine[4];
+        String[] keys = new String[4];
+        for (int i = 0; i < 4; i += 1) {
+            machines[i] = navalMachine();
+            machines[i].setRotors("AXL" + UPPER_STRING.charAt(i));
+            keys[i] = machines[i].settingKey();
+        }
+        for (int i = 0; i < 2; i += 1) {
+            cache.offer(keys[i], UPPER, machines[i]);
+            cache.offer(keys[i], UPPER, machines[i]);
+        }
+        assertNotNull(cache.get(keys[0]));
+        for (int i = 2; i < 4; i += 1) {
+            cache.offer(keys[i], UPPER, machines[i]);
+            cache.offer(keys[i], UPPER, machines[i]);
+        }
+        assertNotNull(cache.get(keys[0]));
+        assertNull(cache.get(keys[1]));
+        assertNotNull(cache.get(keys[3]));
+    }
+}
@@ -1,7 +1,12 @@
 package enigma;
 
+import java.nio.CharBuffer;
+
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
 
 import static enigma.EnigmaException.*;
 
@@ -20,6 +25,7 @@ class Machine {
         this.pawls = numPawls;
         this.allRotors = new ArrayList<Rotor>(theRotors);
         this.activeRotors = new ArrayList<Rotor>();
+        this.plugboard = new Permutation("", alpha);
     }
 
     /** Return the number of rotor slots I have. */
@@ -34,8 +40,13 @@ class Machine {
 
     /** Set my rotor slots to the rotors named ROTORS from my set of
      *  available rotors (ROTORS[0] names the reflector).
-     *  Initially, all rotors are set at their 0 setting. */
+     *  Initially, all rotors are set at their 0 setting.  My spec() is
+     *  kept if it is of the same rotors, in the same order. */
     void insertRotors(String[] rotors) {
+        invalidate();
+        if (_spec != null && !sameRotors(_spec, rotors)) {
+            _spec = null;
+        }
         activeRotors = new ArrayList<Rotor>();
         for (int i = 0; i < rotors.length; i++) {
             for (int j = 0; j < allRotors.size(); j++) {
@@ -44,85 +55,345 @@ class Machine {
                 }
             }
         }
+        if (activeRotors.size() != rotors.length) {
+            throw error("unknown rotor in setting");
+        }
+    }
+
+    /** Return true iff SPEC is of the rotors named ROTORS, in order. */
+    private static boolean sameRotors(MachineSpec spec, String[] rotors) {
+        if (spec.numRotors() != rotors.length) {
+            return false;
+        }
+        for (int i = 0; i < rotors.length; i++) {
+            if (!spec.name(i).equals(rotors[i])) {
+                return false;
+            }
+        }
+        return true;
     }
 
     /** Set my rotors according to SETTING, which must be a string of
      *  numRotors()-1 characters in my alphabet. The first letter refers
      *  to the leftmost rotor setting (not counting the reflector).  */
     void setRotors(String setting) {
-        if (setting.length() != numRotors() - 1) {
+        if (setting.codePointCount(0, setting.length()) != numRotors() - 1) {
             throw error("Number of characters in setting "
                     + "does not match number of rotors");
         }
-        for (int i = 1; i < numRotors(); i++) {
-            char setter = setting.charAt(i - 1);
-            activeRotors.get(i).set(setter);
+        invalidate();
+        for (int i = 1, k = 0; i < numRotors(); i++) {
+            int setter = setting.codePointAt(k);
+            k += Character.charCount(setter);
+            int posn = _alphabet.indexOf(setter);
+            if (posn < 0) {
+                throw error("Character not in alphabet",
+                            new String(Character.toChars(setter)));
+            }
+            activeRotors.get(i).set(posn);
         }
     }
 
-    /** Set the plugboard to PLUG. */
+    /** Set the plugboard to PLUG.  Its cycles were already checked
+     *  against the alphabet when PLUG was constructed. */
     void setPlugboard(Permutation plug) {
-        String characters = plug.cycles().replaceAll("\\(", "");
-        characters = characters.replaceAll("\\)", "");
-        for (int i = 0; i < characters.length(); i++) {
-            if (!plug.alphabet().contains(characters.charAt(i))) {
-                throw error("Plugboard contains chars not in Alphabet");
+        invalidate();
+        this.plugboard = plug;
+    }
+
+    /** Set the ring settings of my rotors according to RINGS, which must
+     *  be a string of numRotors()-1 characters in my alphabet, the first
+     *  referring to the leftmost rotor (not counting the reflector). */
+    void setRings(String rings) {
+        int[] codePoints = rings.codePoints().toArray();
+        if (codePoints.length != numRotors() - 1) {
+            throw error("ring setting string does not match number of rotors");
+        }
+        invalidate();
+        for (int i = 1; i < numRotors(); i++) {
+            int ring = _alphabet.indexOf(codePoints[i - 1]);
+            if (ring < 0) {
+                throw error("ring setting not in alphabet");
             }
+            activeRotors.get(i).setRing(ring);
         }
-        this.plugboard = plug;
     }
 
     /** Returns the result of converting the input character C (as an
      *  index in the range 0..alphabet size - 1), after first advancing
-     *  the machine. */
+     *  the machine.  Allocates nothing, once the machine has been
+     *  compiled and has converted a character. */
     int convert(int c) {
-        if (c < 0 || c >= _alphabet.size()) {
-            throw error("Index of character is not in range of alphabet size");
-        }
-        boolean[] advances = new boolean[activeRotors.size()];
-        for (int i = 0; i < activeRotors.size(); i++) {
-            if (activeRotors.get(i).atNotch()
-                    && activeRotors.get(i - 1).rotates()) {
-                advances[i] = true;
-                if (i > 0) {
-                    advances[i - 1] = true;
-                }
-            } else if (i == (activeRotors.size() - 1)) {
-                advances[i] = true;
-            }
+        return state().convert(c);
+    }
+
+    /** Return the substitutions made on each of the next POSITIONS
+     *  keypresses, advancing the machine past them: element K * size + C
+     *  of the result, for K < POSITIONS and C < size (the size of my
+     *  alphabet), is convert(C) as it would be on the Kth keypress. */
+    int[] substitutions(int positions) {
+        return state().substitutions(positions);
+    }
+
+    /** Advance the rotors exactly as TICKS calls of convert would, without
+     *  converting anything (see MachineState.advance). */
+    void advance(long ticks) {
+        state().advance(ticks);
+    }
+
+    /** Set my rotors according to SETTING, as for setRotors, and then move
+     *  them to the state they would have after converting OFFSET
+     *  characters (see advance), so that the next character converted is
+     *  number OFFSET (from 0) of a message begun at SETTING. */
+    void seek(String setting, long offset) {
+        if (offset < 0) {
+            throw error("negative message offset");
         }
-        for (int i = 0; i < activeRotors.size(); i++) {
-            if (advances[i]) {
-                activeRotors.get(i).advance();
-            }
+        setRotors(setting);
+        advance(offset);
+    }
+
+    /** Return the specification of my rotors (see MachineSpec), which
+     *  may be shared by any number of threads.  It stays the same until
+     *  the next call to insertRotors. */
+    MachineSpec spec() {
+        if (_spec == null) {
+            _spec = new MachineSpec(_alphabet, activeRotors);
         }
-        int change = c;
-        if (plugboard.inPerm(change)) {
-            change = plugboard.permute(change);
+        return _spec;
+    }
+
+    /** Return a new MachineState of my spec() in my current state, which
+     *  converts independently of me and of any other such state. */
+    MachineState snapshot() {
+        return state().copy();
+    }
+
+    /** Return my current state, first compiling my rotors' settings and
+     *  ring settings and my plugboard into a new one if need be.  From
+     *  then until the next call to invalidate, the rotor positions held
+     *  in the state, not those of the Rotor objects, are current. */
+    private MachineState state() {
+        if (_state == null) {
+            MachineState state = new MachineState(spec());
+            for (int i = 0; i < activeRotors.size(); i++) {
+                Rotor rotor = activeRotors.get(i);
+                Permutation perm = rotor.permutation();
+                state.setRing(i, perm.wrap(rotor.ring()));
+                state.setPosition(i, perm.wrap(rotor.setting()));
+            }
+            state.setPlugboard(plugboard);
+            _state = state;
         }
-        for (int i = activeRotors.size() - 1; i >= 0; i--) {
-            change = activeRotors.get(i).convertForward(change);
+        return _state;
+    }
+
+    /** Return a string that is the same for two machines with the same
+     *  rotors and plugboard, in the same positions and ring settings, and
+     *  so with the same conversions from here on. */
+    String settingKey() {
+        invalidate();
+        StringBuilder key = new StringBuilder();
+        for (Rotor rotor : activeRotors) {
+            Permutation perm = rotor.permutation();
+            key.append(rotor.name()).append(' ')
+                .append(perm.wrap(rotor.setting())).append(' ')
+                .append(perm.wrap(rotor.ring())).append(' ');
         }
-        for (int i = 1; i < activeRotors.size(); i++) {
-            change = activeRotors.get(i).convertBackward(change);
+        for (int k = 0; k < _alphabet.size(); k++) {
+            key.append((char) plugboard.permute(k));
         }
-        if (plugboard.inPerm(change)) {
-            change = plugboard.invert(change);
+        return key.toString();
+    }
+
+    /** Discard my current state (see state), first copying the rotor
+     *  positions back into my rotors. */
+    private void invalidate() {
+        if (_state != null) {
+            for (int i = 0; i < activeRotors.size(); i++) {
+                if (_spec.rotates(i)) {
+                    activeRotors.get(i).set(_state.position(i));
+                }
+            }
+            _state = null;
         }
-        return change;
     }
 
     /** Returns the encoding/decoding of MSG, updating the state of
      *  the rotors accordingly. */
     String convert(String msg) {
-        String str = new String("");
-        for (int i  = 0; i < msg.length(); i++) {
-            int a = _alphabet.toInt(msg.charAt(i));
-            char b = _alphabet.toChar(convert(a));
-            String bStr = Character.toString(b);
-            str = str.concat(bStr);
+        StringBuilder str = new StringBuilder(msg.length());
+        for (int i = 0; i < msg.length(); ) {
+            int cp = msg.codePointAt(i);
+            i += Character.charCount(cp);
+            int a = _alphabet.indexOf(cp);
+            if (a < 0) {
+                throw error("Character not in alphabet",
+                            new String(Character.toChars(cp)));
+            }
+            str.appendCodePoint(_alphabet.toCodePoint(convert(a)));
+        }
+        return str.toString();
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, advancing the rotors exactly as LEN calls of
+     *  convert(int) would.  SRC and DEST may be the same array.  Every
+     *  character must be in my alphabet, which must lie in the Basic
+     *  Multilingual Plane; on an error, the characters before the
+     *  offending one have been converted. */
+    void convert(char[] src, int srcOff, int len, char[] dest, int destOff) {
+        checkBmp();
+        checkRange(src.length, srcOff, len);
+        checkRange(dest.length, destOff, len);
+        state().convert(src, srcOff, len, dest, destOff);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, with the same result and final rotor settings
+     *  as convert(char[], int, int, char[], int).  The region is cut into
+     *  segments that are converted concurrently on the common
+     *  ForkJoinPool, each by a copy of my state advanced (see advance) to
+     *  the position of its first character.  On an error, my final state is
+     *  unspecified. */
+    void convertParallel(char[] src, int srcOff, int len,
+                         char[] dest, int destOff) {
+        checkBmp();
+        checkRange(src.length, srcOff, len);
+        checkRange(dest.length, destOff, len);
+        convertSegments(len, (state, start, end) ->
+            state.convert(src, srcOff + start, end - start,
+                          dest, destOff + start));
+    }
+
+    /** Convert the LEN bytes of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, as for convert(byte[], int, int, byte[], int),
+     *  but concurrently, as for convertParallel(char[], int, int, char[],
+     *  int). */
+    void convertParallel(byte[] src, int srcOff, int len,
+                         byte[] dest, int destOff) {
+        checkSingleByte();
+        checkRange(src.length, srcOff, len);
+        checkRange(dest.length, destOff, len);
+        convertSegments(len, (state, start, end) ->
+            state.convert(src, srcOff + start, end - start,
+                          dest, destOff + start));
+    }
+
+    /** A conversion of characters START to END - 1 of some region by
+     *  STATE, which is at the position of character START. */
+    private interface Segment {
+        /** Convert characters START to END - 1 with STATE. */
+        void convert(MachineState state, int start, int end);
+    }
+
+    /** Convert characters 0 to LEN - 1 of a region with SEGMENT, cutting
+     *  them into segments converted concurrently as described for
+     *  convertParallel, or converting them all with my state if there
+     *  are too few to be worth cutting. */
+    private void convertSegments(int len, Segment segment) {
+        ForkJoinPool pool = ForkJoinPool.commonPool();
+        int parts = Math.min(len / MIN_SEGMENT,
+                             SEGMENTS_PER_THREAD * pool.getParallelism());
+        if (parts <= 1) {
+            segment.convert(state(), 0, len);
+            return;
+        }
+        ArrayList<ForkJoinTask<?>> segments = new ArrayList<>();
+        MachineState state = state();
+        for (int p = 0; p < parts; p++) {
+            int start = (int) ((long) len * p / parts);
+            int end = (int) ((long) len * (p + 1) / parts);
+            MachineState part = p == parts - 1 ? state : state.copy();
+            segments.add(ForkJoinTask.adapt(() -> {
+                part.advance(start);
+                segment.convert(part, start, end);
+            }));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(segments);
+            }
+        });
+    }
+
+    /** Return a copy of me whose rotors are copies of my active rotors
+     *  in their current settings, so that it can convert independently
+     *  of me.  The copy shares my available rotors, plugboard and
+     *  spec(). */
+    Machine copy() {
+        invalidate();
+        Machine result = new Machine(_alphabet, numRotors, pawls, allRotors);
+        for (Rotor rotor : activeRotors) {
+            result.activeRotors.add(rotor.copy());
+        }
+        result.plugboard = plugboard;
+        if (!activeRotors.isEmpty()) {
+            result._spec = spec();
+        }
+        return result;
+    }
+
+    /** Convert the remaining characters of SRC into DEST, advancing the
+     *  positions of both, as for convert(char[], int, int, char[], int).
+     *  DEST must have room for all of them. */
+    void convert(CharBuffer src, CharBuffer dest) {
+        checkBmp();
+        int len = src.remaining();
+        if (dest.remaining() < len) {
+            throw error("destination buffer too small");
+        }
+        if (src.hasArray() && dest.hasArray()) {
+            convert(src.array(), src.arrayOffset() + src.position(), len,
+                    dest.array(), dest.arrayOffset() + dest.position());
+            src.position(src.position() + len);
+            dest.position(dest.position() + len);
+            return;
+        }
+        for (int i = 0; i < len; i++) {
+            char ch = src.get();
+            int c = _alphabet.indexOf(ch);
+            if (c < 0) {
+                throw error("Character not in alphabet", ch);
+            }
+            dest.put((char) _alphabet.toCodePoint(convert(c)));
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, as for convert(char[], int, int, char[], int).
+     *  Each byte stands for the character with the same code (ISO-8859-1),
+     *  so my alphabet must be single-byte. */
+    void convert(byte[] src, int srcOff, int len, byte[] dest, int destOff) {
+        checkSingleByte();
+        checkRange(src.length, srcOff, len);
+        checkRange(dest.length, destOff, len);
+        state().convert(src, srcOff, len, dest, destOff);
+    }
+
+    /** Check that my alphabet lies in the Basic Multilingual Plane, so
+     *  that each of its characters is a single char. */
+    private void checkBmp() {
+        if (!_alphabet.bmpOnly()) {
+            throw error("alphabet is not in the Basic Multilingual Plane");
+        }
+    }
+
+    /** Check that my alphabet is single-byte (see Alphabet.singleByte). */
+    private void checkSingleByte() {
+        if (!_alphabet.singleByte()) {
+            throw error("alphabet is not single-byte");
+        }
+    }
+
+    /** Check that OFF and LEN describe a region of an array of length
+     *  SIZE. */
+    private static void checkRange(int size, int off, int len) {
+        if (off < 0 || len < 0 || off > size - len) {
+            throw error("region %d..%d out of bounds for length %d",
+                        off, off + len, size);
         }
-        return str;
     }
 
     /** Returns my alphabet. */
@@ -145,8 +416,10 @@ class Machine {
         return allRotors;
     }
 
-    /** Returns my active rotors. */
+    /** Returns my active rotors, in their current settings.  They may be
+     *  modified until the next conversion. */
     ArrayList<Rotor> getActiveRotors() {
+        invalidate();
         return activeRotors;
     }
 
@@ -155,6 +428,12 @@ class Machine {
         return plugboard;
     }
 
+    /** Smallest number of characters convertParallel gives one task. */
+    static final int MIN_SEGMENT = 1 << 14;
+
+    /** Number of segments per pool thread made by convertParallel. */
+    private static final int SEGMENTS_PER_THREAD = 4;
+
     /** Common alphabet of my rotors. */
     private final Alphabet _alphabet;
 
@@ -172,4 +451,12 @@ class Machine {
 
     /** Arraylist of the active rotors being used. */
     private ArrayList<Rotor> activeRotors;
+
+    /** The specification of my active rotors, or null if it must be
+     *  recomputed. */
+    private MachineSpec _spec;
+
+    /** My current state, or null if it must be recomputed from my rotors
+     *  and plugboard (see state). */
+    private MachineState _state;
 }
@@ -0,0 +1,177 @@
+package enigma;
+
+import java.util.List;
+
+import static enigma.EnigmaException.*;
+
+/** The immutable part of an Enigma machine with a particular set of
+ *  rotors in its slots: its alphabet and the wiring, notches and kind of
+ *  each rotor, compiled into tables.  A MachineSpec is never modified
+ *  after construction, so any number of threads may share one, each
+ *  converting with its own MachineState.
+ *  @author Jenny Miao
+ */
+final class MachineSpec {
+
+    /** The specification of a machine with alphabet ALPHABET whose slots
+     *  hold ROTORS, from left (the reflector) to right.  There must be at
+     *  least two rotors. */
+    MachineSpec(Alphabet alphabet, List<Rotor> rotors) {
+        int n = rotors.size();
+        if (n < 2) {
+            throw error("a machine needs a reflector and at least one rotor");
+        }
+        int size = alphabet.size();
+        _alphabet = alphabet;
+        _names = new String[n];
+        _rotates = new boolean[n];
+        _forward = new int[n][];
+        _backward = new int[n][];
+        _engages = new boolean[n][];
+        for (int i = 0; i < n; i++) {
+            Rotor rotor = rotors.get(i);
+            Permutation perm = rotor.permutation();
+            _names[i] = rotor.name();
+            _rotates[i] = rotor.rotates();
+            _forward[i] = new int[3 * size];
+            _backward[i] = new int[3 * size];
+            _engages[i] = new boolean[size];
+            boolean carries = i > 0 && rotors.get(i - 1).rotates();
+            for (int k = 0; k < 3 * size; k++) {
+                _forward[i][k] = perm.permute(k) + size;
+                _backward[i][k] = perm.invert(k) + size;
+            }
+            for (int k = 0; k < size; k++) {
+                _engages[i][k] = carries && rotor.notchAt(k);
+            }
+        }
+        _nextEngage = new int[size];
+        boolean[] engages = _engages[n - 1];
+        int next = -1;
+        for (int k = 2 * size - 1; k >= 0; k--) {
+            if (engages[k % size]) {
+                next = k;
+            }
+            if (k < size) {
+                _nextEngage[k] = next < 0 ? -1 : next - k;
+            }
+        }
+        boolean regular = true;
+        for (int i = 0; i < n; i++) {
+            for (int k = 0; k < size; k++) {
+                regular &= !_engages[i][k]
+                    || _rotates[i] && !_engages[i][(k + 1) % size];
+            }
+        }
+        _regular = regular;
+        _nextSafe = new int[size];
+        next = -1;
+        for (int k = 2 * size - 1; k >= 0; k--) {
+            boolean safe = true;
+            for (int d = 0; d < n; d++) {
+                safe &= !engages[Math.floorMod(k - d, size)];
+            }
+            if (safe) {
+                next = k;
+            }
+            if (k < size) {
+                _nextSafe[k] = next < 0 ? -1 : next - k;
+            }
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the number of rotors in my slots. */
+    int numRotors() {
+        return _names.length;
+    }
+
+    /** Return the name of the rotor in slot I. */
+    String name(int i) {
+        return _names[i];
+    }
+
+    /** Return true iff the rotor in slot I rotates. */
+    boolean rotates(int i) {
+        return _rotates[i];
+    }
+
+    /** Return the forward table of the rotor in slot I (see _forward),
+     *  which must not be modified. */
+    int[] forward(int i) {
+        return _forward[i];
+    }
+
+    /** Return the backward table of the rotor in slot I (see _forward),
+     *  which must not be modified. */
+    int[] backward(int i) {
+        return _backward[i];
+    }
+
+    /** Return true iff the rotor in slot I, in position POSN, engages
+     *  the rotor to its left (see _engages). */
+    boolean engages(int i, int posn) {
+        return _engages[i][posn];
+    }
+
+    /** Return the number of steps the rightmost rotor takes from position
+     *  POSN to a position at which it engages, or -1 if it has none. */
+    int nextEngage(int posn) {
+        return _nextEngage[posn];
+    }
+
+    /** Return true iff no rotor engages at two consecutive positions,
+     *  and every rotor that engages rotates.  Then an engaged rotor
+     *  always leaves its notch on the next keypress, so every rotor
+     *  passes each of its engaging positions once per revolution (see
+     *  MachineState.advance). */
+    boolean regularStepping() {
+        return _regular;
+    }
+
+    /** Return the number of steps the rightmost rotor takes from position
+     *  POSN to a safe position, or -1 if it has none: one at which
+     *  neither it nor the numRotors() - 1 positions before it engage,
+     *  so that the carries from its last notch have died out. */
+    int nextSafe(int posn) {
+        return _nextSafe[posn];
+    }
+
+    /** Common alphabet of my rotors. */
+    private final Alphabet _alphabet;
+
+    /** Name of the rotor in each slot. */
+    private final String[] _names;
+
+    /** Whether the rotor in each slot rotates. */
+    private final boolean[] _rotates;
+
+    /** _forward[I] and _backward[I] are the permutation of rotor I and its
+     *  inverse, in its 0 position, biased by the alphabet size N and
+     *  repeated three times: _forward[I][K] is N plus the image of K
+     *  modulo N.  A character index X, kept in the range 0..2N-1 (the
+     *  same character as X modulo N), passes through rotor I at offset
+     *  D (position minus ring setting) as _forward[I][X + D] - D, again
+     *  in that range, with no need to reduce anything modulo N. */
+    private final int[][] _forward, _backward;
+
+    /** _engages[I][P] is true iff rotor I has a notch at position P and
+     *  the rotor to its left rotates. */
+    private final boolean[][] _engages;
+
+    /** _nextEngage[P] is the number of steps the rightmost rotor takes
+     *  from position P to an engaging position, or -1 if it has none. */
+    private final int[] _nextEngage;
+
+    /** True iff my stepping is regular (see regularStepping). */
+    private final boolean _regular;
+
+    /** _nextSafe[P] is the number of steps the rightmost rotor takes from
+     *  position P to a safe position (see nextSafe), or -1 if it has
+     *  none. */
+    private final int[] _nextSafe;
+}
@@ -0,0 +1,492 @@
+package enigma;
+
+import static enigma.EnigmaException.*;
+
+/** The mutable part of an Enigma machine: the positions and ring settings
+ *  of the rotors of a MachineSpec and its plugboard, together with the
+ *  tables derived from them that make conversion fast.  Each thread
+ *  converting with a shared MachineSpec needs its own MachineState.
+ *  @author Jenny Miao
+ */
+final class MachineState {
+
+    /** A state of SPEC with every rotor at position 0 and ring setting 0,
+     *  and no plugboard. */
+    MachineState(MachineSpec spec) {
+        int n = spec.numRotors();
+        _spec = spec;
+        _alphabet = spec.alphabet();
+        _size = _alphabet.size();
+        _fastForward = spec.forward(n - 1);
+        _fastBackward = spec.backward(n - 1);
+        _pos = new int[n];
+        _ring = new int[n];
+        _offset = new int[n];
+        _engaged = new long[(n >> LOG_WORD_SIZE) + 1];
+        _movers = new int[n + 1];
+        for (int i = 0; i < n; i++) {
+            if (spec.engages(i, 0)) {
+                _engaged[i >> LOG_WORD_SIZE] |= 1L << i;
+                _engagedCount += 1;
+            }
+        }
+        _foldStale = true;
+        setPlugboard(new Permutation("", _alphabet));
+    }
+
+    /** Return my specification. */
+    MachineSpec spec() {
+        return _spec;
+    }
+
+    /** Return the position of rotor I. */
+    int position(int i) {
+        return _pos[i];
+    }
+
+    /** Return the ring setting of rotor I. */
+    int ring(int i) {
+        return _ring[i];
+    }
+
+    /** Put rotor I at position POSN, in the range 0..size-1. */
+    void setPosition(int i, int posn) {
+        checkIndex(posn);
+        move(i, posn);
+    }
+
+    /** Set the ring setting of rotor I to RING, in the range
+     *  0..size-1. */
+    void setRing(int i, int ring) {
+        checkIndex(ring);
+        _ring[i] = ring;
+        move(i, _pos[i]);
+    }
+
+    /** Set my plugboard to PLUG, a permutation of my alphabet. */
+    void setPlugboard(Permutation plug) {
+        _plugForward = new int[_size];
+        _plugBackward = new int[2 * _size];
+        for (int k = 0; k < 2 * _size; k++) {
+            if (k < _size) {
+                _plugForward[k] = plug.permute(k);
+            }
+            _plugBackward[k] = plug.invert(k);
+        }
+    }
+
+    /** Return a copy of me, sharing my specification, that converts
+     *  independently of me. */
+    MachineState copy() {
+        MachineState result = new MachineState(_spec);
+        for (int i = 0; i < _pos.length; i++) {
+            result._ring[i] = _ring[i];
+            result.move(i, _pos[i]);
+        }
+        result._plugForward = _plugForward;
+        result._plugBackward = _plugBackward;
+        return result;
+    }
+
+    /** Returns the result of converting the input character C (as an
+     *  index in the range 0..alphabet size - 1), after first advancing
+     *  the rotors.  The reflector and all rotors but the rightmost are
+     *  applied as one folded table (see fold), so only the rightmost
+     *  rotor and the plugboard are done step by step.  Allocates
+     *  nothing, once the folded table has been built. */
+    int convert(int c) {
+        checkIndex(c);
+        advanceRotors();
+        if (_foldStale) {
+            fold();
+        }
+        return path(c);
+    }
+
+    /** Convert the LEN characters of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, advancing the rotors exactly as LEN calls of
+     *  convert(int) would.  SRC and DEST may be the same array, and the
+     *  region must be in bounds.  Every character must be in my
+     *  alphabet, which must lie in the Basic Multilingual Plane; on an
+     *  error, the characters before the offending one have been
+     *  converted. */
+    void convert(char[] src, int srcOff, int len, char[] dest, int destOff) {
+        if (!_alphabet.bmpOnly()) {
+            throw error("alphabet is not in the Basic Multilingual Plane");
+        }
+        for (int i = 0; i < len; i++) {
+            char ch = src[srcOff + i];
+            int c = _alphabet.indexOf(ch);
+            if (c < 0) {
+                throw error("Character not in alphabet", ch);
+            }
+            dest[destOff + i] = (char) _alphabet.toCodePoint(convert(c));
+        }
+    }
+
+    /** Convert the LEN bytes of SRC starting at SRCOFF into DEST,
+     *  starting at DESTOFF, as for convert(char[], int, int, char[], int).
+     *  Each byte stands for the character with the same code (ISO-8859-1),
+     *  so my alphabet must be single-byte. */
+    void convert(byte[] src, int srcOff, int len, byte[] dest, int destOff) {
+        if (!_alphabet.singleByte()) {
+            throw error("alphabet is not single-byte");
+        }
+        for (int i = 0; i < len; i++) {
+            int ch = src[srcOff + i] & 0xff;
+            int c = _alphabet.indexOf(ch);
+            if (c < 0) {
+                throw error("Character not in alphabet", (char) ch);
+            }
+            dest[destOff + i] = (byte) _alphabet.toCodePoint(convert(c));
+        }
+    }
+
+    /** Return the substitutions made on each of the next POSITIONS
+     *  keypresses, advancing the rotors past them: element K * size + C
+     *  of the result, for K < POSITIONS and C < size (the size of my
+     *  alphabet), is convert(C) as it would be on the Kth keypress. */
+    int[] substitutions(int positions) {
+        int[] result = new int[positions * _size];
+        substitutions(positions, result);
+        return result;
+    }
+
+    /** Store the substitutions made on each of the next POSITIONS
+     *  keypresses in RESULT, as for substitutions(POSITIONS), which
+     *  must be long enough to hold them. */
+    void substitutions(int positions, int[] result) {
+        for (int k = 0; k < positions; k++) {
+            advanceRotors();
+            if (_foldStale) {
+                fold();
+            }
+            for (int c = 0; c < _size; c++) {
+                result[k * _size + c] = path(c);
+            }
+        }
+    }
+
+    /** Advance the rotors exactly as TICKS calls of convert would, without
+     *  converting anything.  Only the keypresses at which some rotor is
+     *  engaged are simulated one at a time: between them, only the
+     *  rightmost rotor moves, so a run of such keypresses is taken in a
+     *  single jump to the rightmost rotor's next engaging notch.  When
+     *  the stepping is regular (see MachineSpec.regularStepping), whole
+     *  revolutions of the rightmost rotor are taken from a safe position
+     *  (see MachineSpec.nextSafe) by counting (see revolve), so the cost
+     *  does not grow with TICKS; otherwise it grows as TICKS / size. */
+    void advance(long ticks) {
+        int last = _pos.length - 1;
+        boolean regular = _spec.regularStepping();
+        while (ticks > 0) {
+            if (_engagedCount > 0) {
+                advanceRotors();
+                ticks -= 1;
+            } else if (!_spec.rotates(last)) {
+                return;
+            } else {
+                int toSafe = regular ? _spec.nextSafe(_pos[last]) : -1;
+                if (toSafe == 0 && ticks >= _size) {
+                    revolve(ticks / _size);
+                    ticks %= _size;
+                    continue;
+                }
+                long quiet = ticks;
+                int toNotch = _spec.nextEngage(_pos[last]);
+                if (toNotch > 0 && toNotch < quiet) {
+                    quiet = toNotch;
+                }
+                if (toSafe > 0 && toSafe < quiet && ticks >= _size) {
+                    quiet = toSafe;
+                }
+                move(last, (int) ((_pos[last] + quiet % _size) % _size));
+                ticks -= quiet;
+            }
+        }
+    }
+    /** Advance the rotors by REVOLUTIONS full revolutions of the
+     *  rightmost rotor, which must rotate and be at a safe position, with
+     *  no rotor engaged and regular stepping.  The rightmost rotor ends
+     *  where it began, having engaged at each of its notches once per
+     *  revolution.  Each rotor to its left moves once for each keypress
+     *  at which its right neighbor engages, and once more on the next
+     *  keypress whenever that lands it on a notch, so each of its
+     *  positions that does not engage takes one carry to leave, and each
+     *  revolution of it passes (and so engages at) every one of its
+     *  notches once.  The carries received by each rotor are thus
+     *  counted from the right, and each rotor walked only through the
+     *  remainder of a revolution.  Since the start is safe, the carries
+     *  from the last notch have died out by the end, leaving no rotor
+     *  engaged, as after the keypresses themselves. */
+    private void revolve(long revolutions) {
+        int last = _pos.length - 1;
+        long carries = revolutions * engagingPositions(last);
+        for (int i = last - 1; i >= 0 && carries > 0; i--) {
+            int notches = engagingPositions(i);
+            long laps = carries / (_size - notches);
+            long rest = carries % (_size - notches);
+            carries = laps * notches;
+            int posn = _pos[i];
+            for (; rest > 0; rest--) {
+                posn = posn + 1 == _size ? 0 : posn + 1;
+                if (_spec.engages(i, posn)) {
+                    carries += 1;
+                    posn = posn + 1 == _size ? 0 : posn + 1;
+                }
+            }
+            move(i, posn);
+        }
+    }
+
+    /** Return the number of positions at which rotor I engages. */
+    private int engagingPositions(int i) {
+        int result = 0;
+        for (int p = 0; p < _size; p++) {
+            if (_spec.engages(i, p)) {
+                result += 1;
+            }
+        }
+        return result;
+    }
+
+    /** Check that C is the index of a character of my alphabet. */
+    private void checkIndex(int c) {
+        if (c < 0 || c >= _size) {
+            throw error("Index of character is not in range of alphabet size");
+        }
+    }
+
+    /** Returns the result of passing the character with index C through
+     *  the plugboard, rotors and reflector in their current positions,
+     *  which requires that _folded be current. */
+    private int path(int c) {
+        int offset = _offset[_pos.length - 1];
+        int change = _fastForward[_plugForward[c] + offset] - offset;
+        change = _fastBackward[_folded[change] + offset] - offset;
+        return _plugBackward[change];
+    }
+
+    /** Recompute _folded, the composition of the path through all rotors
+     *  but the rightmost one: forward through rotors numRotors()-2 to 1,
+     *  through the reflector, and back through rotors 1 to
+     *  numRotors()-2, all in their current positions.  The forward part
+     *  is the root of _tree, of which only the leaves of rotors that
+     *  have moved and their ancestors are recomposed, and the backward
+     *  part is its inverse, so the cost grows with the logarithm of the
+     *  number of rotors rather than linearly.  The tables are allocated
+     *  on first use, so that a state that never converts stays small. */
+    private void fold() {
+        if (_tree == null) {
+            allocateTree();
+        }
+        int size = _size, leaves = _tree.length >> 1;
+        if (_dirtyCount * Integer.numberOfTrailingZeros(leaves) >= leaves) {
+            for (int k = 0; k < _dirtyCount; k++) {
+                composeLeaf(_dirty[k]);
+            }
+            for (int n = leaves - 1; n > 0; n--) {
+                compose(n);
+            }
+        } else {
+            for (int k = 0; k < _dirtyCount; k++) {
+                composeLeaf(_dirty[k]);
+                for (int n = (leaves + _dirty[k]) >> 1; n > 0; n >>= 1) {
+                    compose(n);
+                }
+            }
+        }
+        for (int k = 0; k < _dirtyCount; k++) {
+            _leafDirty[_dirty[k]] = false;
+        }
+        _dirtyCount = 0;
+        int[] path = _tree[1], reflector = _spec.forward(0);
+        int offset = _offset[0];
+        for (int c = 0; c < size; c++) {
+            _inverse[path[c]] = c;
+        }
+        for (int c = 0; c < size; c++) {
+            int change = reflector[path[c] + offset] - offset;
+            if (change >= size) {
+                change -= size;
+            }
+            _folded[c] = _folded[c + size] = _inverse[change];
+        }
+        _foldStale = false;
+    }
+
+    /** Allocate _tree and the other tables used by fold, with all leaves
+     *  of _tree out of date. */
+    private void allocateTree() {
+        int n = _pos.length, leaves = 1;
+        while (leaves < n - 2) {
+            leaves <<= 1;
+        }
+        _tree = new int[2 * leaves][];
+        for (int k = 1; k < 2 * leaves; k++) {
+            _tree[k] = new int[_size];
+        }
+        for (int j = n - 2; j < leaves; j++) {
+            for (int x = 0; x < _size; x++) {
+                _tree[leaves + j][x] = x;
+            }
+        }
+        _leafDirty = new boolean[n - 2];
+        _dirty = new int[n - 2];
+        for (int j = 0; j < n - 2; j++) {
+            _leafDirty[j] = true;
+            _dirty[j] = j;
+        }
+        _dirtyCount = n - 2;
+        _inverse = new int[_size];
+        _folded = new int[2 * _size];
+    }
+
+    /** Set leaf J of _tree to the permutation of rotor J + 1 in its
+     *  current position. */
+    private void composeLeaf(int j) {
+        int size = _size, offset = _offset[j + 1];
+        int[] rotor = _spec.forward(j + 1),
+            leaf = _tree[(_tree.length >> 1) + j];
+        for (int x = 0; x < size; x++) {
+            int change = rotor[x + offset] - offset;
+            leaf[x] = change >= size ? change - size : change;
+        }
+    }
+
+    /** Set interior node N of _tree to the composition of its children:
+     *  first the right child (the rotors further right), then the left. */
+    private void compose(int n) {
+        int[] node = _tree[n], left = _tree[2 * n], right = _tree[2 * n + 1];
+        for (int x = 0; x < _size; x++) {
+            node[x] = left[right[x]];
+        }
+    }
+
+    /** Advance the rotors as for one keypress.  The rightmost rotor always
+     *  advances, and a rotor that is engaged (at a notch, with a rotating
+     *  left neighbor) advances together with that neighbor.  All notch
+     *  tests see the positions from before the keypress.  Usually no
+     *  rotor is engaged, and this is one comparison and one step; else
+     *  the rotors that move are collected from the _engaged bit set
+     *  before any of them is stepped. */
+    private void advanceRotors() {
+        int last = _pos.length - 1;
+        if (_engagedCount == 0) {
+            step(last);
+            return;
+        }
+        int n = 0;
+        for (int w = 0; w < _engaged.length; w++) {
+            for (long bits = _engaged[w]; bits != 0; bits &= bits - 1) {
+                int i = (w << LOG_WORD_SIZE) + Long.numberOfTrailingZeros(bits);
+                if (n == 0 || _movers[n - 1] != i - 1) {
+                    _movers[n++] = i - 1;
+                }
+                _movers[n++] = i;
+            }
+        }
+        if (_movers[n - 1] != last) {
+            _movers[n++] = last;
+        }
+        for (int k = 0; k < n; k++) {
+            step(_movers[k]);
+        }
+    }
+
+    /** Advance rotor I by one position, if it rotates. */
+    private void step(int i) {
+        if (_spec.rotates(i)) {
+            int posn = _pos[i] + 1;
+            move(i, posn == _size ? 0 : posn);
+        }
+    }
+
+    /** Put rotor I at position POSN, in the range 0..size-1, keeping its
+     *  conversion offset and engagement up to date. */
+    private void move(int i, int posn) {
+        boolean was = _spec.engages(i, _pos[i]), is = _spec.engages(i, posn);
+        _pos[i] = posn;
+        if (i < _pos.length - 1) {
+            _foldStale = true;
+            if (i > 0 && _leafDirty != null && !_leafDirty[i - 1]) {
+                _leafDirty[i - 1] = true;
+                _dirty[_dirtyCount++] = i - 1;
+            }
+        }
+        int offset = posn - _ring[i];
+        _offset[i] = offset < 0 ? offset + _size : offset;
+        if (was != is) {
+            _engaged[i >> LOG_WORD_SIZE] ^= 1L << i;
+            _engagedCount += is ? 1 : -1;
+        }
+    }
+
+    /** Base 2 logarithm of the number of bits in a long. */
+    private static final int LOG_WORD_SIZE = 6;
+
+    /** My specification. */
+    private final MachineSpec _spec;
+
+    /** The alphabet of _spec. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The forward and backward tables of the rightmost rotor (see
+     *  MachineSpec._forward). */
+    private final int[] _fastForward, _fastBackward;
+
+    /** Position of each rotor. */
+    private final int[] _pos;
+
+    /** Ring setting of each rotor. */
+    private final int[] _ring;
+
+    /** Position minus ring setting of each rotor, modulo _size. */
+    private final int[] _offset;
+
+    /** Bit set of the rotors I that engage their left neighbors in
+     *  their current positions. */
+    private final long[] _engaged;
+
+    /** Number of bits set in _engaged. */
+    private int _engagedCount;
+
+    /** Scratch list of the rotors that move on a keypress. */
+    private final int[] _movers;
+
+    /** The plugboard permutation and its inverse, the latter repeated
+     *  twice.  These are replaced, never modified, so copies share
+     *  them. */
+    private int[] _plugForward, _plugBackward;
+
+    /** The folded path through all rotors but the rightmost (see fold),
+     *  repeated twice so that it accepts indices up to 2*_size-1. */
+    private int[] _folded;
+
+    /** True iff _folded must be recomputed before it is next used. */
+    private boolean _foldStale;
+
+    /** A segment tree over rotors 1 to numRotors()-2 in their current
+     *  positions, stored as a heap: node 1 is the root, node N has
+     *  children 2N and 2N+1, and leaf J, node _tree.length/2 + J, is
+     *  the permutation of rotor J + 1 (or the identity, past the last
+     *  such rotor).  Each interior node is the composition of the
+     *  leaves under it, rightmost rotor first.  Null until first
+     *  needed. */
+    private int[][] _tree;
+
+    /** _leafDirty[J] is true iff leaf J of _tree is out of date. */
+    private boolean[] _leafDirty;
+
+    /** The first _dirtyCount elements are the out-of-date leaves. */
+    private int[] _dirty;
+
+    /** Number of out-of-date leaves of _tree. */
+    private int _dirtyCount;
+
+    /** Scratch array for the inverse of the root of _tree. */
+    private int[] _inverse;
+}
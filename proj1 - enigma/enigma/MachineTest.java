@@ -0,0 +1,411 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.util.ArrayList;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Machine class.
+ *  @author Jenny Miao
+ */
+public class MachineTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(5);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testConvertString() {
+        Machine machine = navalMachine();
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testConvertWithPlugboard() {
+        Machine machine = navalMachine();
+        machine.setPlugboard(new Permutation("(HQ) (EX) (IP) (TR) (BY)",
+                                             UPPER));
+        String cipher = machine.convert("FROMHISSHOULDERHIAWATHA");
+        assertEquals("QVPQSOKOILPUBKJZPISFXDW", cipher);
+    }
+
+    @Test
+    public void testConvertCharArray() {
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        char[] src = ("xx" + msg).toCharArray();
+        char[] dest = new char[msg.length() + 1];
+        Machine machine = navalMachine();
+        machine.convert(src, 2, 10, dest, 1);
+        machine.convert(src, 12, msg.length() - 10, dest, 11);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     new String(dest, 1, msg.length()));
+        assertEquals(navalMachine().convert(msg + "ABC").substring(23),
+                     machine.convert("ABC"));
+    }
+
+    @Test
+    public void testConvertCharBuffer() {
+        CharBuffer src = CharBuffer.wrap("FROMHISSHOULDERHIAWATHA");
+        CharBuffer dest = CharBuffer.allocate(30);
+        Machine machine = navalMachine();
+        machine.convert(src, dest);
+        assertEquals(0, src.remaining());
+        dest.flip();
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", dest.toString());
+        CharBuffer direct =
+            ByteBuffer.allocateDirect(8).asCharBuffer();
+        machine = navalMachine();
+        machine.convert(CharBuffer.wrap("FROM"), direct);
+        direct.flip();
+        assertEquals("HYIH", direct.toString());
+    }
+
+    @Test
+    public void testConvertBytes() {
+        byte[] src = "FROMHISSHOULDERHIAWATHA".getBytes();
+        Machine machine = navalMachine();
+        machine.convert(src, 0, src.length, src, 0);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", new String(src));
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testConvertBadRegion() {
+        navalMachine().convert(new char[4], 2, 3, new char[8], 0);
+    }
+
+    @Test
+    public void testConvertCharsNeedsBmp() {
+        Alphabet alpha = new Alphabet("AB\ud83d\ude00C");
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("R",
+                                 new Permutation("(A\ud83d\ude00) (BC)",
+                                                 alpha)));
+        rotors.add(new MovingRotor("M", new Permutation("(ABC)", alpha),
+                                   "A"));
+        Machine machine = new Machine(alpha, 2, 1, rotors);
+        machine.insertRotors(new String[] {"R", "M"});
+        machine.setRotors("A");
+        char[] buf = "AAAA".toCharArray();
+        try {
+            machine.convert(buf, 0, 4, buf, 0);
+            fail("char[] conversion accepted a supplementary alphabet");
+        } catch (EnigmaException excp) {
+            assertEquals("AAAA", new String(buf));
+        }
+        try {
+            machine.convert(CharBuffer.wrap("AAAA"), CharBuffer.allocate(4));
+            fail("CharBuffer conversion accepted a supplementary alphabet");
+        } catch (EnigmaException excp) {
+            /* Expected. */
+        }
+        String converted = machine.convert("AAAA");
+        assertEquals(4, converted.codePointCount(0, converted.length()));
+    }
+
+    /** Assert that the active rotors of machines EXPECTED and ACTUAL are
+     *  in the same positions, using MSG in error messages. */
+    private static void assertSameSettings(String msg, Machine expected,
+                                           Machine actual) {
+        for (int i = 0; i < expected.numRotors(); i += 1) {
+            Rotor r0 = expected.getActiveRotors().get(i),
+                r1 = actual.getActiveRotors().get(i);
+            assertEquals(msg + " rotor " + i,
+                         r0.permutation().wrap(r0.setting()),
+                         r1.permutation().wrap(r1.setting()));
+        }
+    }
+
+    @Test
+    public void testAdvance() {
+        for (String setting : new String[] {"AXLE", "AAUP", "AAIQ", "ZZVQ"}) {
+            for (int ticks = 0; ticks < 1500; ticks += 37) {
+                Machine stepped = navalMachine(), jumped = navalMachine();
+                stepped.setRotors(setting);
+                jumped.setRotors(setting);
+                for (int k = 0; k < ticks; k += 1) {
+                    stepped.convert(0);
+                }
+                jumped.advance(ticks);
+                assertSameSettings(setting + " after " + ticks, stepped,
+                                   jumped);
+            }
+        }
+    }
+
+    /** Return a six-slot machine of reflector B and the naval rotors I
+     *  to V, with the notches NOTCHES[0] to NOTCHES[4], set to SETTING. */
+    private static Machine notchedMachine(String[] notches, String setting) {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"), UPPER)));
+        String[] names = {"B", "I", "II", "III", "IV", "V"};
+        for (int i = 1; i < names.length; i += 1) {
+            rotors.add(new MovingRotor(names[i],
+                                       new Permutation(NAVALA.get(names[i]),
+                                                       UPPER),
+                                       notches[i - 1]));
+        }
+        Machine machine = new Machine(UPPER, 6, 5, rotors);
+        machine.insertRotors(names);
+        machine.setRotors(setting);
+        return machine;
+    }
+
+    @Test
+    public void testAdvanceManyNotches() {
+        String[][] notchSets = {
+            {"AN", "EQZ", "V", "JX", "CMU"},
+            {"", "MZ", "Q", "ABK", "E"},
+        };
+        for (String[] notches : notchSets) {
+            for (String setting : new String[] {"AAAAA", "NQVJU", "ZZYXM"}) {
+                Machine stepped = notchedMachine(notches, setting);
+                for (int ticks = 0; ticks < 30000; ticks += 1) {
+                    if (ticks % 997 == 0) {
+                        Machine jumped = notchedMachine(notches, setting);
+                        jumped.advance(ticks);
+                        assertSameSettings(setting + " after " + ticks,
+                                           stepped, jumped);
+                    }
+                    stepped.convert(0);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testAdvanceByPeriods() {
+        long period = 26 * 25 * 26;
+        Machine near = navalMachine(), far = navalMachine();
+        near.advance(1000000);
+        far.advance(1000000 + period * 59000000000L);
+        assertSameSettings("after 10^15 ticks", near, far);
+    }
+
+    @Test
+    public void testSeek() {
+        StringBuilder msg = new StringBuilder();
+        for (int i = 0; i < 3000; i += 1) {
+            msg.append((char) ('A' + (i * 11 + i / 7) % 26));
+        }
+        Machine full = navalMachine();
+        full.setRotors("ZDVP");
+        String expected = full.convert(msg.toString());
+        for (int offset = 0; offset < 2950; offset += 101) {
+            Machine machine = navalMachine();
+            machine.seek("ZDVP", offset);
+            assertEquals("at offset " + offset,
+                         expected.substring(offset, offset + 50),
+                         machine.convert(msg.substring(offset, offset + 50)));
+        }
+    }
+
+    @Test
+    public void testSnapshotsShareSpec() {
+        Machine machine = navalMachine();
+        MachineState s0 = machine.snapshot(), s1 = machine.snapshot();
+        assertSame(machine.spec(), s0.spec());
+        assertSame(s0.spec(), s1.spec());
+        String msg = "FROMHISSHOULDERHIAWATHA";
+        char[] out0 = msg.toCharArray(), out1 = msg.toCharArray();
+        s0.convert(out0, 0, out0.length, out0, 0);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", new String(out0));
+        s1.convert(out1, 0, 5, out1, 0);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", machine.convert(msg));
+        s1.convert(out1, 5, out1.length - 5, out1, 5);
+        assertArrayEquals(out0, out1);
+    }
+
+    @Test
+    public void testSpecKeptForSameRotors() {
+        Machine machine = navalMachine();
+        MachineSpec spec = machine.spec();
+        assertSame(spec, machine.copy().spec());
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        assertSame(spec, machine.spec());
+        machine.insertRotors(new String[] {"B", "Beta", "IV", "III", "I"});
+        assertTrue(spec != machine.spec());
+        assertEquals("IV", machine.spec().name(2));
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW",
+                     machine.convert("FROMHISSHOULDERHIAWATHA"));
+    }
+
+    @Test
+    public void testConcurrentStates() throws InterruptedException {
+        Machine machine = Benchmarks.stackedMachine(12);
+        MachineSpec spec = machine.spec();
+        char[] msg = new char[20000];
+        for (int i = 0; i < msg.length; i += 1) {
+            msg[i] = UPPER_STRING.charAt((i * 11) % 26);
+        }
+        char[] expected = new char[msg.length];
+        machine.snapshot().convert(msg, 0, msg.length, expected, 0);
+        char[][] results = new char[8][msg.length];
+        Thread[] threads = new Thread[results.length];
+        for (int t = 0; t < threads.length; t += 1) {
+            MachineState state = machine.snapshot();
+            char[] result = results[t];
+            threads[t] = new Thread(() ->
+                state.convert(msg, 0, msg.length, result, 0));
+            threads[t].start();
+        }
+        for (int t = 0; t < threads.length; t += 1) {
+            threads[t].join();
+            assertArrayEquals(expected, results[t]);
+        }
+        assertSame(spec, machine.spec());
+    }
+
+    @Test
+    public void testStateSettings() {
+        Machine machine = navalMachine();
+        MachineState state = new MachineState(machine.spec());
+        String setting = "AXLE";
+        for (int i = 1; i < 5; i += 1) {
+            state.setPosition(i, UPPER.toInt(setting.charAt(i - 1)));
+        }
+        assertEquals(UPPER.toInt('X'), state.position(2));
+        assertEquals(0, state.ring(3));
+        char[] out = "FROMHISSHOULDERHIAWATHA".toCharArray();
+        state.convert(out, 0, out.length, out, 0);
+        assertEquals("HYIHLBKOMLIUYDCMPPSFSZW", new String(out));
+    }
+
+    @Test
+    public void testConvertParallel() {
+        int len = 5 * Machine.MIN_SEGMENT + 123;
+        char[] msg = new char[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = (char) ('A' + (i * 7 + i / 11) % 26);
+        }
+        Machine sequential = navalMachine(), parallel = navalMachine();
+        sequential.setRotors("AAUP");
+        parallel.setRotors("AAUP");
+        char[] expected = new char[len], actual = new char[len];
+        sequential.convert(msg, 0, len, expected, 0);
+        parallel.convertParallel(msg, 0, len, actual, 0);
+        assertArrayEquals(expected, actual);
+        assertSameSettings("after parallel conversion", sequential,
+                           parallel);
+    }
+
+    @Test
+    public void testConvertParallelBytes() {
+        int len = 5 * Machine.MIN_SEGMENT + 45;
+        byte[] msg = new byte[len];
+        for (int i = 0; i < len; i += 1) {
+            msg[i] = (byte) ('A' + (i * 5 + i / 13) % 26);
+        }
+        Machine sequential = navalMachine(), parallel = navalMachine();
+        byte[] expected = new byte[len], actual = msg.clone();
+        sequential.convert(msg, 0, len, expected, 0);
+        parallel.convertParallel(actual, 0, len, actual, 0);
+        assertArrayEquals(expected, actual);
+        assertSameSettings("after parallel conversion", sequential,
+                           parallel);
+    }
+
+    /** Advance ROTORS as for one keypress, by the original rules: a rotor
+     *  at a notch whose left neighbor rotates advances together with that
+     *  neighbor, and the rightmost rotor always advances. */
+    private static void referenceStep(ArrayList<Rotor> rotors) {
+        boolean[] advances = new boolean[rotors.size()];
+        for (int i = 0; i < rotors.size(); i += 1) {
+            if (i > 0 && rotors.get(i).atNotch()
+                && rotors.get(i - 1).rotates()) {
+                advances[i] = advances[i - 1] = true;
+            } else if (i == rotors.size() - 1) {
+                advances[i] = true;
+            }
+        }
+        for (int i = 0; i < rotors.size(); i += 1) {
+            if (advances[i]) {
+                rotors.get(i).advance();
+            }
+        }
+    }
+
+    @Test
+    public void testSteppingManyRotors() {
+        Machine machine = Benchmarks.stackedMachine(ROTORS);
+        ArrayList<Rotor> reference = new ArrayList<>();
+        for (Rotor rotor : machine.getActiveRotors()) {
+            reference.add(rotor.copy());
+        }
+        for (int k = 1; k <= 3000; k += 1) {
+            machine.convert(k % 26);
+            referenceStep(reference);
+            if (k % 97 == 0) {
+                for (int i = 0; i < ROTORS; i += 1) {
+                    Rotor r0 = reference.get(i),
+                        r1 = machine.getActiveRotors().get(i);
+                    assertEquals("rotor " + i + " after " + k,
+                                 r0.permutation().wrap(r0.setting()),
+                                 r1.permutation().wrap(r1.setting()));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConvertManyRotors() {
+        for (int rotors : new int[] {3, 4, 9, ROTORS, 5 * ROTORS}) {
+            Machine machine = Benchmarks.stackedMachine(rotors);
+            ArrayList<Rotor> reference = new ArrayList<>();
+            for (Rotor rotor : machine.getActiveRotors()) {
+                reference.add(rotor.copy());
+            }
+            for (int k = 1; k <= 2000; k += 1) {
+                int c = (k * 11) % 26;
+                referenceStep(reference);
+                int expected = c;
+                for (int i = rotors - 1; i >= 0; i -= 1) {
+                    expected = reference.get(i).convertForward(expected);
+                }
+                for (int i = 1; i < rotors; i += 1) {
+                    expected = reference.get(i).convertBackward(expected);
+                }
+                assertEquals(rotors + " rotors, character " + k,
+                             expected, machine.convert(c));
+            }
+        }
+    }
+
+    @Test
+    public void testConvertAllocatesNothing() {
+        com.sun.management.ThreadMXBean bean =
+            (com.sun.management.ThreadMXBean)
+            ManagementFactory.getThreadMXBean();
+        Machine machine = navalMachine();
+        machine.setPlugboard(new Permutation("(AQ) (EP)", UPPER));
+        int c = 0;
+        for (int i = 0; i < N; i += 1) {
+            c = machine.convert((c + i) % 26);
+        }
+        long before = bean.getCurrentThreadAllocatedBytes();
+        for (int i = 0; i < N; i += 1) {
+            c = machine.convert((c + i) % 26);
+        }
+        long allocated = bean.getCurrentThreadAllocatedBytes() - before;
+        assertEquals("bytes allocated per character", 0, allocated / N);
+    }
+
+    /** Number of rotors used by the stepping test. */
+    private static final int ROTORS = 70;
+
+    /** Number of characters converted by the allocation test. */
+    private static final int N = 100000;
+}
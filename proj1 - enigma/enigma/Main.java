@@ -1,13 +1,29 @@
 package enigma;
 
-import java.io.File;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.PrintStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
 
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.NoSuchElementException;
-import java.util.Scanner;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.function.IntConsumer;
 
 import static enigma.EnigmaException.*;
 
@@ -17,14 +33,50 @@ import static enigma.EnigmaException.*;
 public final class Main {
 
     /** Process a sequence of encryptions and decryptions, as
-     *  specified by ARGS, where 1 <= ARGS.length <= 3.
+     *  specified by ARGS, which consist of options followed by 1 to 3
+     *  file names.  The options are
+     *      --mmap  Memory-map the input and output files, which must both
+     *              be given, and process bytes directly.  Requires an
+     *              alphabet of single-byte (ISO-8859-1) characters.
+     *      --raw   Print each converted message line without dividing it
+     *              into groups of five.
+     *      --parallel  Convert long messages on all processors at once,
+     *              reading the input in larger chunks (see
+     *              Machine.convertParallel).
+     *      --range=N,M  In each message section, print only the
+     *              converted characters numbered N to N+M-1 (counting
+     *              the letters of the section from 0).  The machine is
+     *              moved to character N by counting revolutions of its
+     *              rotors rather than stepping (see
+     *              MachineState.advance): the characters before it are
+     *              counted but not converted or checked.  Only message
+     *              lines holding some of the selected characters produce
+     *              output.  The input is still read in full, since
+     *              whitespace is not counted (so characters cannot be
+     *              skipped by their position in the file) and each
+     *              section's setting line must be found, but the rest of
+     *              a section after its range is only scanned for line
+     *              ends.
+     *      --sections  Convert the sections of the input (each a setting
+     *              line and the message lines after it) concurrently
+     *              (see processSections).
+     *      --compiled=FILE  Load the configuration from FILE, a compiled
+     *              configuration (see ConfigFile), if it was compiled
+     *              from the current configuration file; otherwise read
+     *              the configuration file and compile it into FILE.
+     *      --cache=N  Keep at most about N megabytes (default
+     *              CACHE_MEGABYTES; 0 for none) of keystreams for
+     *              setting lines that recur, so that messages sent at
+     *              such a setting begin by table lookup alone (see
+     *              KeystreamCache).
      *  ARGS[0] is the name of a configuration file.
      *  ARGS[1] is optional; when present, it names an input file
      *  containing messages.  Otherwise, input comes from the standard
      *  input.  ARGS[2] is optional; when present, it names an output
      *  file for processed messages.  Otherwise, output goes to the
      *  standard output. Exits normally if there are no errors in the input;
-     *  otherwise with code 1. */
+     *  otherwise with code 1, once the output of the input before the
+     *  error has been written. */
     public static void main(String... args) {
         try {
             new Main(args).process();
@@ -37,16 +89,33 @@ public final class Main {
 
     /** Check ARGS and open the necessary files (see comment on main). */
     Main(String[] args) {
+        int first = parseOptions(args);
+        args = Arrays.copyOfRange(args, first, args.length);
         if (args.length < 1 || args.length > 3) {
             throw error("Only 1, 2, or 3 command-line arguments allowed");
         }
 
-        _config = getInput(args[0]);
+        _configName = args[0];
+        if (_compiledName == null) {
+            _config = getInput(args[0]);
+        }
+
+        if (_mapped && _sections) {
+            throw error("--sections cannot be combined with --mmap");
+        }
+        if (_mapped) {
+            if (args.length != 3) {
+                throw error("--mmap requires input and output files");
+            }
+            _inputName = args[1];
+            _outputName = args[2];
+            return;
+        }
 
         if (args.length > 1) {
-            _input = getInput(args[1]);
+            _input = getReader(args[1]);
         } else {
-            _input = new Scanner(System.in);
+            _input = new InputStreamReader(System.in);
         }
 
         if (args.length > 2) {
@@ -54,21 +123,121 @@ public final class Main {
         } else {
             _output = System.out;
         }
+        _writer = new GroupedWriter(_output, Charset.defaultCharset(),
+                                    OUTPUT_BUFFER_SIZE, _raw);
+    }
+
+    /** A worker that converts sections of the input for processSections
+     *  on one thread, with the options of PARENT, collecting the output
+     *  of each in _sectionOutput. */
+    private Main(Main parent) {
+        _alphabet = parent._alphabet;
+        _raw = parent._raw;
+        _ranged = parent._ranged;
+        _rangeStart = parent._rangeStart;
+        _rangeCount = parent._rangeCount;
+        _configured = true;
+        _sectionOutput = new ByteArrayOutputStream();
+        _writer = new GroupedWriter(_sectionOutput, Charset.defaultCharset(),
+                                    CHUNK_SIZE, _raw);
+    }
+
+    /** Return a machine configured from the configuration file named
+     *  CONFIGNAME, with all its rotors available and none inserted. */
+    static Machine readConfiguration(String configName) {
+        return new Main(new String[] {configName}).readConfig();
+    }
+
+    /** Record the options at the start of ARGS, returning the index of
+     *  the first argument that is not an option. */
+    private int parseOptions(String[] args) {
+        int k;
+        for (k = 0; k < args.length && args[k].startsWith("--"); k += 1) {
+            switch (args[k]) {
+            case "--mmap":
+                _mapped = true;
+                break;
+            case "--raw":
+                _raw = true;
+                break;
+            case "--parallel":
+                _parallel = true;
+                break;
+            case "--sections":
+                _sections = true;
+                break;
+            default:
+                if (args[k].startsWith("--range=")) {
+                    parseRange(args[k].substring("--range=".length()));
+                    break;
+                } else if (args[k].startsWith("--compiled=")) {
+                    _compiledName = args[k].substring("--compiled=".length());
+                    break;
+                } else if (args[k].startsWith("--cache=")) {
+                    parseCache(args[k].substring("--cache=".length()));
+                    break;
+                }
+                throw error("unknown option: %s", args[k]);
+            }
+        }
+        return k;
+    }
+
+    /** Record the character range given by RANGE, which has the form
+     *  "N,M", for the --range option. */
+    private void parseRange(String range) {
+        String[] bounds = range.split(",");
+        try {
+            if (bounds.length != 2) {
+                throw new NumberFormatException();
+            }
+            _rangeStart = Long.parseLong(bounds[0]);
+            _rangeCount = Long.parseLong(bounds[1]);
+        } catch (NumberFormatException excp) {
+            throw error("--range must have the form N,M");
+        }
+        if (_rangeStart < 0 || _rangeCount < 0) {
+            throw error("--range bounds must not be negative");
+        }
+        _ranged = true;
+    }
+
+    /** Record the keystream cache size given by MEGABYTES, a number of
+     *  megabytes, for the --cache option. */
+    private void parseCache(String megabytes) {
+        try {
+            _cacheBytes = Long.parseLong(megabytes) << 20;
+        } catch (NumberFormatException excp) {
+            throw error("--cache must give a number of megabytes");
+        }
+        if (_cacheBytes < 0) {
+            throw error("--cache size must not be negative");
+        }
+    }
+
+    /** Return a Tokenizer for the contents of the file named NAME. */
+    private Tokenizer getInput(String name) {
+        try {
+            return new Tokenizer(new String(Files.readAllBytes(Paths.get(name)),
+                                            Charset.defaultCharset()));
+        } catch (IOException excp) {
+            throw error("could not open %s", name);
+        }
     }
 
-    /** Return a Scanner reading from the file named NAME. */
-    private Scanner getInput(String name) {
+    /** Return a Reader reading from the file named NAME. */
+    private Reader getReader(String name) {
         try {
-            return new Scanner(new File(name));
+            return new InputStreamReader(new FileInputStream(name));
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
     }
 
-    /** Return a PrintStream writing to the file named NAME. */
-    private PrintStream getOutput(String name) {
+    /** Return an OutputStream writing to the file named NAME. */
+    private OutputStream getOutput(String name) {
         try {
-            return new PrintStream(new File(name));
+            return new FileOutputStream(name);
         } catch (IOException excp) {
             throw error("could not open %s", name);
         }
@@ -76,37 +245,703 @@ public final class Main {
 
     /** Configure an Enigma machine from the contents of configuration
      *  file _config and apply it to the messages in _input, sending the
-     *  results to _output. */
-    private void process() {
-        Machine m = readConfig();
-        if (!_input.hasNext("\\*")) {
+     *  results to _output.  The input is read in chunks of CHUNK_SIZE
+     *  chars and each message is converted and printed as it arrives, so
+     *  memory use does not depend on the length of the input lines.  On
+     *  an error, the output converted so far is written before the
+     *  error is reported. */
+    void process() {
+        Machine m = _compiledName == null ? readConfig() : loadConfig();
+        if (_cacheBytes > 0 && _alphabet.bmpOnly()) {
+            _cache = new KeystreamCache(_cacheBytes, KEYSTREAM_LENGTH);
+        }
+        if (_mapped) {
+            processMapped(m);
+            return;
+        }
+        try {
+            if (_sections) {
+                processSections(m);
+                return;
+            }
+            char[] buf = new char[chunkSize()];
+            readInput(buf, len -> processChunk(m, buf, 0, len));
+            endInput(m);
+        } catch (EnigmaException excp) {
+            _writer.flush();
+            throw excp;
+        }
+        _writer.flush();
+    }
+
+    /** Read all of _input into BUF, a chunk at a time, passing the number
+     *  of chars read each time to CHUNK, which handles that many chars at
+     *  the start of BUF.  A high surrogate that ends a read is held back
+     *  for the next chunk, so that no chunk ends inside a character. */
+    private void readInput(char[] buf, IntConsumer chunk) {
+        try {
+            int carry = 0;
+            while (true) {
+                int n = _input.read(buf, carry, buf.length - carry);
+                if (n < 0) {
+                    break;
+                }
+                int len = carry + n;
+                carry = 0;
+                if (Character.isHighSurrogate(buf[len - 1])) {
+                    len -= 1;
+                    carry = 1;
+                }
+                chunk.accept(len);
+                if (carry > 0) {
+                    buf[0] = buf[len];
+                }
+            }
+            if (carry > 0) {
+                chunk.accept(carry);
+            }
+        } catch (IOException excp) {
+            throw error("could not read input: %s", excp.getMessage());
+        }
+    }
+
+    /** Apply machine M to the messages in the file named _inputName,
+     *  writing the results to the file named _outputName, as for
+     *  process().  Both files are memory-mapped in windows of at most
+     *  WINDOW_SIZE bytes, so there is no limit on their size, and bytes
+     *  are taken to be ISO-8859-1 characters, which are parsed and
+     *  converted as bytes (see processBytes and MappedOutput).  The
+     *  output file is cut to the bytes written even if there is an
+     *  error, since its windows are mapped (and so the file extended) a
+     *  whole WINDOW_SIZE at a time; the output converted before the
+     *  error is written first. */
+    private void processMapped(Machine m) {
+        if (!_alphabet.singleByte()) {
+            throw error("--mmap requires a single-byte alphabet");
+        }
+        try (FileChannel in = FileChannel.open(Paths.get(_inputName),
+                                               StandardOpenOption.READ);
+             FileChannel out =
+                 FileChannel.open(Paths.get(_outputName),
+                                  StandardOpenOption.READ,
+                                  StandardOpenOption.WRITE,
+                                  StandardOpenOption.CREATE,
+                                  StandardOpenOption.TRUNCATE_EXISTING)) {
+            _mappedOutput = out;
+            _writer = new GroupedWriter(new MappedOutput(),
+                                        StandardCharsets.ISO_8859_1,
+                                        OUTPUT_BUFFER_SIZE, _raw);
+            byte[] buf = new byte[chunkSize()];
+            try {
+                long size = in.size();
+                for (long pos = 0; pos < size; pos += WINDOW_SIZE) {
+                    MappedByteBuffer window =
+                        in.map(FileChannel.MapMode.READ_ONLY, pos,
+                               Math.min(WINDOW_SIZE, size - pos));
+                    while (window.hasRemaining()) {
+                        int len = Math.min(buf.length, window.remaining());
+                        window.get(buf, 0, len);
+                        processBytes(m, buf, len);
+                    }
+                }
+                endInput(m);
+                _writer.flush();
+            } catch (EnigmaException excp) {
+                _writer.flush();
+                throw excp;
+            } finally {
+                _outWindow = null;
+                out.truncate(_mappedPosition);
+            }
+        } catch (IOException excp) {
+            throw error("I/O error on %s or %s: %s", _inputName, _outputName,
+                        excp.getMessage());
+        }
+    }
+
+    /** Apply machine M to the messages in _input, writing the results to
+     *  _output, as for process(), but converting each section of the
+     *  input (a setting line and the message lines after it) as a
+     *  separate task on the common ForkJoinPool.  The input is read a
+     *  chunk at a time and cut into sections as it arrives (see
+     *  Sections), so only the sections being converted are held in
+     *  memory.  Their setting lines are applied to M in order, since ring
+     *  settings carry over to later sections that do not give them, and
+     *  each section's messages are converted by a copy of M in the
+     *  resulting state.  Each thread of the pool converts its sections
+     *  with one worker (see convertSection), whose output buffers are
+     *  reused from section to section.  The sections' outputs are written
+     *  in their original order, with at most SECTIONS_PER_THREAD per
+     *  thread of the pool waiting to be written at once.  On an error,
+     *  the output of all preceding sections is written first. */
+    private void processSections(Machine m) {
+        Sections sections = new Sections(m);
+        char[] buf = new char[CHUNK_SIZE];
+        readInput(buf, len -> sections.add(buf, len));
+        sections.finish();
+    }
+
+    /** The input of processSections, cut into sections as it is read.
+     *  The message lines of each section are collected in an array of at
+     *  most SECTION_LIMIT chars and converted as a task once the section
+     *  ends.  Lines before the first setting line, and any section too
+     *  long for one array, are instead processed as they arrive on the
+     *  reading thread, as process() would, once all the sections before
+     *  them have been written. */
+    private class Sections {
+
+        /** Sections to be set up by machine M. */
+        Sections(Machine m) {
+            _machine = m;
+            _inline = m;
+            _window = SECTIONS_PER_THREAD
+                * ForkJoinPool.commonPool().getParallelism();
+        }
+
+        /** Take the LEN chars at the start of BUF, which continue the
+         *  input read so far. */
+        void add(char[] buf, int len) {
+            int i = 0;
+            while (i < len) {
+                if (_lineStart && buf[i] == '*') {
+                    endSection();
+                    _inSetting = true;
+                }
+                int end = i;
+                while (end < len && buf[end] != '\n') {
+                    end += 1;
+                }
+                int next = Math.min(end + 1, len);
+                if (_inSetting) {
+                    _setting.append(buf, i, end - i);
+                    if (end < len) {
+                        beginSection();
+                    }
+                } else if (_inline != null) {
+                    processChunk(_inline, buf, i, next);
+                } else {
+                    append(buf, i, next);
+                }
+                _lineStart = end < len;
+                i = next;
+            }
+        }
+
+        /** Finish the input, converting and writing all that remains. */
+        void finish() {
+            if (_inSetting) {
+                beginSection();
+            }
+            if (_inline == _machine && !_started) {
+                endInput(_machine);
+            } else {
+                endSection();
+            }
+            while (!_pending.isEmpty()) {
+                writeNext();
+            }
+            _writer.flush();
+        }
+
+        /** Set up _machine by the setting line in _setting, and begin
+         *  collecting the message lines of its section. */
+        private void beginSection() {
+            try {
+                setUp(_machine, _setting.toString());
+            } catch (EnigmaException excp) {
+                while (!_pending.isEmpty()) {
+                    writeNext();
+                }
+                _writer.flush();
+                throw excp;
+            }
+            _setting.setLength(0);
+            _line += 1;
+            _section = _machine.copy();
+            _inSetting = false;
+            _started = true;
+        }
+
+        /** Finish the current section: write what has been processed
+         *  inline, or start converting the collected message lines. */
+        private void endSection() {
+            if (_inline != null) {
+                if (_state == LineState.MESSAGE) {
+                    endMessageLine();
+                }
+                if (!_configured) {
+                    endPendingBlanks();
+                }
+                _writer.flush();
+                _pendingBlanks = 0;
+                _inline = null;
+            } else if (_section != null) {
+                for (int k = 0; k < _length; k += 1) {
+                    if (_text[k] == '\n') {
+                        _line += 1;
+                    }
+                }
+                Machine section = _section;
+                char[] text = _text;
+                int len = _length;
+                _pending.add(ForkJoinTask.adapt(() ->
+                    _workers.get().convertSection(section, text, len))
+                             .fork());
+                _pendingText.add(text);
+                _text = _free.isEmpty() ? new char[CHUNK_SIZE] : _free.pop();
+                _length = 0;
+                while (_pending.size() > _window) {
+                    writeNext();
+                }
+            }
+            _section = null;
+        }
+
+        /** Add chars START to END - 1 of BUF to the message lines of the
+         *  current section.  If they do not fit in SECTION_LIMIT chars,
+         *  all sections before it are written, and the section is
+         *  processed inline from here on. */
+        private void append(char[] buf, int start, int end) {
+            int len = end - start;
+            if (_length + len > SECTION_LIMIT) {
+                while (!_pending.isEmpty()) {
+                    writeNext();
+                }
+                startSection();
+                _inline = _section;
+                processChunk(_inline, _text, 0, _length);
+                processChunk(_inline, buf, start, end);
+                _length = 0;
+                return;
+            }
+            if (_length + len > _text.length) {
+                _text = Arrays.copyOf(_text, Math.min(SECTION_LIMIT,
+                                                      2 * (_length + len)));
+            }
+            System.arraycopy(buf, start, _text, _length, len);
+            _length += len;
+        }
+
+        /** Wait for the oldest section being converted, and write its
+         *  output. */
+        private void writeNext() {
+            byte[] output = _pending.peek().join();
+            _pending.remove();
+            _free.push(_pendingText.remove());
+            writeSection(output);
+        }
+
+        /** The machine set up by each setting line in turn. */
+        private final Machine _machine;
+
+        /** Greatest number of sections waiting to be written. */
+        private final int _window;
+
+        /** The machine converting lines as they arrive, or null if they
+         *  are being collected. */
+        private Machine _inline;
+
+        /** A copy of _machine set up for the current section, or null if
+         *  there is none. */
+        private Machine _section;
+
+        /** True iff a setting line is being read. */
+        private boolean _inSetting;
+
+        /** True iff the next char read starts a line. */
+        private boolean _lineStart = true;
+
+        /** True once a setting line has been read. */
+        private boolean _started;
+
+        /** The message lines of the current section. */
+        private char[] _text = new char[CHUNK_SIZE];
+
+        /** Number of chars in _text. */
+        private int _length;
+
+        /** The conversions of the sections waiting to be written, in
+         *  order. */
+        private final ArrayDeque<ForkJoinTask<byte[]>> _pending =
+            new ArrayDeque<>();
+
+        /** The message lines of the sections in _pending. */
+        private final ArrayDeque<char[]> _pendingText = new ArrayDeque<>();
+
+        /** Arrays for message lines, free for reuse. */
+        private final ArrayDeque<char[]> _free = new ArrayDeque<>();
+
+        /** The worker of each thread of the pool. */
+        private final ThreadLocal<Main> _workers =
+            ThreadLocal.withInitial(() -> new Main(Main.this));
+    }
+
+    /** Write OUTPUT, the encoded output of a section, to _output. */
+    private void writeSection(byte[] output) {
+        try {
+            _output.write(output);
+        } catch (IOException excp) {
+            throw error("could not write output: %s", excp.getMessage());
+        }
+    }
+
+    /** Convert the LEN chars at the start of INPUT, the message lines
+     *  of a section, with machine M, returning their encoded output.  This
+     *  is a worker (see processSections), which converts each of the
+     *  sections given to its thread in turn. */
+    private byte[] convertSection(Machine m, char[] input, int len) {
+        _sectionOutput.reset();
+        startSection();
+        try {
+            processChunk(m, input, 0, len);
+            if (_state == LineState.MESSAGE) {
+                endMessageLine();
+            }
+            _writer.flush();
+        } catch (EnigmaException excp) {
+            _writer = new GroupedWriter(_sectionOutput,
+                                        Charset.defaultCharset(),
+                                        CHUNK_SIZE, _raw);
+            throw excp;
+        }
+        return _sectionOutput.toByteArray();
+    }
+
+    /** States of the line-by-line input parser. */
+    private enum LineState {
+        /** At the start of a line. */
+        START,
+        /** Inside a setting line, which is being collected in _setting. */
+        SETTING,
+        /** Inside a message line, which is converted as it is read. */
+        MESSAGE
+    }
+
+    /** Process chars START to LIMIT - 1 of BUF, which continue the input
+     *  read so far, using machine M.  A line whose first character is '*'
+     *  is a setting line; every other line is a message line, whose
+     *  whitespace is ignored.  Each message line produces one line of
+     *  output. */
+    private void processChunk(Machine m, char[] buf, int start, int limit) {
+        int i = start;
+        while (i < limit) {
+            switch (_state) {
+            case START:
+                i += startLine(buf[i]);
+                break;
+            case SETTING:
+                int end = i;
+                while (end < limit && buf[end] != '\n') {
+                    end += 1;
+                }
+                _setting.append(buf, i, end - i);
+                i = end;
+                if (end < limit) {
+                    endSettingLine(m);
+                    _line += 1;
+                    i += 1;
+                }
+                break;
+            case MESSAGE:
+                int first = i, letters = i;
+                if (rangeDone()) {
+                    while (i < limit && buf[i] != '\n') {
+                        i += 1;
+                    }
+                }
+                for (; i < limit && buf[i] != '\n'; i += 1) {
+                    if (!Tokenizer.isSpace(buf[i])) {
+                        buf[letters] = buf[i];
+                        letters += 1;
+                    }
+                }
+                if (letters > first) {
+                    convertLetters(m, buf, first, letters - first);
+                }
+                if (i < limit) {
+                    endMessageLine();
+                    _line += 1;
+                    i += 1;
+                }
+                break;
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /** Process the LEN bytes at the start of BUF, which continue the
+     *  memory-mapped input read so far, using machine M, as processChunk
+     *  does for chars.  Each byte is the ISO-8859-1 character with the
+     *  same code. */
+    private void processBytes(Machine m, byte[] buf, int len) {
+        int i = 0;
+        while (i < len) {
+            switch (_state) {
+            case START:
+                i += startLine(buf[i]);
+                break;
+            case SETTING:
+                int end = i;
+                for (; end < len && buf[end] != '\n'; end += 1) {
+                    _setting.append((char) (buf[end] & 0xff));
+                }
+                i = end;
+                if (end < len) {
+                    endSettingLine(m);
+                    _line += 1;
+                    i += 1;
+                }
+                break;
+            case MESSAGE:
+                int first = i, letters = i;
+                if (rangeDone()) {
+                    while (i < len && buf[i] != '\n') {
+                        i += 1;
+                    }
+                }
+                for (; i < len && buf[i] != '\n'; i += 1) {
+                    if (!Tokenizer.isSpace((char) buf[i])) {
+                        buf[letters] = buf[i];
+                        letters += 1;
+                    }
+                }
+                if (letters > first) {
+                    convertBytes(m, buf, first, letters - first);
+                }
+                if (i < len) {
+                    endMessageLine();
+                    _line += 1;
+                    i += 1;
+                }
+                break;
+            default:
+                throw new IllegalStateException();
+            }
+        }
+    }
+
+    /** Begin a line of input whose first character is CH: a setting line
+     *  if CH is '*', an empty message line if CH is a newline, and
+     *  otherwise a message line.  Return the number of characters
+     *  consumed: 1 for the newline of an empty line, and otherwise 0.
+     *  Empty lines before the first setting line are held back until it
+     *  begins, since input that has none is an error with no output. */
+    private int startLine(int ch) {
+        if (ch == '*') {
+            if (!_configured) {
+                endPendingBlanks();
+            }
+            _setting.setLength(0);
+            _pendingBlanks = 0;
+            _state = LineState.SETTING;
+        } else if (ch == '\n') {
+            if (!_configured && !_ranged) {
+                _pendingBlanks += 1;
+            } else if (!_ranged) {
+                _writer.endLine();
+            }
+            _line += 1;
+            return 1;
+        } else {
+            _state = LineState.MESSAGE;
+        }
+        return 0;
+    }
+
+    /** Return true iff only a range of each section is converted and
+     *  the range of the current section has been passed, so that the
+     *  rest of the section need not be looked at. */
+    private boolean rangeDone() {
+        return _ranged && _configured && _toSkip == 0 && _toTake == 0;
+    }
+
+    /** For --range, skip those of the next LEN letters of the current
+     *  section that come before the range, moving machine M past them
+     *  unless they are covered by _keystream, and return how many were
+     *  skipped. */
+    private int skipLetters(Machine m, int len) {
+        int skip = (int) Math.min(_toSkip, len);
+        if (_keystream == null) {
+            m.advance(skip);
+        }
+        _position += skip;
+        _toSkip -= skip;
+        return skip;
+    }
+
+    /** For --range, return how many of the LEN letters after those
+     *  skipped by skipLetters are in the range, counting them off. */
+    private int takeLetters(int len) {
+        int take = (int) Math.min(len, _toTake);
+        _toTake -= take;
+        return take;
+    }
+
+    /** Print the empty lines of the whitespace-only message lines that
+     *  preceded the current one (see endMessageLine). */
+    private void endPendingBlanks() {
+        for (; _pendingBlanks > 0; _pendingBlanks -= 1) {
+            _writer.endLine();
+        }
+    }
+
+    /** Convert the LEN non-whitespace bytes of BUF starting at START,
+     *  which are part of a message line, with machine M and print them,
+     *  as convertLetters does for chars. */
+    private void convertBytes(Machine m, byte[] buf, int start, int len) {
+        if (!_configured) {
             throw error("string configuration must start with *");
         }
-        while (_input.hasNextLine()) {
-            String line = _input.nextLine();
-            if (line.equals("")) {
-                _output.println();
+        if (_ranged) {
+            int skip = skipLetters(m, len);
+            start += skip;
+            len = takeLetters(len - skip);
+            if (len == 0) {
+                return;
             }
-            if (line.contains("*")) {
-                setUp(m, line);
-                String msg = new String("");
-                while (_input.hasNext("[^\\*]*")) {
-                    msg = _input.nextLine().replaceAll("\\s+", "");
-                    String convertedMsg = m.convert(msg);
-                    printMessageLine(convertedMsg);
+        }
+        endPendingBlanks();
+        int from = start, rest = len;
+        if (_keystream != null) {
+            int cached = (int) Math.max(0, Math.min(rest,
+                                        _keystream.length() - _position));
+            _keystream.convert((int) _position, buf, from, cached, buf, from);
+            _position += cached;
+            from += cached;
+            rest -= cached;
+            if (rest > 0) {
+                m.advance(_position);
+                _keystream = null;
+            }
+        }
+        if (_parallel) {
+            m.convertParallel(buf, from, rest, buf, from);
+        } else {
+            m.convert(buf, from, rest, buf, from);
+        }
+        _writer.letters(buf, start, len);
+    }
+
+    /** Convert the LEN non-whitespace chars of BUF starting at START, which
+     *  are part of a message line, with machine M and print them. */
+    private void convertLetters(Machine m, char[] buf, int start, int len) {
+        if (!_configured) {
+            throw error("string configuration must start with *");
+        }
+        if (_ranged) {
+            int skip = skipLetters(m, len);
+            start += skip;
+            len = takeLetters(len - skip);
+            if (len == 0) {
+                return;
+            }
+        }
+        endPendingBlanks();
+        if (_alphabet.bmpOnly()) {
+            int from = start, rest = len;
+            if (_keystream != null) {
+                int cached = (int) Math.max(0, Math.min(rest,
+                                            _keystream.length() - _position));
+                _keystream.convert((int) _position, buf, from, cached,
+                                   buf, from);
+                _position += cached;
+                from += cached;
+                rest -= cached;
+                if (rest > 0) {
+                    m.advance(_position);
+                    _keystream = null;
                 }
             }
+            if (_parallel) {
+                m.convertParallel(buf, from, rest, buf, from);
+            } else {
+                m.convert(buf, from, rest, buf, from);
+            }
+            for (int k = start; k < start + len; k += 1) {
+                _writer.letter(buf[k]);
+            }
+        } else {
+            String converted = m.convert(new String(buf, start, len));
+            for (int k = 0; k < converted.length(); k += 1) {
+                char ch = converted.charAt(k);
+                if (Character.isLowSurrogate(ch)) {
+                    _writer.write(ch);
+                } else {
+                    _writer.letter(ch);
+                }
+            }
+        }
+    }
+
+    /** Return the size of the chunks in which to read input. */
+    private int chunkSize() {
+        return _parallel ? PARALLEL_CHUNK_SIZE : CHUNK_SIZE;
+    }
+
+    /** Finish the setting line collected in _setting, setting up M
+     *  according to it.  If the keystream for M's new setting is cached,
+     *  the section's characters are converted from it, and M is left at
+     *  the start of the section until a message outruns the keystream;
+     *  otherwise the setting is offered to the cache. */
+    private void endSettingLine(Machine m) {
+        setUp(m, _setting.toString());
+        startSection();
+        if (_cache != null) {
+            String key = m.settingKey();
+            _keystream = _cache.get(key);
+            if (_keystream == null) {
+                _cache.offer(key, _alphabet, m);
+            }
+        }
+    }
+
+    /** Prepare to process the message lines of a section whose setting
+     *  line has been applied. */
+    private void startSection() {
+        _setting.setLength(0);
+        _keystream = null;
+        _position = 0;
+        _pendingBlanks = 0;
+        _toSkip = _rangeStart;
+        _toTake = _rangeCount;
+        _configured = true;
+        _state = LineState.START;
+    }
+
+    /** Finish the current message line.  A line holding only whitespace
+     *  prints an empty line only if another message line follows in the
+     *  same section, so its output is deferred until then. */
+    private void endMessageLine() {
+        if (_writer.lineLength() > 0) {
+            _writer.endLine();
+        } else if (_configured && !_ranged) {
+            _pendingBlanks += 1;
+        }
+        _state = LineState.START;
+    }
+
+    /** Finish processing at the end of the input, using machine M. */
+    private void endInput(Machine m) {
+        if (_state == LineState.SETTING) {
+            endSettingLine(m);
+        } else if (_state == LineState.MESSAGE) {
+            endMessageLine();
+        }
+        if (!_configured) {
+            throw error("string configuration must start with *");
         }
     }
 
     /** Return an Enigma machine configured from the contents of configuration
-     *  file _config. */
+     *  file _config.  Errors are reported with the line and column of the
+     *  token at fault. */
     private Machine readConfig() {
         try {
-            if (_config.hasNext("[^\\*\\(\\)]+")) {
+            if (_config.hasNext() && !hasParens(_config.peek())) {
                 _alphabet = new Alphabet(_config.next());
             } else {
-                throw error("invalid alphabet input");
+                throw _config.error("invalid alphabet input");
             }
 
             int numRotors = _config.nextInt();
@@ -117,72 +952,129 @@ public final class Main {
             }
             return new Machine(_alphabet, numRotors, numPawls, allRotors);
         } catch (NoSuchElementException excp) {
-            throw error("configuration file truncated");
+            throw _config.error("configuration file truncated");
+        }
+    }
+
+    /** Return true iff TOKEN contains any of the characters "*()". */
+    private static boolean hasParens(String token) {
+        return token.indexOf('*') >= 0 || token.indexOf('(') >= 0
+            || token.indexOf(')') >= 0;
+    }
+
+    /** Return true iff TOKEN is a parenthesized cycle: "(", at least one
+     *  character other than "*", and ")". */
+    private static boolean isCycle(String token) {
+        return token.length() > 2 && token.charAt(0) == '('
+            && token.charAt(token.length() - 1) == ')'
+            && token.indexOf('*') < 0;
+    }
+
+    /** Return an Enigma machine configured from the compiled configuration
+     *  file _compiledName, if it was compiled from the current contents of
+     *  configuration file _configName, and otherwise from _configName
+     *  itself, which is then compiled into _compiledName. */
+    private Machine loadConfig() {
+        long checksum = ConfigFile.checksum(Paths.get(_configName));
+        Machine m = ConfigFile.read(Paths.get(_compiledName), checksum);
+        if (m == null) {
+            _config = getInput(_configName);
+            m = readConfig();
+            ConfigFile.write(Paths.get(_compiledName), m, checksum);
         }
+        _alphabet = m.alphabet();
+        return m;
     }
 
-    /** Return a rotor, reading its description from _config. */
+    /** Return a rotor, reading its description from _config.  Errors in
+     *  its cycles or notches are reported at the rotor's name. */
     private Rotor readRotor() {
         try {
             String name = _config.next();
-            if (name.contains("*") || name.contains("(")
-                    || name.contains(")")) {
-                throw error("name contains invalid chars");
+            if (hasParens(name)) {
+                throw _config.error("name contains invalid chars");
             }
+            int line = _config.line(), column = _config.column();
             String settings = _config.next();
-            if (settings.contains("*") || settings.contains("(")
-                    || settings.contains(")")) {
-                throw error("settings contains invalid chars");
-            }
-            String perms = new String("");
-            while (_config.hasNext("\\([^\\*]+\\)")) {
-                perms = perms.concat(_config.next("\\([^\\*]+\\)"));
-            }
-            Rotor rotor = new Rotor(name, new Permutation(perms, _alphabet));
-            if (settings.charAt(0) == 'M') {
-                String notches = settings.substring(1);
-                rotor = new MovingRotor(name,
-                        new Permutation(perms, _alphabet), notches);
-            } else if (settings.charAt(0) == 'N') {
-                rotor =  new FixedRotor(name,
-                        new Permutation(perms, _alphabet));
-            } else if (settings.charAt(0) == 'R') {
-                rotor = new Reflector(name,
-                        new Permutation(perms, _alphabet));
-            }
-            return rotor;
+            if (hasParens(settings)) {
+                throw _config.error("settings contains invalid chars");
+            }
+            StringBuilder perms = new StringBuilder();
+            while (_config.hasNext() && isCycle(_config.peek())) {
+                perms.append(_config.next());
+            }
+            try {
+                Permutation perm = new Permutation(perms.toString(), _alphabet);
+                if (settings.charAt(0) == 'M') {
+                    String notches = settings.substring(1);
+                    return new MovingRotor(name, perm, notches);
+                } else if (settings.charAt(0) == 'N') {
+                    return new FixedRotor(name, perm);
+                } else if (settings.charAt(0) == 'R') {
+                    return new Reflector(name, perm);
+                }
+                return new Rotor(name, perm);
+            } catch (EnigmaException excp) {
+                throw Tokenizer.located(line, column, excp.getMessage());
+            }
         } catch (NoSuchElementException excp) {
-            throw error("bad rotor description");
+            throw _config.error("bad rotor description");
         }
     }
 
     /** Set M according to the specification given on SETTINGS,
-     *  which must have the format specified in the assignment. */
+     *  which must have the format specified in the assignment, and is
+     *  line _line of the input.  Errors are reported with the line and
+     *  column of the field at fault. */
     private void setUp(Machine M, String settings) {
-        if (settings.charAt(0) != '*') {
+        _column = 1;
+        try {
+            setUpFields(M, settings);
+        } catch (EnigmaException excp) {
+            throw Tokenizer.located(_line, _column, excp.getMessage());
+        }
+    }
+
+    /** Set M according to SETTINGS, as for setUp, recording in _column
+     *  the column of each field as it is used. */
+    private void setUpFields(Machine M, String settings) {
+        if (settings.isEmpty() || settings.charAt(0) != '*') {
             throw error("Setting must start with an asterisk.");
         }
-        String[] rotors = settings.split("\\s");
+        int[] columns = new int[settings.length() + 1];
+        String[] rotors = Tokenizer.fields(settings, columns);
         if (rotors.length <= M.numRotors() + 1) {
+            _column = settings.length() + 1;
             throw error("wrong number of settings");
         }
         String[] useRotors = new String[M.getNumRotors()];
         int index = 0;
         for (int i = 1; i <= M.numRotors(); i++) {
+            _column = columns[i];
+            if (rotors[i].isEmpty()) {
+                throw error("missing rotor name");
+            }
             if (rotors[i].charAt(0) != '(' && rotors[i].charAt(0) != '*') {
                 useRotors[index] = rotors[i];
                 index++;
             }
         }
+        _column = columns[1];
+        if (index < useRotors.length) {
+            throw error("unknown rotor in setting");
+        }
         M.insertRotors(useRotors);
         if (M.numRotors() - 1 < M.numPawls()) {
             throw error("Too many pawls");
         }
         String rotorSetting = rotors[M.numRotors() + 1];
-        if (rotorSetting.length() != M.numRotors() - 1) {
+        _column = columns[M.numRotors() + 1];
+        if (rotorSetting.codePointCount(0, rotorSetting.length())
+                != M.numRotors() - 1) {
             throw error("rotor setting string does not match number of rotors");
         }
         M.setRotors(rotorSetting);
+        _column = columns[1];
         ArrayList<String> seenRotors = new ArrayList<String>();
         for (int i = 0; i < useRotors.length; i++) {
             if (seenRotors.contains(useRotors[i])) {
@@ -199,57 +1091,179 @@ public final class Main {
                 throw error("Reflectors can only be the first rotor");
             }
         }
-        String plugPerm = new String("");
+        StringBuilder plugPerm = new StringBuilder();
         for (int i = M.numRotors() + 2; i < rotors.length; i++) {
+            _column = columns[i];
             if (i == M.numRotors() + 2 && !rotors[i].contains("(")) {
                 ring(M, rotors[i]);
             } else {
-                plugPerm = plugPerm.concat(rotors[i]);
+                plugPerm.append(rotors[i]);
             }
         }
-        M.setPlugboard(new Permutation(plugPerm, _alphabet));
+        M.setPlugboard(new Permutation(plugPerm.toString(), _alphabet));
     }
 
     /** Extra credit for implementation of Ring.
      * Takes in the string of RING and machine M. */
     private void ring(Machine M, String ring) {
-        ArrayList<Rotor> rotors = M.getActiveRotors();
-        for (int i = 1; i < M.getNumRotors(); i++) {
-            int ringIndex = M.alphabet().toInt(ring.charAt(i - 1));
-            M.getActiveRotors().get(i).setRing(ringIndex);
-        }
+        M.setRings(ring);
     }
 
-    /** Print MSG in groups of five (except that the last group may
-     *  have fewer letters). */
-    private void printMessageLine(String msg) {
-        String newMsg = msg.replaceAll("\\s+", "");
-        if (newMsg.length() <= 5) {
-            _output.println(newMsg);
-        } else {
-            _output.print(newMsg.charAt(0));
-            for (int i = 1; i < newMsg.length(); i++) {
-                if (i % 5 == 0) {
-                    _output.print(" ");
-                    _output.print(newMsg.charAt(i));
-                } else {
-                    _output.print(newMsg.charAt(i));
+    /** An OutputStream that copies its bytes into the mapped window of
+     *  _mappedOutput, mapping further windows (and so extending the file)
+     *  as needed. */
+    private class MappedOutput extends OutputStream {
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[] {(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            while (len > 0) {
+                if (_outWindow == null || !_outWindow.hasRemaining()) {
+                    _outWindow = _mappedOutput.map(
+                        FileChannel.MapMode.READ_WRITE, _mappedPosition,
+                        WINDOW_SIZE);
                 }
+                int n = Math.min(len, _outWindow.remaining());
+                _outWindow.put(b, off, n);
+                _mappedPosition += n;
+                off += n;
+                len -= n;
             }
-            _output.println();
         }
-
     }
 
     /** Alphabet used in this machine. */
     private Alphabet _alphabet;
 
     /** Source of input messages. */
-    private Scanner _input;
+    private Reader _input;
 
     /** Source of machine configuration. */
-    private Scanner _config;
+    private Tokenizer _config;
+
+    /** Name of the configuration file. */
+    private String _configName;
+
+    /** Name of the compiled configuration file (--compiled), or null if
+     *  there is none. */
+    private String _compiledName;
 
     /** File for encoded/decoded messages. */
-    private PrintStream _output;
+    private OutputStream _output;
+
+    /** Output stage writing to _output (or, when memory-mapped, to
+     *  _mappedOutput, or for a section worker, to _sectionOutput). */
+    private GroupedWriter _writer;
+
+    /** True iff the input and output files are memory-mapped. */
+    private boolean _mapped;
+
+    /** True iff long messages are converted in parallel. */
+    private boolean _parallel;
+
+    /** True iff sections are converted concurrently (--sections). */
+    private boolean _sections;
+
+    /** The encoded output of this section worker (see processSections),
+     *  or null if this is not one. */
+    private ByteArrayOutputStream _sectionOutput;
+
+    /** True iff only a range of each section is converted (--range). */
+    private boolean _ranged;
+
+    /** Index of the first character of each section to convert. */
+    private long _rangeStart;
+
+    /** Number of characters of each section to convert. */
+    private long _rangeCount;
+
+    /** Number of characters of this section still to be skipped. */
+    private long _toSkip;
+
+    /** Number of characters of this section still to be converted. */
+    private long _toTake;
+
+    /** Maximum size in bytes of _cache (--cache). */
+    private long _cacheBytes = (long) CACHE_MEGABYTES << 20;
+
+    /** Cache of the keystreams of recurring setting lines, or null if
+     *  there is none. */
+    private KeystreamCache _cache;
+
+    /** The cached keystream of the current section, or null if the
+     *  section's characters are converted by the machine. */
+    private Keystream _keystream;
+
+    /** Number of characters of the current section converted or skipped
+     *  so far. */
+    private long _position;
+
+    /** True iff message lines are printed without grouping. */
+    private boolean _raw;
+
+    /** Name of the input file, for memory-mapped processing. */
+    private String _inputName;
+
+    /** Name of the output file, for memory-mapped processing. */
+    private String _outputName;
+
+    /** The output file, when memory-mapped. */
+    private FileChannel _mappedOutput;
+
+    /** The currently mapped window of _mappedOutput. */
+    private MappedByteBuffer _outWindow;
+
+    /** Number of bytes written to _mappedOutput. */
+    private long _mappedPosition;
+
+    /** Size of the windows in which files are memory-mapped. */
+    private static final long WINDOW_SIZE = 1 << 26;
+
+    /** Size of the chunks in which input is read. */
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    /** Greatest number of chars of message lines of one section that
+     *  processSections holds for conversion as a task. */
+    private static final int SECTION_LIMIT = 1 << 20;
+
+    /** Size of the chunks in which input is read in parallel mode. */
+    private static final int PARALLEL_CHUNK_SIZE = 1 << 22;
+
+    /** Default size of the keystream cache, in megabytes. */
+    private static final int CACHE_MEGABYTES = 64;
+
+    /** Number of keypresses covered by each cached keystream. */
+    private static final int KEYSTREAM_LENGTH = 1 << 10;
+
+    /** Number of sections per thread of the pool that may await writing
+     *  at once in processSections. */
+    private static final int SECTIONS_PER_THREAD = 4;
+
+    /** Size in bytes of the output buffer. */
+    private static final int OUTPUT_BUFFER_SIZE = 1 << 20;
+
+    /** Current state of the input parser. */
+    private LineState _state = LineState.START;
+
+    /** The setting line being read. */
+    private final StringBuilder _setting = new StringBuilder();
+
+    /** True once a setting line has been processed. */
+    private boolean _configured;
+
+    /** Number (from 1) of the input line being processed. */
+    private int _line = 1;
+
+    /** Column (from 1) of the field of the setting line being processed
+     *  by setUp. */
+    private int _column;
+
+    /** Number of whitespace-only message lines whose empty output lines
+     *  are waiting for the next message line, or, before the first
+     *  setting line, of empty lines waiting for it. */
+    private int _pendingBlanks;
 }
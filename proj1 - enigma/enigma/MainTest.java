@@ -0,0 +1,84 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Main class.
+ *  @author Jenny Miao
+ */
+public class MainTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(10);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** A section of input, and the output it produces. */
+    private static final String SECTION =
+        "* B Beta III IV I AXLE (HQ) (EX) (IP) (TR) (BY)\n"
+        + "FROM HIS SHOULDER HIAWATHA\n",
+        SECTION_OUTPUT = "QVPQS OKOIL PUBKJ ZPISF XDW\n";
+
+    /** Return the output written by Main, with the options OPTIONS and
+     *  the configuration testing/correct/default.conf, for the input
+     *  INPUT, which it must reject with an EnigmaException. */
+    private static String failingOutput(String input, String... options)
+        throws IOException {
+        Path conf = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(conf, testFile("correct/default.conf")
+                        .getBytes(StandardCharsets.UTF_8));
+            Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+            ArrayList<String> args = new ArrayList<>(Arrays.asList(options));
+            args.add(conf.toString());
+            args.add(in.toString());
+            args.add(out.toString());
+            try {
+                new Main(args.toArray(new String[0])).process();
+                fail(msg("failingOutput", "%s accepted", input));
+            } catch (EnigmaException excp) {
+                /* Expected. */
+            }
+            return new String(Files.readAllBytes(out),
+                              StandardCharsets.UTF_8);
+        } finally {
+            Files.delete(conf);
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testOutputWrittenOnError() throws IOException {
+        String input = SECTION + "* B Beta III IV XX AXLE\n";
+        assertEquals(SECTION_OUTPUT, failingOutput(input));
+        assertEquals(SECTION_OUTPUT, failingOutput(input, "--sections"));
+        assertEquals(SECTION_OUTPUT, failingOutput(input, "--mmap"));
+        assertEquals(SECTION_OUTPUT,
+                     failingOutput(SECTION + "BAD LETTER 1\n"));
+    }
+
+    @Test
+    public void testNoOutputWithoutSettingLine() throws IOException {
+        String input = "\n\nFROM HIS SHOULDER\n";
+        assertEquals("", failingOutput(input));
+        assertEquals("", failingOutput(input, "--sections"));
+        assertEquals("", failingOutput(input, "--mmap"));
+    }
+}
@@ -17,6 +17,11 @@ class MovingRotor extends Rotor {
         this.notches = notchNames;
     }
 
+    /** Return the names of my notches, as given to my constructor. */
+    String notches() {
+        return notches;
+    }
+
     @Override
     boolean rotates() {
         return true;
@@ -24,19 +29,22 @@ class MovingRotor extends Rotor {
 
     @Override
     boolean atNotch() {
-        boolean notch = false;
+        return notchAt(permutation().wrap(setting()));
+    }
+
+    @Override
+    boolean notchAt(int posn) {
         for (int i = 0; i < notches.length(); i++) {
-            if (alphabet().toChar(permutation().wrap(setting()))
-                    == notches.charAt(i)) {
-                notch = true;
+            if (alphabet().indexOf(notches.charAt(i)) == posn) {
+                return true;
             }
         }
-        return notch;
+        return false;
     }
 
     @Override
     void advance() {
-        set(setting() + 1);
+        set(permutation().wrap(setting() + 1));
     }
 
     /** Notch names for this rotor. */
@@ -0,0 +1,395 @@
+package enigma;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+import static enigma.EnigmaException.*;
+
+/** A table of the log probabilities of the n-grams (runs of N characters)
+ *  of an alphabet in some language, used to score candidate plaintexts:
+ *  the higher a text's score, the more it resembles the language.  The
+ *  table is indexed directly by the n-gram's alphabet indices, packed as
+ *  the digits of a number in base size(), so that scoring a text of
+ *  indices involves no hashing and allocates nothing.
+ *
+ *  A table is either trained in memory or mapped, read-only and off the
+ *  heap, from a table file written by a Builder, which may hold the
+ *  tables of several lengths of n-gram.  A table never changes, so any
+ *  number of threads can score with one, sharing its mapping.
+ *
+ *  A table file is a header of MAGIC and VERSION, the alphabet size and
+ *  its code points, and the number of tables, followed for each table by
+ *  N, the offset in the file of its entries and the number of n-grams
+ *  counted (all big-endian, as in ConfigFile); then the entries of each
+ *  table, size^N little-endian floats starting at a multiple of 8 bytes,
+ *  so that on the usual hardware they are read in place.
+ *  @author Jenny Miao
+ */
+final class NgramTable {
+
+    /** A table of the log probabilities LOGPROBS of the N-grams of
+     *  ALPHABET, indexed as described above. */
+    private NgramTable(Alphabet alphabet, int n, FloatBuffer logProbs) {
+        _alphabet = alphabet;
+        _n = n;
+        _size = alphabet.size();
+        _entries = logProbs.capacity();
+        _logProbs = logProbs;
+    }
+
+    /** Return the table of the N-grams of ALPHABET in CORPUS (see
+     *  Builder). */
+    static NgramTable train(Alphabet alphabet, int n, CharSequence corpus) {
+        return new Builder(alphabet, n).add(corpus).build(n);
+    }
+
+    /** Return the table of the longest n-grams in the table file FILE,
+     *  mapped into memory. */
+    static NgramTable map(Path file) {
+        return map(file, 0);
+    }
+
+    /** Return the table of the N-grams in the table file FILE, mapped
+     *  into memory, or of the longest n-grams in it if N is 0. */
+    static NgramTable map(Path file, int n) {
+        try (FileChannel channel = FileChannel.open(file)) {
+            long length = channel.size();
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                                            Math.min(length, MAX_HEADER));
+            if (header.getInt() != MAGIC || header.getInt() != VERSION) {
+                throw error("%s is not an n-gram table file", file);
+            }
+            int size = header.getInt();
+            if (size <= 0 || size > MAX_HEADER) {
+                throw error("damaged n-gram table file %s", file);
+            }
+            int[] codePoints = new int[size];
+            for (int i = 0; i < size; i++) {
+                codePoints[i] = header.getInt();
+            }
+            Alphabet alphabet = new Alphabet(new String(codePoints, 0, size));
+            int chosen = -1;
+            long offset = 0;
+            for (int t = header.getInt(); t > 0; t--) {
+                int tableN = header.getInt();
+                long tableOffset = header.getLong();
+                header.getLong();
+                if (tableN == n || n == 0 && tableN > chosen) {
+                    chosen = tableN;
+                    offset = tableOffset;
+                }
+            }
+            if (chosen < 0) {
+                throw error("%s has no table of %d-grams", file, n);
+            }
+            long entries = entries(size, chosen);
+            if (offset < 0 || offset + entries * Float.BYTES > length) {
+                throw error("damaged n-gram table file %s", file);
+            }
+            ByteBuffer body = channel.map(FileChannel.MapMode.READ_ONLY,
+                                          offset, entries * Float.BYTES);
+            return new NgramTable(alphabet, chosen,
+                                  body.order(ByteOrder.LITTLE_ENDIAN)
+                                  .asFloatBuffer());
+        } catch (BufferUnderflowException | IllegalArgumentException excp) {
+            throw error("damaged n-gram table file %s", file);
+        } catch (IOException excp) {
+            throw error("could not read n-gram table file %s: %s",
+                        file, excp.getMessage());
+        }
+    }
+
+    /** Return my alphabet. */
+    Alphabet alphabet() {
+        return _alphabet;
+    }
+
+    /** Return the length of my n-grams. */
+    int n() {
+        return _n;
+    }
+
+    /** Return the log probability of the n-gram whose packed index is
+     *  INDEX. */
+    float logProb(int index) {
+        return _logProbs.get(index);
+    }
+
+    /** Return the score of the text of the LEN alphabet indices in TEXT
+     *  starting at OFF: the sum of the log probabilities of its n-grams.
+     *  The packed index is rolled along the text by dropping its leading
+     *  digit and appending the next, with no division. */
+    double score(int[] text, int off, int len) {
+        FloatBuffer logProbs = _logProbs;
+        int n = _n, size = _size, high = _entries / size, index = 0;
+        double sum = 0;
+        for (int i = 0; i < len; i++) {
+            if (i >= n) {
+                index -= text[off + i - n] * high;
+            }
+            index = index * size + text[off + i];
+            if (i >= n - 1) {
+                sum += logProbs.get(index);
+            }
+        }
+        return sum;
+    }
+
+    /** Return the number of entries in a table of the N-grams of an
+     *  alphabet of SIZE characters, checking that it is allowed. */
+    private static int entries(int size, int n) {
+        double entries = Math.pow(size, n);
+        if (n < 1 || entries > MAX_ENTRIES) {
+            throw error("cannot tabulate %d-grams of %d characters", n, size);
+        }
+        return (int) entries;
+    }
+
+    /** Counts the n-grams of one or more lengths in a text (a corpus of
+     *  the language) given in any number of pieces, from which it builds
+     *  tables or writes a table file.  Characters not in the alphabet are
+     *  ignored, so that the letters on either side of a space or
+     *  punctuation form n-grams, as they would in an Enigma message.
+     *  N-grams that do not occur are given the probability of half an
+     *  occurrence. */
+    static final class Builder {
+
+        /** A builder of tables of the n-grams of ALPHABET whose lengths
+         *  are LENGTHS. */
+        Builder(Alphabet alphabet, int... lengths) {
+            if (lengths.length == 0) {
+                throw error("no n-gram lengths given");
+            }
+            _alphabet = alphabet;
+            _lengths = lengths.clone();
+            _counts = new long[lengths.length][];
+            _totals = new long[lengths.length];
+            _indices = new int[lengths.length];
+            for (int k = 0; k < lengths.length; k++) {
+                for (int j = 0; j < k; j++) {
+                    if (lengths[j] == lengths[k]) {
+                        throw error("%d-grams given twice", lengths[k]);
+                    }
+                }
+                _counts[k] = new long[entries(alphabet.size(), lengths[k])];
+            }
+        }
+
+        /** Count the n-grams of TEXT, which continues the text added
+         *  before, and return this builder. */
+        Builder add(CharSequence text) {
+            int size = _alphabet.size();
+            for (int i = 0; i < text.length();) {
+                int cp = Character.codePointAt(text, i);
+                i += Character.charCount(cp);
+                int c = _alphabet.indexOf(cp);
+                if (c < 0) {
+                    continue;
+                }
+                _run += 1;
+                for (int k = 0; k < _lengths.length; k++) {
+                    long[] counts = _counts[k];
+                    int index = (int) (((long) _indices[k] * size + c)
+                                       % counts.length);
+                    _indices[k] = index;
+                    if (_run >= _lengths[k]) {
+                        counts[index] += 1;
+                        _totals[k] += 1;
+                    }
+                }
+            }
+            return this;
+        }
+
+        /** Return the table, in memory, of the N-grams counted so far,
+         *  where N is one of my lengths. */
+        NgramTable build(int n) {
+            int k = table(n);
+            float[] logProbs = new float[_counts[k].length];
+            for (int index = 0; index < logProbs.length; index++) {
+                logProbs[index] = logProb(k, index);
+            }
+            return new NgramTable(_alphabet, n, FloatBuffer.wrap(logProbs));
+        }
+
+        /** Write a table file holding the tables of the n-grams of each
+         *  of my lengths counted so far to FILE. */
+        void write(Path file) {
+            int tables = _lengths.length;
+            for (int k = 0; k < tables; k++) {
+                table(_lengths[k]);
+            }
+            int size = _alphabet.size();
+            ByteBuffer header = ByteBuffer.allocate(
+                4 * Integer.BYTES + size * Integer.BYTES
+                + tables * (Integer.BYTES + 2 * Long.BYTES));
+            long offset = align(header.capacity());
+            header.putInt(MAGIC).putInt(VERSION).putInt(size);
+            for (int i = 0; i < size; i++) {
+                header.putInt(_alphabet.toCodePoint(i));
+            }
+            header.putInt(tables);
+            for (int k = 0; k < tables; k++) {
+                header.putInt(_lengths[k]).putLong(offset)
+                    .putLong(_totals[k]);
+                offset = align(offset + (long) _counts[k].length
+                               * Float.BYTES);
+            }
+            header.flip();
+            try (FileChannel channel =
+                     FileChannel.open(file, StandardOpenOption.WRITE,
+                                      StandardOpenOption.CREATE,
+                                      StandardOpenOption.TRUNCATE_EXISTING)) {
+                writeFully(channel, header);
+                ByteBuffer block = ByteBuffer.allocate(WRITE_BLOCK)
+                    .order(ByteOrder.LITTLE_ENDIAN);
+                for (int k = 0; k < tables; k++) {
+                    writeFully(channel, ByteBuffer.allocate(
+                                   (int) (align(channel.position())
+                                          - channel.position())));
+                    block.clear();
+                    for (int index = 0; index < _counts[k].length; index++) {
+                        if (!block.hasRemaining()) {
+                            block.flip();
+                            writeFully(channel, block);
+                            block.clear();
+                        }
+                        block.putFloat(logProb(k, index));
+                    }
+                    block.flip();
+                    writeFully(channel, block);
+                }
+            } catch (IOException excp) {
+                throw error("could not write n-gram table file %s: %s",
+                            file, excp.getMessage());
+            }
+        }
+
+        /** Return the number of my tables of N-grams, which must have had
+         *  some counted. */
+        private int table(int n) {
+            for (int k = 0; k < _lengths.length; k++) {
+                if (_lengths[k] == n) {
+                    if (_totals[k] == 0) {
+                        throw error("corpus contains no %d-grams", n);
+                    }
+                    return k;
+                }
+            }
+            throw error("%d-grams are not being counted", n);
+        }
+
+        /** Return the log probability of the n-gram with packed index
+         *  INDEX in my table number K. */
+        private float logProb(int k, int index) {
+            long count = _counts[k][index];
+            return (float) Math.log10((count == 0 ? UNSEEN : count)
+                                      / _totals[k]);
+        }
+
+        /** The alphabet of my n-grams. */
+        private final Alphabet _alphabet;
+
+        /** The length of the n-grams of each of my tables. */
+        private final int[] _lengths;
+
+        /** The count of each n-gram of each length, by packed index. */
+        private final long[][] _counts;
+
+        /** The number of n-grams of each length counted. */
+        private final long[] _totals;
+
+        /** The packed index of the last n-gram of each length added. */
+        private final int[] _indices;
+
+        /** The number of characters of the alphabet added. */
+        private long _run;
+    }
+
+    /** Return N rounded up to a multiple of 8. */
+    private static long align(long n) {
+        return (n + 7) & ~7L;
+    }
+
+    /** Write all of BUF to CHANNEL. */
+    private static void writeFully(FileChannel channel, ByteBuffer buf)
+        throws IOException {
+        while (buf.hasRemaining()) {
+            channel.write(buf);
+        }
+    }
+
+    /** Build a table file ARGS[1] of the bigrams, trigrams and quadgrams
+     *  of the alphabet of the configuration file ARGS[0] in the text
+     *  files ARGS[2..], read in the default character set. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 3) {
+                throw error("usage: java enigma.NgramTable CONFIG TABLES "
+                            + "CORPUS...");
+            }
+            Builder builder =
+                new Builder(Main.readConfiguration(args[0]).alphabet(),
+                            DEFAULT_LENGTHS);
+            for (int i = 2; i < args.length; i++) {
+                try {
+                    builder.add(new String(Files.readAllBytes(
+                                               Paths.get(args[i])),
+                                           Charset.defaultCharset()));
+                } catch (IOException excp) {
+                    throw error("could not open %s", args[i]);
+                }
+            }
+            builder.write(Paths.get(args[1]));
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** Lengths of the n-grams tabulated by main. */
+    static final int[] DEFAULT_LENGTHS = {2, 3, 4};
+
+    /** Largest number of entries in a table. */
+    static final int MAX_ENTRIES = 1 << 26;
+
+    /** First word of a table file. */
+    static final int MAGIC = 0x4e475254;
+
+    /** Version of the table file format. */
+    static final int VERSION = 1;
+
+    /** Most bytes of a table file read as its header. */
+    private static final int MAX_HEADER = 1 << 24;
+
+    /** Bytes of entries written to a table file at a time. */
+    private static final int WRITE_BLOCK = 1 << 16;
+
+    /** Count assumed for an n-gram that does not occur in a corpus. */
+    private static final double UNSEEN = 0.5;
+
+    /** The alphabet of my n-grams. */
+    private final Alphabet _alphabet;
+
+    /** Length of my n-grams. */
+    private final int _n;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** Number of entries in _logProbs. */
+    private final int _entries;
+
+    /** Log probability (base 10) of each n-gram, by packed index. */
+    private final FloatBuffer _logProbs;
+}
@@ -1,11 +1,11 @@
 package enigma;
 
-import java.util.HashMap;
-
 import static enigma.EnigmaException.*;
 
 /** Represents a permutation of a range of integers starting at 0 corresponding
- *  to the characters of an alphabet.
+ *  to the characters of an alphabet.  The cycles are compiled once into
+ *  forward and inverse index tables, so that permute and invert on indices
+ *  are single array loads.
  *  @author Jenny Miao
  */
 class Permutation {
@@ -14,68 +14,110 @@ class Permutation {
      *  form "(cccc) (cc) ..." where the c's are characters in ALPHABET, which
      *  is interpreted as a permutation in cycle notation.  Characters in the
      *  alphabet that are not included in any cycle map to themselves.
-     *  Whitespace is ignored. */
+     *  Whitespace is ignored, as is anything before the first "(", and
+     *  the last character before each "(" or the end closes a cycle
+     *  whatever it is.  CYCLES is parsed in a single pass. */
     Permutation(String cycles, Alphabet alphabet) {
         _alphabet = alphabet;
         _cycles = cycles;
-        mappedInverse = new HashMap<Character, Character>();
-        mappedPermute = new HashMap<Character, Character>();
-        deranged = true;
+        _forward = new int[alphabet.size()];
+        _inverse = new int[alphabet.size()];
+        _inCycle = new boolean[alphabet.size()];
+        for (int i = 0; i < _forward.length; i++) {
+            _forward[i] = i;
+            _inverse[i] = i;
+        }
 
-        String[] splitCycle = (_cycles.replaceAll("\\s+", "")).split("\\(");
-        for (int i = 1; i < splitCycle.length; i++) {
-            for (int j = 0; j < splitCycle[i].length() - 1; j++) {
-                if (j == splitCycle[i].length() - 2) {
-                    mappedPermute.put(splitCycle[i].charAt(j),
-                            splitCycle[i].charAt(0));
-                } else {
-                    mappedPermute.put(splitCycle[i].charAt(j),
-                            splitCycle[i].charAt(j + 1));
-                }
+        char[] text = new char[cycles.length()];
+        int len = 0;
+        for (int i = 0; i < cycles.length(); i++) {
+            if (!Tokenizer.isSpace(cycles.charAt(i))) {
+                text[len] = cycles.charAt(i);
+                len += 1;
             }
-            for (int j = 0; j < splitCycle[i].length() - 1; j++) {
-                if (j == 0) {
-                    mappedInverse.put(splitCycle[i].charAt(j),
-                            splitCycle[i].charAt(splitCycle[i].length() - 2));
-                } else {
-                    mappedInverse.put(splitCycle[i].charAt(j),
-                            splitCycle[i].charAt(j - 1));
-                }
+        }
+        int open = 0;
+        while (open < len && text[open] != '(') {
+            open += 1;
+        }
+        while (open < len) {
+            int next = open + 1;
+            while (next < len && text[next] != '(') {
+                next += 1;
             }
+            addCycle(text, open + 1, Math.max(open + 1, next - 1));
+            open = next;
         }
-        for (int i = 0; i < _alphabet.size(); i++) {
-            char alpha = _alphabet.toChar(i);
-            if (mappedPermute.get(alpha) == null) {
+        deranged = true;
+        for (int i = 0; i < _forward.length; i++) {
+            if (_forward[i] == i) {
                 deranged = false;
-                mappedPermute.put(alpha, alpha);
-                mappedInverse.put(alpha, alpha);
             }
         }
-        if (_alphabet.size() == 1) {
-            deranged = false;
-        }
     }
 
-    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where CYCLE is
-     *  c0c1...cm. */
-    private void addCycle(String cycle) {
-        for (int i = 0; i < cycle.length(); i++) {
-            if (i == cycle.length() - 1) {
-                mappedPermute.put(cycle.charAt(i), cycle.charAt(0));
-            } else {
-                mappedPermute.put(cycle.charAt(i), cycle.charAt(i + 1));
-            }
+    /** The permutation of ALPHABET taking index K to FORWARD[K], whose
+     *  cycles (other than fixed points not written as cycles) contain
+     *  exactly the indices K for which INCYCLE[K].  FORWARD and INCYCLE
+     *  are copied, and must have the size of ALPHABET. */
+    Permutation(Alphabet alphabet, int[] forward, boolean[] inCycle) {
+        int size = alphabet.size();
+        if (forward.length != size || inCycle.length != size) {
+            throw error("permutation table does not match alphabet");
         }
-        for (int i = 1; i < cycle.length(); i++) {
-            if (i == 1) {
-                mappedInverse.put(cycle.charAt(i),
-                        cycle.charAt(cycle.length() - 1));
-            } else {
-                mappedInverse.put(cycle.charAt(i), cycle.charAt(i - 1));
+        _alphabet = alphabet;
+        _forward = forward.clone();
+        _inverse = new int[size];
+        _inCycle = inCycle.clone();
+        boolean[] hit = new boolean[size];
+        deranged = true;
+        for (int i = 0; i < size; i++) {
+            int to = _forward[i];
+            if (to < 0 || to >= size || hit[to]) {
+                throw error("permutation table is not a permutation");
+            }
+            hit[to] = true;
+            _inverse[to] = i;
+            if (to == i) {
+                deranged = false;
             }
         }
     }
 
+    /** Add the cycle c0->c1->...->cm->c0 to the permutation, where
+     *  c0c1...cm are the code points of chars START to END - 1 of TEXT. */
+    private void addCycle(char[] text, int start, int end) {
+        if (start >= end) {
+            return;
+        }
+        int cp = Character.codePointAt(text, start, end);
+        int first = toIndex(cp);
+        int prev = first;
+        _inCycle[first] = true;
+        for (int i = start + Character.charCount(cp); i < end;
+             i += Character.charCount(cp)) {
+            cp = Character.codePointAt(text, i, end);
+            int next = toIndex(cp);
+            _inCycle[next] = true;
+            _forward[prev] = next;
+            _inverse[next] = prev;
+            prev = next;
+        }
+        _forward[prev] = first;
+        _inverse[first] = prev;
+    }
+
+    /** Return the index in my alphabet of code point CP, which must be in
+     *  it. */
+    private int toIndex(int cp) {
+        int index = _alphabet.indexOf(cp);
+        if (index < 0) {
+            throw error("Character not in alphabet",
+                        new String(Character.toChars(cp)));
+        }
+        return index;
+    }
+
     /** Return the value of P modulo the size of this permutation. */
     final int wrap(int p) {
         int r = p % size();
@@ -87,44 +129,38 @@ class Permutation {
 
     /** Returns the size of the alphabet I permute. */
     int size() {
-        return _alphabet.size();
+        return _forward.length;
     }
 
     /** Return the result of applying this permutation to P modulo the
      *  alphabet size. */
     int permute(int p) {
-        char permutable = _alphabet.toChar(wrap(p));
-        char permuted = (char) mappedPermute.get(permutable);
-        return _alphabet.toInt(permuted);
+        return _forward[wrap(p)];
     }
 
     /** Return the result of applying the inverse of this permutation
      *  to  C modulo the alphabet size. */
     int invert(int c) {
-        char invertable = _alphabet.toChar(wrap(c));
-        char inverted = (char) mappedInverse.get(invertable);
-        return _alphabet.toInt(inverted);
+        return _inverse[wrap(c)];
     }
 
     /** Return the result of applying this permutation to the index of P
      *  in ALPHABET, and converting the result to a character of ALPHABET. */
     char permute(char p) {
-        if (mappedPermute.containsKey(p)) {
-            return (char) mappedPermute.get(p);
-        } else {
+        if (!_alphabet.contains(p)) {
             throw error("Character is not in the alphabet, "
                     + "cannot be permuted", p);
         }
+        return _alphabet.toChar(_forward[_alphabet.toInt(p)]);
     }
 
     /** Return the result of applying the inverse of this permutation to C. */
     char invert(char c) {
-        if (mappedInverse.containsKey(c)) {
-            return (char) mappedInverse.get(c);
-        } else {
+        if (!_alphabet.contains(c)) {
             throw error("Character is not in the alphabet,"
                     + " cannot be inverted", c);
         }
+        return _alphabet.toChar(_inverse[_alphabet.toInt(c)]);
     }
 
     /** Return the alphabet used to initialize this Permutation. */
@@ -132,22 +168,31 @@ class Permutation {
         return _alphabet;
     }
 
-    /** Return the cycles used to initialize this Permutation. */
+    /** Return the cycles used to initialize this Permutation, or for one
+     *  made from a table, the equivalent cycles in order of their first
+     *  characters. */
     String cycles() {
+        if (_cycles == null) {
+            StringBuilder cycles = new StringBuilder();
+            boolean[] done = new boolean[size()];
+            for (int i = 0; i < size(); i++) {
+                if (_inCycle[i] && !done[i]) {
+                    cycles.append(cycles.length() == 0 ? "(" : " (");
+                    for (int k = i; !done[k]; k = _forward[k]) {
+                        done[k] = true;
+                        cycles.appendCodePoint(_alphabet.toCodePoint(k));
+                    }
+                    cycles.append(')');
+                }
+            }
+            _cycles = cycles.toString();
+        }
         return _cycles;
     }
 
     /** Return whether char at index A is in this Permutation. */
     boolean inPerm(int a) {
-        boolean in = false;
-        String characters = cycles().replaceAll("\\(", "");
-        characters = characters.replaceAll("\\)", "");
-        for (int i = 0; i < characters.length(); i++) {
-            if (characters.charAt(i) == alphabet().toChar(a)) {
-                in = true;
-            }
-        }
-        return in;
+        return _inCycle[wrap(a)];
     }
 
     /** Return true iff this permutation is a derangement (i.e., a
@@ -159,13 +204,16 @@ class Permutation {
     /** Alphabet of this permutation. */
     private Alphabet _alphabet;
 
-    /** String of the cycles of this permutation. */
+    /** String of the cycles of this permutation, or null if not yet
+     *  computed (see cycles). */
     private String _cycles;
 
-    /** Contains mapping of permutations. */
-    private HashMap<Character, Character> mappedPermute;
-    /** Contains mapping of inverses. */
-    private HashMap<Character, Character> mappedInverse;
+    /** Index K maps to _forward[K] under this permutation. */
+    private final int[] _forward;
+    /** Index K maps to _inverse[K] under the inverse of this permutation. */
+    private final int[] _inverse;
+    /** _inCycle[K] is true iff index K appears in one of my cycles. */
+    private final boolean[] _inCycle;
     /** Whether the permutation is a derangement. */
     private boolean deranged;
 }
@@ -179,4 +179,43 @@ public class PermutationTest {
         assertEquals(3, p4.invert(1));
         assertEquals(0, p4.invert(-2));
     }
+
+    @Test
+    public void testSingletonCycleIsFixedPoint() {
+        Permutation p = getNewPermutation("(AB) (C)", getNewAlphabet("ABC"));
+        assertEquals(2, p.permute(2));
+        assertEquals(2, p.invert(2));
+        assertFalse(p.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCycleNotInAlphabet() {
+        getNewPermutation("(AZ)", getNewAlphabet("ABC"));
+    }
+
+    @Test
+    public void testFromTable() {
+        Alphabet abc = getNewAlphabet("ABCDEF");
+        Permutation p = getNewPermutation("(BCA) (D) (EF)", abc);
+        int[] forward = new int[6];
+        boolean[] inCycle = new boolean[6];
+        for (int i = 0; i < 6; i += 1) {
+            forward[i] = p.permute(i);
+            inCycle[i] = p.inPerm(i);
+        }
+        Permutation q = new Permutation(abc, forward, inCycle);
+        for (int i = 0; i < 6; i += 1) {
+            assertEquals(p.permute(i), q.permute(i));
+            assertEquals(p.invert(i), q.invert(i));
+            assertEquals(p.inPerm(i), q.inPerm(i));
+        }
+        assertEquals("(ABC) (D) (EF)", q.cycles());
+        assertFalse(q.derangement());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testFromTableNotPermutation() {
+        new Permutation(getNewAlphabet("ABC"), new int[] {1, 1, 0},
+                        new boolean[3]);
+    }
 }
@@ -0,0 +1,478 @@
+package enigma;
+
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.atomic.LongAdder;
+
+import static enigma.EnigmaException.*;
+
+/** A known-plaintext attack that recovers the whole key, ring settings
+ *  included, by splitting the search in two.  A ring setting changes the
+ *  wiring of its rotor only through the offset of its position from the
+ *  ring setting, and otherwise only moves the point at which the rotor's
+ *  notches turn its left neighbor over.  So, first, a Bombe with every
+ *  ring setting at the first letter finds the offsets of the rotors at
+ *  the start of the crib (the offsets phase).  Then, for each of its
+ *  stops, the ring settings of the rotors whose turnovers matter (those
+ *  with a rotating left neighbor) are tried, each rotor's position
+ *  moving with its ring setting so that its offset at the start of the
+ *  crib is kept (the rings phase).  The other ring settings are
+ *  equivalent to the first letter and are reported as such.
+ *
+ *  For each ring setting tried, the start positions of the message are
+ *  found by stepping forward from the few that can reach the crib's
+ *  offsets, and the ciphertext is decrypted with the stop's plugboard
+ *  (letters outside the menu are taken to be unplugged).  Settings whose
+ *  decrypt does not reproduce the crib (whose turnover falls within it)
+ *  are dropped, and the rest are scored by an NgramTable, if one is
+ *  given, or else by the index of coincidence of the decrypt, which is
+ *  cheaper but may not notice a wrong turnover near the end of the
+ *  message; ring settings whose turnovers fall outside the message give
+ *  the same decrypt, and the first of them is kept.  Instead of
+ *  every position and every ring setting together, the search tries
+ *  every position and then only size^k ring settings for each stop,
+ *  where k is the number of rotors whose turnovers matter.
+ *
+ *  As with the Bombe, a turnover within the crib under the true ring
+ *  settings may hide the true key from the offsets phase, so short cribs
+ *  are best.
+ *  @author Jenny Miao
+ */
+class RingSearch {
+
+    /** A search for the key of CIPHERTEXT, of which CRIB is believed to
+     *  be the plaintext of the characters starting at OFFSET, on the
+     *  machines that can be made from the rotors of CATALOG (see
+     *  Bombe.orders).  Whitespace in CRIB and CIPHERTEXT is ignored. */
+    RingSearch(Machine catalog, String crib, String ciphertext, int offset) {
+        this(catalog, Bombe.orders(catalog), crib, ciphertext, offset);
+    }
+
+    /** A search for CRIB, CIPHERTEXT and OFFSET, as above, that tries
+     *  only the rotor orders ORDERS, each the names of rotors of CATALOG
+     *  to fill its slots. */
+    RingSearch(Machine catalog, List<String[]> orders, String crib,
+               String ciphertext, int offset) {
+        this(catalog, orders, null, crib, ciphertext, offset);
+    }
+
+    /** A search for CRIB, CIPHERTEXT and OFFSET with ORDERS, as above,
+     *  that scores decrypts with NGRAMS, or by their index of
+     *  coincidence if NGRAMS is null. */
+    RingSearch(Machine catalog, List<String[]> orders, NgramTable ngrams,
+               String crib, String ciphertext, int offset) {
+        if (ngrams != null
+            && !HillClimb.sameAlphabet(ngrams.alphabet(),
+                                       catalog.alphabet())) {
+            throw error("n-gram table is for a different alphabet");
+        }
+        _ngrams = ngrams;
+        _catalog = catalog;
+        _alphabet = catalog.alphabet();
+        _size = _alphabet.size();
+        _crib = Bombe.indices(_alphabet, crib);
+        _cipher = Bombe.indices(_alphabet, ciphertext);
+        if (offset < 0 || offset + _crib.length > _cipher.length) {
+            throw error("crib does not fit the ciphertext at offset %d",
+                        offset);
+        }
+        _offset = offset;
+        _slots = catalog.numRotors();
+        _firstPawl = _slots - catalog.numPawls();
+        _orders = new ArrayList<>(orders);
+        _bombe = new Bombe(catalog, orders, _crib,
+                           Arrays.copyOfRange(_cipher, offset,
+                                              offset + _crib.length), 0);
+        _bounds = new int[_slots];
+        for (int i = _slots - 1; i >= _firstPawl; i--) {
+            _bounds[i] = i == _slots - 1 ? offset
+                : Math.min(Math.min(offset, _size - 1),
+                           2 * (_bounds[i + 1] / _size + 1));
+        }
+    }
+
+    /** Run both phases on the common ForkJoinPool, returning the best
+     *  key found for each stop of the offsets phase, best first. */
+    List<Key> run() {
+        return run(ForkJoinPool.commonPool());
+    }
+
+    /** Run both phases on POOL, as for run(). */
+    List<Key> run(ForkJoinPool pool) {
+        _trials.reset();
+        long start = System.nanoTime();
+        List<Bombe.Stop> stops = _bombe.run(pool);
+        _offsetNanos = System.nanoTime() - start;
+        start = System.nanoTime();
+        Key[] keys = new Key[stops.size()];
+        ArrayList<RecursiveAction> tasks = new ArrayList<>();
+        for (int k = 0; k < keys.length; k++) {
+            int index = k;
+            tasks.add(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    keys[index] = new Rings(stops.get(index)).best();
+                }
+            });
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                ForkJoinTask.invokeAll(tasks);
+            }
+        });
+        _ringNanos = System.nanoTime() - start;
+        ArrayList<Key> result = new ArrayList<>();
+        for (Key key : keys) {
+            if (key != null) {
+                result.add(key);
+            }
+        }
+        Collections.sort(result, (a, b) -> Double.compare(b._score,
+                                                          a._score));
+        return result;
+    }
+
+    /** Return the number of positions tested by the offsets phase of the
+     *  last run. */
+    long positionsTested() {
+        return _bombe.positionsTested();
+    }
+
+    /** Return the number of ring settings tried by the rings phase of
+     *  the last run. */
+    long ringsTested() {
+        return _trials.sum();
+    }
+
+    /** Return the number of keys (rotor orders, positions and ring
+     *  settings, without the plugboard) that a search of every position
+     *  with every ring setting would try. */
+    double naiveSize() {
+        return _orders.size() * Math.pow(_size, 2 * (_slots - 1));
+    }
+
+    /** Return the time taken by the offsets phase of the last run, in
+     *  nanoseconds. */
+    long offsetNanos() {
+        return _offsetNanos;
+    }
+
+    /** Return the time taken by the rings phase of the last run, in
+     *  nanoseconds. */
+    long ringNanos() {
+        return _ringNanos;
+    }
+
+    /** A key found by a RingSearch, with the score of its decrypt. */
+    static final class Key {
+
+        /** A key with rotors named ROTORS, in the positions SETTING, with
+         *  ring settings RINGS and the plugboard swaps in PLUGBOARD (in
+         *  cycle notation), whose decrypt PLAINTEXT has score SCORE. */
+        private Key(String[] rotors, String setting, String rings,
+                    String plugboard, String plaintext, double score) {
+            _rotors = rotors;
+            _setting = setting;
+            _rings = rings;
+            _plugboard = plugboard;
+            _plaintext = plaintext;
+            _score = score;
+        }
+
+        /** Return the names of my rotors, from the reflector on. */
+        String[] rotors() {
+            return _rotors.clone();
+        }
+
+        /** Return my rotor setting, as in a setting line. */
+        String setting() {
+            return _setting;
+        }
+
+        /** Return my ring settings, as in a setting line. */
+        String rings() {
+            return _rings;
+        }
+
+        /** Return the plugboard swaps of the letters in the menu, in
+         *  cycle notation. */
+        String plugboard() {
+            return _plugboard;
+        }
+
+        /** Return the decrypt of the ciphertext (without whitespace)
+         *  with my key. */
+        String plaintext() {
+            return _plaintext;
+        }
+
+        /** Return the score of plaintext(), by an NgramTable or its
+         *  index of coincidence. */
+        double score() {
+            return _score;
+        }
+
+        /** Return a setting line for me. */
+        @Override
+        public String toString() {
+            return "* " + String.join(" ", _rotors) + " " + _setting + " "
+                + _rings + (_plugboard.isEmpty() ? "" : " " + _plugboard);
+        }
+
+        /** Names of my rotors. */
+        private final String[] _rotors;
+
+        /** My rotor setting and ring settings. */
+        private final String _setting, _rings;
+
+        /** My plugboard swaps. */
+        private final String _plugboard;
+
+        /** My decrypt. */
+        private final String _plaintext;
+
+        /** Score of _plaintext. */
+        private final double _score;
+    }
+
+    /** The rings phase for one stop of the offsets phase. */
+    private final class Rings {
+
+        /** The rings phase for STOP. */
+        Rings(Bombe.Stop stop) {
+            _stop = stop;
+            _state = new MachineState(Bombe.spec(_catalog, stop.rotors()));
+            _state.setPlugboard(new Permutation(stop.plugboard(),
+                                                _alphabet));
+            _offsets = new int[_slots];
+            String setting = stop.setting();
+            for (int i = 1, j = 0; i < _slots; i++) {
+                int cp = setting.codePointAt(j);
+                j += Character.charCount(cp);
+                _offsets[i] = _alphabet.indexOf(cp);
+            }
+            _ring = new int[_slots];
+            _target = new int[_slots];
+            _start = new int[_slots];
+            _plain = new int[_cipher.length];
+            _counts = new int[_size];
+        }
+
+        /** Return the best key for my stop, or null if no ring setting
+         *  reproduces the crib. */
+        Key best() {
+            tryRings(_firstPawl + 1);
+            return _bestRing == null ? null : key();
+        }
+
+        /** Try every ring setting of the rotors from slot I on whose
+         *  turnovers matter, with the ring settings before slot I as in
+         *  _ring. */
+        private void tryRings(int i) {
+            if (i == _slots) {
+                _trials.increment();
+                for (int j = 1; j < _slots; j++) {
+                    _target[j] = (_offsets[j] + _ring[j]) % _size;
+                    _state.setRing(j, _ring[j]);
+                }
+                tryStarts(_slots - 1);
+                return;
+            }
+            for (int r = 0; r < _size; r++) {
+                _ring[i] = r;
+                tryRings(i + 1);
+            }
+            _ring[i] = 0;
+        }
+
+        /** Try every start position of the rotors in slots 1 to I that
+         *  can reach _target at the start of the crib, with the start
+         *  positions after slot I as in _start. */
+        private void tryStarts(int i) {
+            if (i == 0) {
+                tryStart();
+                return;
+            }
+            if (i < _firstPawl) {
+                _start[i] = _target[i];
+                tryStarts(i - 1);
+                return;
+            }
+            int from = i == _slots - 1 ? _bounds[i] : 0,
+                to = _bounds[i];
+            for (int d = from; d <= to; d++) {
+                _start[i] = Math.floorMod(_target[i] - d, _size);
+                tryStarts(i - 1);
+            }
+        }
+
+        /** Decrypt the ciphertext from the start positions _start, if
+         *  they reach _target at the start of the crib, keeping the
+         *  result if it reproduces the crib and has the best score so
+         *  far. */
+        private void tryStart() {
+            setStart();
+            _state.advance(_offset);
+            for (int i = 1; i < _slots; i++) {
+                if (_state.position(i) != _target[i]) {
+                    return;
+                }
+            }
+            setStart();
+            for (int i = 0; i < _cipher.length; i++) {
+                _plain[i] = _state.convert(_cipher[i]);
+            }
+            for (int i = 0; i < _crib.length; i++) {
+                if (_plain[_offset + i] != _crib[i]) {
+                    return;
+                }
+            }
+            double score = _ngrams != null
+                ? _ngrams.score(_plain, 0, _plain.length)
+                : HillClimb.indexOfCoincidence(_plain, _plain.length,
+                                               _counts);
+            if (_bestRing == null || score > _bestScore) {
+                _bestScore = score;
+                _bestRing = _ring.clone();
+                _bestStart = _start.clone();
+            }
+        }
+
+        /** Put my rotors at the positions _start. */
+        private void setStart() {
+            for (int i = 1; i < _slots; i++) {
+                _state.setPosition(i, _start[i]);
+            }
+        }
+
+        /** Return the key of _bestRing and _bestStart. */
+        private Key key() {
+            StringBuilder setting = new StringBuilder(),
+                rings = new StringBuilder(),
+                plaintext = new StringBuilder();
+            for (int i = 1; i < _slots; i++) {
+                setting.appendCodePoint(_alphabet.toCodePoint(_bestStart[i]));
+                rings.appendCodePoint(_alphabet.toCodePoint(_bestRing[i]));
+                _state.setRing(i, _bestRing[i]);
+                _state.setPosition(i, _bestStart[i]);
+            }
+            for (int c : _cipher) {
+                plaintext.appendCodePoint(
+                    _alphabet.toCodePoint(_state.convert(c)));
+            }
+            return new Key(_stop.rotors(), setting.toString(),
+                           rings.toString(), _stop.plugboard(),
+                           plaintext.toString(), _bestScore);
+        }
+
+        /** The stop of the offsets phase. */
+        private final Bombe.Stop _stop;
+
+        /** The machine of _stop, with its plugboard. */
+        private final MachineState _state;
+
+        /** Offset of each rotor at the start of the crib. */
+        private final int[] _offsets;
+
+        /** The ring settings being tried, and the positions at the start
+         *  of the crib and of the message that go with them. */
+        private final int[] _ring, _target, _start;
+
+        /** Scratch buffers for a decrypt and its character counts. */
+        private final int[] _plain, _counts;
+
+        /** The best ring settings and start positions found, or null. */
+        private int[] _bestRing, _bestStart;
+
+        /** The score of the best decrypt found. */
+        private double _bestScore;
+    }
+
+    /** Run a search on the configuration file ARGS[0], with crib ARGS[1],
+     *  ciphertext ARGS[2] and the offset of the crib in the ciphertext
+     *  ARGS[3], scoring with the longest n-grams of the table file
+     *  ARGS[4] if given, printing each key found as a setting line, best
+     *  first, and then the time spent in each phase. */
+    public static void main(String... args) {
+        try {
+            if (args.length < 4 || args.length > 5) {
+                throw error("usage: java enigma.RingSearch CONFIG CRIB "
+                            + "CIPHERTEXT OFFSET [TABLES]");
+            }
+            int offset;
+            try {
+                offset = Integer.parseInt(args[3]);
+            } catch (NumberFormatException excp) {
+                throw error("offset must be an integer");
+            }
+            Machine catalog = Main.readConfiguration(args[0]);
+            NgramTable ngrams = args.length > 4
+                ? NgramTable.map(Paths.get(args[4])) : null;
+            RingSearch search =
+                new RingSearch(catalog, Bombe.orders(catalog), ngrams,
+                               args[1], args[2], offset);
+            for (Key key : search.run()) {
+                System.out.printf("%s  %.4f%n", key, key.score());
+            }
+            System.out.printf("offsets: %d positions in %.3f s; "
+                              + "rings: %d settings in %.3f s; "
+                              + "%.3g keys searched of %.3g%n",
+                              search.positionsTested(),
+                              search.offsetNanos() * 1e-9,
+                              search.ringsTested(),
+                              search.ringNanos() * 1e-9,
+                              (double) search.positionsTested()
+                              + search.ringsTested(),
+                              search.naiveSize());
+            return;
+        } catch (EnigmaException excp) {
+            System.err.printf("Error: %s%n", excp.getMessage());
+        }
+        System.exit(1);
+    }
+
+    /** The table by which decrypts are scored, or null to score them by
+     *  their index of coincidence. */
+    private final NgramTable _ngrams;
+
+    /** The machine whose rotors are searched. */
+    private final Machine _catalog;
+
+    /** The common alphabet of the rotors. */
+    private final Alphabet _alphabet;
+
+    /** Size of _alphabet. */
+    private final int _size;
+
+    /** The crib and the whole ciphertext, as indices. */
+    private final int[] _crib, _cipher;
+
+    /** Offset of the crib in the ciphertext. */
+    private final int _offset;
+
+    /** Number of rotor slots, and the first with a pawl. */
+    private final int _slots, _firstPawl;
+
+    /** The rotor orders tried. */
+    private final List<String[]> _orders;
+
+    /** The Bombe of the offsets phase, on the crib alone. */
+    private final Bombe _bombe;
+
+    /** _bounds[I] is the most steps the rotor in slot I can take between
+     *  the start of the message and the start of the crib. */
+    private final int[] _bounds;
+
+    /** Number of ring settings tried by the current or last run. */
+    private final LongAdder _trials = new LongAdder();
+
+    /** Duration of each phase of the last run, in nanoseconds. */
+    private long _offsetNanos, _ringNanos;
+}
@@ -0,0 +1,103 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the RingSearch class.
+ *  @author Jenny Miao
+ */
+public class RingSearchTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Return the rotor orders of navalCatalog("B", "C") with reflector
+     *  B and rotor II or IV in the middle, to keep the search short. */
+    private static List<String[]> orders() {
+        List<String[]> result = new ArrayList<>();
+        for (String[] order : Bombe.orders(navalCatalog("B", "C"))) {
+            if (order[0].equals("B") && (order[2].equals("II")
+                                         || order[2].equals("IV"))) {
+                result.add(order);
+            }
+        }
+        return result;
+    }
+
+    /** A plaintext, of which CRIB is the part from CRIB_OFFSET. */
+    private static final String PLAIN =
+        "MEETMEATTHEOLDBRIDGEATNOONTOMORROWANDBRINGTHEMAPSTHE"
+        + "WEATHERFORECASTSAYSCLEAR"
+        + "THEREWILLBEASTRONGWINDFROMTHENORTHEASTALLDAYSODRESSWARMLY"
+        + "ANDDONOTBELATEBECAUSETHEBOATLEAVESATONEOCLOCKSHARP";
+
+    /** The crib. */
+    private static final String CRIB = "WEATHERFORECASTSAYS";
+
+    /** Offset of CRIB in PLAIN. */
+    private static final int CRIB_OFFSET = PLAIN.indexOf(CRIB);
+
+    /* ***** TESTS ***** */
+
+    /** Check that a search scoring by NGRAMS (or by index of coincidence
+     *  if null) finds a key that decrypts the ciphertext of PLAIN,
+     *  enciphered from SETTING with ring settings RINGS. */
+    private void checkRecovers(String setting, String rings,
+                               NgramTable ngrams) {
+        String cipher = convert(ATTACK_ROTORS, setting, rings,
+                                ATTACK_PLUGBOARD, PLAIN);
+        RingSearch search = new RingSearch(navalCatalog("B", "C"), orders(),
+                                           ngrams, CRIB, cipher, CRIB_OFFSET);
+        List<RingSearch.Key> keys = search.run();
+        assertFalse("no keys found", keys.isEmpty());
+        RingSearch.Key best = keys.get(0);
+        assertEquals(best.toString(), PLAIN, best.plaintext());
+        assertEquals(best.toString(), "B IV II V",
+                     String.join(" ", best.rotors()));
+        assertEquals(best.toString(), PLAIN,
+                     convert(best.rotors(), best.setting(), best.rings(),
+                             best.plugboard(), cipher));
+        assertEquals((long) orders().size() * 26 * 26 * 26,
+                     search.positionsTested());
+        assertTrue(search.ringsTested() <= 26 * 26 * keys.size());
+        assertTrue(search.positionsTested() + search.ringsTested()
+                   < search.naiveSize() / 1e4);
+    }
+
+    @Test
+    public void testRecoversRings() {
+        /* The slow rotor turns over ten letters from the end, which the
+         * index of coincidence does not notice; the bigrams of PLAIN
+         * itself stand in for those of the language. */
+        checkRecovers("QEF", "AKD", NgramTable.train(UPPER, 2, PLAIN));
+    }
+
+    @Test
+    public void testTurnoverBeforeCrib() {
+        checkRecovers("RDC", "DGX", null);
+    }
+
+    @Test
+    public void testNoKeys() {
+        RingSearch search = new RingSearch(navalCatalog("B", "C"),
+                                           orders().subList(0, 1),
+                                           "AAAA", "BAAAAB", 1);
+        assertEquals(0, search.run().size());
+        assertEquals(0, search.ringsTested());
+    }
+
+    @Test(expected = EnigmaException.class)
+    public void testCribTooLong() {
+        new RingSearch(navalCatalog("B", "C"), "ABCDEF", "ABCDEF", 1);
+    }
+}
@@ -5,7 +5,7 @@ import static enigma.EnigmaException.*;
 /** Superclass that represents a rotor in the enigma machine.
  *  @author Jenny Miao
  */
-class Rotor {
+class Rotor implements Cloneable {
 
     /** A rotor named NAME whose permutation is given by PERM. */
     Rotor(String name, Permutation perm) {
@@ -93,6 +93,21 @@ class Rotor {
     void advance() {
     }
 
+    /** Returns true iff I have a notch at position POSN. */
+    boolean notchAt(int posn) {
+        return false;
+    }
+
+    /** Return a copy of me, in my current setting and ring setting, that
+     *  moves independently of me. */
+    Rotor copy() {
+        try {
+            return (Rotor) clone();
+        } catch (CloneNotSupportedException excp) {
+            throw new AssertionError(excp);
+        }
+    }
+
     @Override
     public String toString() {
         return "Rotor " + _name;
@@ -114,4 +129,9 @@ class Rotor {
     void setRing(int r) {
         ring = r;
     }
+
+    /** Return my ring setting. */
+    int ring() {
+        return ring;
+    }
 }
@@ -1,5 +1,11 @@
 package enigma;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.HashMap;
 
 /** Utility definitions for use in unit tests.
@@ -18,6 +24,97 @@ class TestUtils {
         return testId + " (" + String.format(msgFormat, args) + ")";
     }
 
+    /** Return the contents of the file NAME in the testing directory. */
+    static String testFile(String name) throws IOException {
+        Path dir = Paths.get("testing");
+        if (!Files.isDirectory(dir)) {
+            dir = Paths.get("..", "testing");
+        }
+        return new String(Files.readAllBytes(dir.resolve(name)),
+                          StandardCharsets.UTF_8);
+    }
+
+    /** Return a four-slot machine with three pawls, with the naval
+     *  reflectors named REFLECTORS and the naval rotors I to V available
+     *  and none inserted. */
+    static Machine navalCatalog(String... reflectors) {
+        return navalCatalog(reflectors, "I", "II", "III", "IV", "V");
+    }
+
+    /** Return a four-slot machine with three pawls, with the naval
+     *  reflectors named REFLECTORS and the naval rotors named ROTORS
+     *  (from I to V) available and none inserted. */
+    static Machine navalCatalog(String[] reflectors, String... rotors) {
+        ArrayList<Rotor> all = new ArrayList<>();
+        for (String name : reflectors) {
+            all.add(new Reflector(name, new Permutation(NAVALA.get(name),
+                                                        UPPER)));
+        }
+        for (String name : rotors) {
+            all.add(new MovingRotor(name, new Permutation(NAVALA.get(name),
+                                                          UPPER),
+                                    NAVAL_NOTCHES.get(name)));
+        }
+        return new Machine(UPPER, 4, 3, all);
+    }
+
+    /** Return a five-slot machine with three pawls, with reflector B, the
+     *  fixed rotor Beta and the naval rotors I to V available and none
+     *  inserted. */
+    static Machine fourRotorCatalog() {
+        ArrayList<Rotor> rotors = new ArrayList<>();
+        rotors.add(new Reflector("B", new Permutation(NAVALA.get("B"),
+                                                      UPPER)));
+        rotors.add(new FixedRotor("Beta", new Permutation(NAVALA.get("Beta"),
+                                                          UPPER)));
+        for (String name : new String[] {"I", "II", "III", "IV", "V"}) {
+            rotors.add(new MovingRotor(name, new Permutation(NAVALA.get(name),
+                                                             UPPER),
+                                       NAVAL_NOTCHES.get(name)));
+        }
+        return new Machine(UPPER, 5, 3, rotors);
+    }
+
+    /** Return a machine from fourRotorCatalog(), set up as
+     *  "* B Beta III IV I AXLE" with an empty plugboard. */
+    static Machine navalMachine() {
+        Machine machine = fourRotorCatalog();
+        machine.insertRotors(new String[] {"B", "Beta", "III", "IV", "I"});
+        machine.setRotors("AXLE");
+        return machine;
+    }
+
+    /** Return the conversion of MSG by a machine from
+     *  navalCatalog("B", "C") with rotors ROTORS, set to SETTING with
+     *  ring settings RINGS, with plugboard PLUGBOARD. */
+    static String convert(String[] rotors, String setting, String rings,
+                          String plugboard, String msg) {
+        Machine machine = navalCatalog("B", "C");
+        machine.insertRotors(rotors);
+        machine.setRings(rings);
+        machine.setRotors(setting);
+        machine.setPlugboard(new Permutation(plugboard, UPPER));
+        return machine.convert(msg);
+    }
+
+    /** The rotors with which the tests of the attacks (Bombe,
+     *  RingSearch) encipher their plaintexts. */
+    static final String[] ATTACK_ROTORS = {"B", "IV", "II", "V"};
+
+    /** The plugboard with which the tests of the attacks encipher their
+     *  plaintexts. */
+    static final String ATTACK_PLUGBOARD = "(AW) (CO) (ER) (HT) (MX)";
+
+    /** The notches of the naval rotors I to V. */
+    static final HashMap<String, String> NAVAL_NOTCHES = new HashMap<>();
+    static {
+        NAVAL_NOTCHES.put("I", "Q");
+        NAVAL_NOTCHES.put("II", "E");
+        NAVAL_NOTCHES.put("III", "V");
+        NAVAL_NOTCHES.put("IV", "J");
+        NAVAL_NOTCHES.put("V", "Z");
+    }
+
     /** The naval rotors in the A (0) setting. */
     static final HashMap<String, String> NAVALA = new HashMap<>();
     static {
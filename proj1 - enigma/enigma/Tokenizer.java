@@ -0,0 +1,164 @@
+package enigma;
+
+import java.util.NoSuchElementException;
+
+/** A single-pass tokenizer for configuration files and setting lines.  A
+ *  Tokenizer divides a text into tokens separated by runs of whitespace
+ *  (as for Character.isWhitespace, like a Scanner), keeping track of the
+ *  line and column at which each begins, so that errors can be reported
+ *  where they occur.  The static method fields instead divides a line at
+ *  every single whitespace character, as setting lines are.
+ *  @author Jenny Miao
+ */
+class Tokenizer {
+
+    /** A tokenizer for TEXT. */
+    Tokenizer(CharSequence text) {
+        _text = text;
+        _line = _column = 1;
+        skipWhitespace();
+    }
+
+    /** Return true iff there is another token. */
+    boolean hasNext() {
+        return _pos < _text.length();
+    }
+
+    /** Return the next token without consuming it.  Throws
+     *  NoSuchElementException if there is none. */
+    String peek() {
+        if (!hasNext()) {
+            throw new NoSuchElementException();
+        }
+        int end = _pos;
+        while (end < _text.length()
+               && !Character.isWhitespace(_text.charAt(end))) {
+            end += 1;
+        }
+        return _text.subSequence(_pos, end).toString();
+    }
+
+    /** Return and consume the next token.  Throws NoSuchElementException
+     *  if there is none. */
+    String next() {
+        String token = peek();
+        _tokenLine = _line;
+        _tokenColumn = _column;
+        _pos += token.length();
+        _column += token.length();
+        skipWhitespace();
+        return token;
+    }
+
+    /** Return and consume the next token, which must be a decimal integer
+     *  with an optional sign.  Throws NoSuchElementException if there is
+     *  no next token or it is not such an integer, in which case it is
+     *  not consumed, but errors are reported at its position. */
+    int nextInt() {
+        try {
+            int value = Integer.parseInt(peek());
+            next();
+            return value;
+        } catch (NumberFormatException excp) {
+            _tokenLine = _line;
+            _tokenColumn = _column;
+            throw new NoSuchElementException();
+        }
+    }
+
+    /** Return the line (from 1) of the last token returned. */
+    int line() {
+        return _tokenLine;
+    }
+
+    /** Return the column (from 1) of the last token returned. */
+    int column() {
+        return _tokenColumn;
+    }
+
+    /** Return an exception whose message is formed from MSGFORMAT and
+     *  ARGUMENTS, as for EnigmaException.error, preceded by the line and
+     *  column of the last token returned (or of the start of the text). */
+    EnigmaException error(String msgFormat, Object... arguments) {
+        return located(_tokenLine, _tokenColumn,
+                       String.format(msgFormat, arguments));
+    }
+
+    /** Return an exception whose message is MSG preceded by LINE and
+     *  COLUMN. */
+    static EnigmaException located(int line, int column, String msg) {
+        return new EnigmaException(String.format("line %d, column %d: %s",
+                                                 line, column, msg));
+    }
+
+    /** Return the fields of LINE, which are separated by single
+     *  whitespace characters (as matched by \\s in a regular expression),
+     *  so that two adjacent separators delimit an empty field.  As for
+     *  String.split, trailing empty fields are dropped, unless LINE has
+     *  no separators at all.  If STARTS is not
+     *  null, it must have room for all the fields, and STARTS[I] is set to
+     *  the column (from 1) at which field I begins. */
+    static String[] fields(String line, int[] starts) {
+        int count = 1;
+        for (int i = 0; i < line.length(); i += 1) {
+            if (isSpace(line.charAt(i))) {
+                count += 1;
+            }
+        }
+        String[] result = new String[count];
+        int n = 0, start = 0;
+        for (int i = 0; i <= line.length(); i += 1) {
+            if (i == line.length() || isSpace(line.charAt(i))) {
+                if (starts != null && n < starts.length) {
+                    starts[n] = start + 1;
+                }
+                result[n] = line.substring(start, i);
+                n += 1;
+                start = i + 1;
+            }
+        }
+        while (count > 1 && n > 0 && result[n - 1].isEmpty()) {
+            n -= 1;
+        }
+        if (n == result.length) {
+            return result;
+        }
+        String[] trimmed = new String[n];
+        System.arraycopy(result, 0, trimmed, 0, n);
+        return trimmed;
+    }
+
+    /** Return true iff CH is whitespace as matched by \\s in a regular
+     *  expression, which separates the fields of a setting line and is
+     *  skipped between the letters of a message. */
+    static boolean isSpace(char ch) {
+        return ch == ' ' || ch == '\t' || ch == '\n' || ch == '\r'
+            || ch == '\f' || ch == '\u000b';
+    }
+
+    /** Advance past any whitespace at the current position. */
+    private void skipWhitespace() {
+        while (_pos < _text.length()
+               && Character.isWhitespace(_text.charAt(_pos))) {
+            if (_text.charAt(_pos) == '\n') {
+                _line += 1;
+                _column = 1;
+            } else {
+                _column += 1;
+            }
+            _pos += 1;
+        }
+    }
+
+    /** The text being tokenized. */
+    private final CharSequence _text;
+
+    /** Index in _text of the start of the next token. */
+    private int _pos;
+
+    /** Line and column of _pos, from 1. */
+    private int _line, _column;
+
+    /** Line and column of the last token returned. */
+    private int _tokenLine = 1, _tokenColumn = 1;
+}
@@ -0,0 +1,403 @@
+package enigma;
+
+import org.junit.Test;
+import org.junit.Rule;
+import org.junit.rules.Timeout;
+import static org.junit.Assert.*;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.Scanner;
+
+import static enigma.TestUtils.*;
+
+/** The suite of all JUnit tests for the Tokenizer class, and for the
+ *  parsing of configurations, setting lines and cycles built on it, which
+ *  are fuzzed against the Scanner and regular-expression parsers they
+ *  replaced (see LEGACY UTILITIES).
+ *  @author Jenny Miao
+ */
+public class TokenizerTest {
+
+    /** Testing time limit. */
+    @Rule
+    public Timeout globalTimeout = Timeout.seconds(30);
+
+    /* ***** TESTING UTILITIES ***** */
+
+    /** Characters from which random text is made. */
+    private static final String NOISE = "AB Z(*)\t\n\r\f19M-+, \013";
+
+    /** Return random text of up to LEN characters from NOISE, using
+     *  RANDOM. */
+    private static String noise(Random random, int len) {
+        StringBuilder text = new StringBuilder();
+        for (int n = random.nextInt(len + 1); n > 0; n -= 1) {
+            text.append(NOISE.charAt(random.nextInt(NOISE.length())));
+        }
+        return text.toString();
+    }
+
+    /** Return TEXT with one to three random insertions, deletions and
+     *  duplications of characters from NOISE and of TEXT itself, made
+     *  within chars FROM to TO - 1, using RANDOM. */
+    private static String mutate(Random random, String text,
+                                 int from, int to) {
+        StringBuilder result = new StringBuilder(text);
+        for (int n = 1 + random.nextInt(3); n > 0 && to > from; n -= 1) {
+            int k = from + random.nextInt(to - from);
+            switch (random.nextInt(4)) {
+            case 0:
+                result.insert(k, NOISE.charAt(random.nextInt(NOISE.length())));
+                to += 1;
+                break;
+            case 1:
+                result.deleteCharAt(k);
+                to -= 1;
+                break;
+            case 2:
+                int len = Math.min(to - k, 1 + random.nextInt(6));
+                result.insert(k, result.substring(k, k + len));
+                to += len;
+                break;
+            default:
+                result.setCharAt(k,
+                                 NOISE.charAt(random.nextInt(NOISE.length())));
+                break;
+            }
+        }
+        return result.toString();
+    }
+
+    /** Return true iff Main accepts configuration CONFIG and input
+     *  INPUT, which it may reject only with an EnigmaException. */
+    private static boolean accepts(String config, String input)
+        throws IOException {
+        Path conf = Files.createTempFile("enigma", ".conf");
+        Path in = Files.createTempFile("enigma", ".in");
+        Path out = Files.createTempFile("enigma", ".out");
+        try {
+            Files.write(conf, config.getBytes(StandardCharsets.UTF_8));
+            Files.write(in, input.getBytes(StandardCharsets.UTF_8));
+            new Main(new String[] {"--cache=0", conf.toString(),
+                                   in.toString(), out.toString()})
+                .process();
+            return true;
+        } catch (EnigmaException excp) {
+            return false;
+        } finally {
+            Files.delete(conf);
+            Files.delete(in);
+            Files.delete(out);
+        }
+    }
+
+    /** Check that Main and the legacy parser agree on whether each of
+     *  TRIALS random mutations of the configuration file CONFNAME and the
+     *  setting lines of the input file INNAME, made using RANDOM, is
+     *  acceptable. */
+    private static void fuzz(Random random, String confName, String inName,
+                             int trials) throws IOException {
+        String config = testFile(confName), input = testFile(inName);
+        ArrayList<int[]> settings = new ArrayList<>();
+        for (int start = 0; start < input.length();) {
+            int end = input.indexOf('\n', start);
+            end = end < 0 ? input.length() : end;
+            if (input.startsWith("*", start)) {
+                settings.add(new int[] {start, end});
+            }
+            start = end + 1;
+        }
+        for (int t = 0; t < trials; t += 1) {
+            String conf = config, in = input;
+            if (settings.isEmpty() || random.nextBoolean()) {
+                conf = mutate(random, config, 0, config.length());
+            } else {
+                int[] line = settings.get(random.nextInt(settings.size()));
+                in = mutate(random, input, line[0], line[1]);
+            }
+            boolean expected = legacyAccepts(conf, in);
+            assertEquals(msg("fuzz", "%s %s: config %s, input %s",
+                             confName, inName, conf, in),
+                         expected, accepts(conf, in));
+        }
+    }
+
+    /* ***** LEGACY UTILITIES *****
+     * The parsers used before Tokenizer, kept as the reference for the
+     * fuzz tests.  Any exception counts as rejection, since the program
+     * exited with an error either way. */
+
+    /** Return the forward table of the permutation of ALPHABET given by
+     *  CYCLES, as the regular-expression parser made it. */
+    private static int[] legacyCycles(String cycles, Alphabet alphabet) {
+        int[] forward = new int[alphabet.size()];
+        for (int i = 0; i < forward.length; i += 1) {
+            forward[i] = i;
+        }
+        String[] split = cycles.replaceAll("\\s+", "").split("\\(");
+        for (int i = 1; i < split.length; i += 1) {
+            String cycle =
+                split[i].substring(0, Math.max(0, split[i].length() - 1));
+            if (cycle.length() == 0) {
+                continue;
+            }
+            int[] cps = cycle.codePoints().toArray();
+            for (int k = 0; k < cps.length; k += 1) {
+                int from = alphabet.indexOf(cps[k]),
+                    to = alphabet.indexOf(cps[(k + 1) % cps.length]);
+                if (from < 0 || to < 0) {
+                    throw new EnigmaException("Character not in alphabet");
+                }
+                forward[from] = to;
+            }
+        }
+        return forward;
+    }
+
+    /** Return the permutation of ALPHABET given by CYCLES, checked by
+     *  the legacy parser. */
+    private static Permutation legacyPermutation(String cycles,
+                                                 Alphabet alphabet) {
+        legacyCycles(cycles, alphabet);
+        return new Permutation(cycles, alphabet);
+    }
+
+    /** Return true iff the legacy parser accepts configuration CONFIG
+     *  and input INPUT. */
+    private static boolean legacyAccepts(String config, String input) {
+        try {
+            Scanner scanner = new Scanner(config);
+            Alphabet[] alphabet = new Alphabet[1];
+            Machine m = legacyReadConfig(scanner, alphabet);
+            boolean configured = false;
+            for (String line : input.split("\n", -1)) {
+                if (line.startsWith("*")) {
+                    legacySetUp(m, line, alphabet[0]);
+                    configured = true;
+                } else {
+                    String letters = line.replaceAll("\\s", "");
+                    if (letters.isEmpty()) {
+                        continue;
+                    } else if (!configured) {
+                        return false;
+                    }
+                    m.convert(letters);
+                }
+            }
+            return configured;
+        } catch (RuntimeException excp) {
+            return false;
+        }
+    }
+
+    /** Return the machine described by CONFIG, setting ALPHABET[0] to its
+     *  alphabet. */
+    private static Machine legacyReadConfig(Scanner config,
+                                            Alphabet[] alphabet) {
+        if (config.hasNext("[^\\*\\(\\)]+")) {
+            alphabet[0] = new Alphabet(config.next());
+        } else {
+            throw new EnigmaException("invalid alphabet input");
+        }
+        int numRotors = config.nextInt();
+        int numPawls = config.nextInt();
+        Collection<Rotor> allRotors = new ArrayList<Rotor>();
+        while (config.hasNext()) {
+            String name = config.next();
+            if (name.contains("*") || name.contains("(")
+                    || name.contains(")")) {
+                throw new EnigmaException("name contains invalid chars");
+            }
+            String settings = config.next();
+            if (settings.contains("*") || settings.contains("(")
+                    || settings.contains(")")) {
+                throw new EnigmaException("settings contains invalid chars");
+            }
+            String perms = new String("");
+            while (config.hasNext("\\([^\\*]+\\)")) {
+                perms = perms.concat(config.next("\\([^\\*]+\\)"));
+            }
+            Permutation perm = legacyPermutation(perms, alphabet[0]);
+            if (settings.charAt(0) == 'M') {
+                allRotors.add(new MovingRotor(name, perm,
+                                              settings.substring(1)));
+            } else if (settings.charAt(0) == 'N') {
+                allRotors.add(new FixedRotor(name, perm));
+            } else if (settings.charAt(0) == 'R') {
+                allRotors.add(new Reflector(name, perm));
+            } else {
+                allRotors.add(new Rotor(name, perm));
+            }
+        }
+        return new Machine(alphabet[0], numRotors, numPawls, allRotors);
+    }
+
+    /** Set M, whose alphabet is ALPHABET, according to SETTINGS. */
+    private static void legacySetUp(Machine M, String settings,
+                                    Alphabet alphabet) {
+        if (settings.charAt(0) != '*') {
+            throw new EnigmaException("Setting must start with an asterisk.");
+        }
+        String[] rotors = settings.split("\\s");
+        if (rotors.length <= M.numRotors() + 1) {
+            throw new EnigmaException("wrong number of settings");
+        }
+        String[] useRotors = new String[M.getNumRotors()];
+        int index = 0;
+        for (int i = 1; i <= M.numRotors(); i++) {
+            if (rotors[i].charAt(0) != '(' && rotors[i].charAt(0) != '*') {
+                useRotors[index] = rotors[i];
+                index++;
+            }
+        }
+        M.insertRotors(useRotors);
+        if (M.numRotors() - 1 < M.numPawls()) {
+            throw new EnigmaException("Too many pawls");
+        }
+        String rotorSetting = rotors[M.numRotors() + 1];
+        if (rotorSetting.codePointCount(0, rotorSetting.length())
+                != M.numRotors() - 1) {
+            throw new EnigmaException("rotor setting string does not match");
+        }
+        M.setRotors(rotorSetting);
+        if (new HashSet<>(Arrays.asList(useRotors)).size()
+            != useRotors.length) {
+            throw new EnigmaException("Can't have repeated rotors");
+        }
+        if (!M.getActiveRotors().get(0).reflecting()) {
+            throw new EnigmaException("First rotor must be a reflector");
+        }
+        for (int i = 1; i < M.numRotors(); i++) {
+            if (M.getActiveRotors().get(i).reflecting()) {
+                throw new EnigmaException("Reflectors can only be first");
+            }
+        }
+        String plugPerm = new String("");
+        for (int i = M.numRotors() + 2; i < rotors.length; i++) {
+            if (i == M.numRotors() + 2 && !rotors[i].contains("(")) {
+                M.setRings(rotors[i]);
+            } else {
+                plugPerm = plugPerm.concat(rotors[i]);
+            }
+        }
+        M.setPlugboard(legacyPermutation(plugPerm, alphabet));
+    }
+
+    /* ***** TESTS ***** */
+
+    @Test
+    public void testTokens() {
+        Tokenizer tokens = new Tokenizer("  AB\n 5\t-3\n\n (X)(Y)  ");
+        assertEquals("AB", tokens.next());
+        assertEquals(1, tokens.line());
+        assertEquals(3, tokens.column());
+        assertEquals(5, tokens.nextInt());
+        assertEquals(-3, tokens.nextInt());
+        assertEquals(2, tokens.line());
+        assertEquals(4, tokens.column());
+        assertEquals("(X)(Y)", tokens.peek());
+        assertEquals("(X)(Y)", tokens.next());
+        assertEquals(4, tokens.line());
+        assertEquals(2, tokens.column());
+        assertFalse(tokens.hasNext());
+    }
+
+    @Test
+    public void testErrorLocation() {
+        Tokenizer tokens = new Tokenizer("ABC\n  x");
+        tokens.next();
+        try {
+            tokens.nextInt();
+            fail("accepted non-integer");
+        } catch (NoSuchElementException excp) {
+            assertEquals("line 2, column 3: bad",
+                         tokens.error("bad").getMessage());
+        }
+        assertEquals("x", tokens.next());
+    }
+
+    @Test
+    public void testFieldsMatchSplit() {
+        Random random = new Random(61);
+        for (int t = 0; t < 2000; t += 1) {
+            String line = noise(random, 12);
+            int[] starts = new int[line.length() + 1];
+            String[] fields = Tokenizer.fields(line, starts);
+            assertArrayEquals(msg("testFieldsMatchSplit", "\"%s\"", line),
+                              line.split("\\s"), fields);
+            for (int i = 0; i < fields.length; i += 1) {
+                assertTrue(line.startsWith(fields[i], starts[i] - 1));
+            }
+        }
+    }
+
+    @Test
+    public void testCyclesMatchLegacy() {
+        Alphabet alphabet = new Alphabet("ABZ19M-+,");
+        Random random = new Random(1729);
+        for (int t = 0; t < 2000; t += 1) {
+            String cycles = noise(random, 16);
+            int[] expected;
+            try {
+                expected = legacyCycles(cycles, alphabet);
+            } catch (EnigmaException excp) {
+                expected = null;
+            }
+            try {
+                Permutation perm = new Permutation(cycles, alphabet);
+                assertNotNull(msg("testCyclesMatchLegacy", "accepted \"%s\"",
+                                  cycles), expected);
+                for (int k = 0; k < alphabet.size(); k += 1) {
+                    assertEquals(msg("testCyclesMatchLegacy", "\"%s\"",
+                                     cycles), expected[k], perm.permute(k));
+                }
+            } catch (EnigmaException excp) {
+                assertNull(msg("testCyclesMatchLegacy", "rejected \"%s\"",
+                               cycles), expected);
+            }
+        }
+    }
+
+    @Test
+    public void testFuzzCorrect() throws IOException {
+        Random random = new Random(2020);
+        fuzz(random, "correct/default.conf", "correct/trivial.in", 150);
+        fuzz(random, "correct/default.conf", "correct/01-step.in", 150);
+        fuzz(random, "correct/default.conf", "correct/03-format.in", 100);
+        fuzz(random, "correct/default.conf", "correct/ec.in", 100);
+        fuzz(random, "correct/01-reduced.conf", "correct/01-reduced.in", 150);
+    }
+
+    @Test
+    public void testFuzzError() throws IOException {
+        Random random = new Random(61);
+        fuzz(random, "error/default.conf", "error/trivialerr.in", 150);
+        fuzz(random, "error/default.conf", "correct/trivial1.in", 150);
+    }
+
+    @Test
+    public void testTestingCases() throws IOException {
+        String[] correct = {"trivial", "trivial1", "01-step", "02-step",
+                            "03-format", "03-step", "04-step", "ec",
+                            "01-carroll"};
+        for (String name : correct) {
+            String in = testFile("correct/" + name + ".in");
+            assertTrue(name, legacyAccepts(testFile("correct/default.conf"),
+                                           in));
+            assertTrue(name, accepts(testFile("correct/default.conf"), in));
+        }
+        String errConf = testFile("error/default.conf"),
+            errIn = testFile("error/trivialerr.in");
+        assertFalse(legacyAccepts(errConf, errIn));
+        assertFalse(accepts(errConf, errIn));
+    }
+}
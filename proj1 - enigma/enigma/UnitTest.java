@@ -12,7 +12,12 @@ public class UnitTest {
     public static void main(String[] ignored) {
         System.exit(textui.runClasses(PermutationTest.class,
                                       MovingRotorTest.class,
-                AlphabetTest.class));
+                AlphabetTest.class, MachineTest.class,
+                KeystreamTest.class, ConfigFileTest.class,
+                TokenizerTest.class, GroupedWriterTest.class,
+                BombeTest.class, HillClimbTest.class, RingSearchTest.class,
+                CycleCatalogTest.class, CribScannerTest.class,
+                BatchMachineTest.class, MainTest.class));
     }
 
 }